@@ -2,9 +2,11 @@ import org.gradle.api.tasks.bundling.Jar
 
 plugins {
     `java-library`
+    `java-test-fixtures`
     `maven-publish`
     signing
     id("com.gradleup.shadow") version "8.3.5"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "io.cardinalhq"
@@ -33,6 +35,23 @@ dependencies {
     implementation("io.opentelemetry.proto:opentelemetry-proto:1.3.2-alpha")
 
     implementation("com.lmax:disruptor:4.0.0")
+
+    // Stub OTLP collector and soak harness (src/testFixtures/java/io/cardinalhq/logsink/testing)
+    testFixturesImplementation(platform("org.apache.logging.log4j:log4j-bom:$log4j"))
+    testFixturesImplementation("org.apache.logging.log4j:log4j-core")
+    testFixturesImplementation("io.opentelemetry.proto:opentelemetry-proto:1.3.2-alpha")
+    testFixturesApi("org.hdrhistogram:HdrHistogram:2.2.2") // in deliveryLatency()'s signature
+
+    // Benchmarks that drive a whole sink against the stub collector
+    jmhImplementation(testFixtures(project(":")))
+
+    // Unit tests drive the sink against the same stub collector
+    testImplementation(testFixtures(project(":")))
+    testImplementation(platform("org.apache.logging.log4j:log4j-bom:$log4j"))
+    testImplementation("org.apache.logging.log4j:log4j-core")
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 java {
@@ -42,6 +61,59 @@ java {
     withJavadocJar()
 }
 
+// Java 21 replacements for a few main classes (virtual-thread exports), shipped as a multi-release jar;
+// the same class under src/main/java is what Java 17 loads
+val java21 by sourceSets.creating {
+    java.srcDir("src/main/java21")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>("compileJava21Java") {
+    javaCompiler.set(javaToolchains.compilerFor { languageVersion.set(JavaLanguageVersion.of(21)) })
+    options.release.set(21)
+}
+
+// The export and drain tests again on Java 21, with the java21 classes ahead of main as the jar loads them
+val testJava21 by tasks.registering(Test::class) {
+    description = "Runs the batcher and shutdown drain tests on Java 21 against the multi-release classes"
+    group = "verification"
+    useJUnitPlatform()
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(21)) })
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = java21.output + sourceSets.test.get().runtimeClasspath
+    filter {
+        includeTestsMatching("io.cardinalhq.logsink.LogSinkBatcherTest")
+        includeTestsMatching("io.cardinalhq.logsink.ShutdownDrainTest")
+    }
+}
+
+tasks.check { dependsOn(testJava21) }
+
+tasks.withType<Jar>().matching { it.name in setOf("jar", "shadowJar", "jmhJar") }.configureEach {
+    into("META-INF/versions/21") { from(java21.output) }
+    manifest { attributes("Multi-Release" to "true") }
+}
+
+// Test fixtures are for local verification only; keep them out of the published module
+(components["java"] as AdhocComponentWithVariants).apply {
+    withVariantsFromConfiguration(configurations["testFixturesApiElements"]) { skip() }
+    withVariantsFromConfiguration(configurations["testFixturesRuntimeElements"]) { skip() }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // Benchmarks replay the bundled Kafka broker log as a realistic, repetitive corpus
+    jvmArgsAppend.add("-Dlogsink.corpus=${rootDir}/kafka-broker-0.txt")
+}
+
+tasks.register<JavaExec>("soak") {
+    description = "Drives LogSinkAppender against the in-process stub collector; pass options via -PsoakArgs=\"...\""
+    group = "verification"
+    classpath = sourceSets["testFixtures"].runtimeClasspath
+    mainClass.set("io.cardinalhq.logsink.testing.SoakHarness")
+    args = (findProperty("soakArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
+
 tasks.shadowJar {
     archiveClassifier.set("")
     relocate("com.lmax.disruptor", "io.cardinalhq.logsink.shaded.disruptor")
@@ -0,0 +1,99 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging one record with four attributes through {@link LogSink#event} versus
+ * {@link LogSink#log(long, String, java.util.logging.Level, String...)}. The interesting number is
+ * {@code callerBytesPerOp}: bytes allocated by the logging thread itself, read from the thread's
+ * allocation counter. JMH's {@code -prof gc} counts every thread, including the consumer that
+ * builds the OTLP records, so it shows the pipeline's total rather than the caller's share.
+ * Records the ring has no room for are dropped; a dropped call is measured all the same.
+ * <pre>
+ *   gradle jmhJar
+ *   java -jar build/libs/logsink-*-jmh.jar EventApiBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventApiBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Sink {
+        StubOtlpCollector collector;
+        LogSink sink;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            collector = StubOtlpCollector.start().setRetainRecords(false);
+            sink = new LogSink(LogSinkConfig.builder()
+                    .setOtlpEndpoint(collector.endpoint())
+                    .setAppName("event-api-benchmark")
+                    .setRegisterShutdownHook(false)
+                    .setJmxEnabled(false)
+                    .build());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            sink.shutdown();
+            collector.close();
+        }
+    }
+
+    /** Per-thread allocation, sampled around each iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Caller {
+        private static final com.sun.management.ThreadMXBean THREADS =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        final StringBuilder user = new StringBuilder();
+        long ops;
+        private long startBytes;
+        public double callerBytesPerOp;
+
+        @Setup(Level.Iteration)
+        public void begin() {
+            ops = 0;
+            startBytes = THREADS.getCurrentThreadAllocatedBytes();
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            callerBytesPerOp = (THREADS.getCurrentThreadAllocatedBytes() - startBytes) / (double) Math.max(1, ops);
+        }
+    }
+
+    @Benchmark
+    public boolean event(Sink s, Caller c) {
+        long i = c.ops++;
+        c.user.setLength(0);
+        c.user.append("user-").append(i & 1023);
+        return s.sink.event(SeverityNumber.SEVERITY_NUMBER_INFO)
+                .body("GET /api/orders 200")
+                .attr("http.status", 200L)
+                .attr("latency.ms", 1.5)
+                .attr("cache.hit", false)
+                .attr("user", c.user)
+                .emit();
+    }
+
+    @Benchmark
+    public boolean logWithTags(Sink s, Caller c) {
+        long i = c.ops++;
+        c.user.setLength(0);
+        c.user.append("user-").append(i & 1023);
+        return s.sink.log(System.currentTimeMillis(), "GET /api/orders 200", java.util.logging.Level.INFO,
+                "http.status", "200", "latency.ms", "1.5", "cache.hit", "false", "user", c.user.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end delivery against a stub collector that takes {@code latencyMillis} per request:
+ * each operation logs a burst of records and waits until the collector has all of them. Run the
+ * same jar on Java 17 (one export at a time on the consumer thread) and on Java 21 (exports on
+ * virtual threads, up to {@code maxInFlightExports} at once) to compare.
+ * <pre>
+ *   gradle jmhJar
+ *   $JAVA17_HOME/bin/java -jar build/libs/logsink-*-jmh.jar ExportWorkersBenchmark
+ *   $JAVA21_HOME/bin/java -jar build/libs/logsink-*-jmh.jar ExportWorkersBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportWorkersBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        @Param({"5", "50"})
+        public int latencyMillis;
+
+        @Param({"1", "16"})
+        public int maxInFlightExports;
+
+        @Param({"2000"})
+        public int burst;
+
+        StubOtlpCollector collector;
+        LogSink sink;
+        long expected;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            collector = StubOtlpCollector.start(0, 64)
+                    .setRetainRecords(false)
+                    .setLatency(Duration.ofMillis(latencyMillis));
+            sink = new LogSink(LogSinkConfig.builder()
+                    .setOtlpEndpoint(collector.endpoint())
+                    .setAppName("export-workers-benchmark")
+                    .setQueueSize(Integer.highestOneBit(burst) << 2)
+                    .setMaxBatchSize(100)
+                    .setMaxInFlightExports(maxInFlightExports)
+                    .setRegisterShutdownHook(false)
+                    .build());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            sink.shutdown();
+            collector.close();
+        }
+    }
+
+    @Benchmark
+    public long burst(Pipeline p) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < p.burst; i++) {
+            if (p.sink.log(now, "GET /api/orders/" + i + " 200", java.util.logging.Level.INFO)) p.expected++;
+        }
+        p.sink.flush();
+        if (!p.collector.awaitRecords(p.expected, Duration.ofSeconds(30))) {
+            throw new IllegalStateException("collector has " + p.collector.recordCount() + " of " + p.expected);
+        }
+        return p.expected;
+    }
+}
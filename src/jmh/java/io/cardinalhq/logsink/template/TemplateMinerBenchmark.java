@@ -0,0 +1,74 @@
+package io.cardinalhq.logsink.template;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mining throughput over the bundled Kafka broker log, single-threaded and with every
+ * core hammering one shared miner. Compare {@code stripes=1} (one global lock) against
+ * the striped tree to see the contention difference.
+ * <pre>
+ *   gradle jmhJar
+ *   java -jar build/libs/logsink-*-jmh.jar TemplateMinerBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateMinerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({"1", "64"})
+        public int stripes;
+
+        String[] lines;
+        TemplateMiner miner;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            Path path = Paths.get(System.getProperty("logsink.corpus", "kafka-broker-0.txt"));
+            List<String> all = Files.readAllLines(path, StandardCharsets.UTF_8);
+            lines = all.stream().filter(l -> !l.isBlank()).toArray(String[]::new);
+            miner = new TemplateMiner(4, 0.4, 100, 4096, stripes);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void start() {
+            // Spread threads across the corpus so they mine different shapes concurrently
+            next = (int) (Thread.currentThread().getId() * 7919);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String singleThread(Corpus corpus, Cursor cursor) {
+        return mine(corpus, cursor);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String allCores(Corpus corpus, Cursor cursor) {
+        return mine(corpus, cursor);
+    }
+
+    private static String mine(Corpus corpus, Cursor cursor) {
+        String[] lines = corpus.lines;
+        int i = Math.floorMod(cursor.next++, lines.length);
+        return corpus.miner.templateId(lines[i]);
+    }
+}
@@ -0,0 +1,104 @@
+package io.cardinalhq.logsink;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the exports of batches that carry acknowledged records, on every runtime. Those exports
+ * retry and back off while the collector looks unavailable, so they never run on the consumer
+ * thread or take the permits of {@link ExportWorkers}: a destination answering 503 delays only
+ * its own acknowledgements, while unacknowledged traffic keeps flowing.
+ * <p>
+ * Up to {@code parallelism} daemon threads, started on demand and stopped when idle. Batches
+ * beyond what the queue holds are refused; their futures fail rather than the consumer waiting.
+ * Acknowledged batches may complete out of order with each other and with other batches.
+ */
+final class AckExports {
+    /** Batches waiting for a thread; beyond this the futures fail with {@link RejectedExecutionException}. */
+    static final int MAX_QUEUED = 1024;
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong inFlight = new AtomicLong(); // records queued or exporting
+
+    AckExports(int parallelism) {
+        int threads = Math.max(1, parallelism);
+        AtomicInteger n = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "logsink-ack-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED), factory);
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts {@code export}, which carries {@code records} records and settles {@code acks}.
+     * When it cannot be queued, fails {@code acks} and returns false; the caller still owns the batch.
+     */
+    boolean execute(int records, List<LogSinkBatcher.Ack> acks, Runnable export) {
+        inFlight.addAndGet(records);
+        try {
+            pool.execute(new Task(records, acks, export));
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.addAndGet(-records);
+            for (LogSinkBatcher.Ack a : acks) a.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /** Records in acknowledged exports that have not finished yet. */
+    long inFlightRecords() {
+        return inFlight.get();
+    }
+
+    /** Waits until no acknowledged export is queued or running, or the deadline passes. */
+    boolean awaitIdle(long deadlineNanos) {
+        while (inFlight.get() > 0) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) return false;
+            LockSupport.parkNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(5)));
+            if (Thread.currentThread().isInterrupted()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the threads: queued exports never run and fail their futures with {@code why}, and
+     * running ones are interrupted, which ends their retries. Records of exports that never ran
+     * stay counted in {@link #inFlightRecords()}, for the caller's abandoned count.
+     */
+    void shutdownNow(String why) {
+        for (Runnable r : pool.shutdownNow()) LogSinkBatcher.fail(((Task) r).acks, why);
+    }
+
+    private final class Task implements Runnable {
+        final int records;
+        final List<LogSinkBatcher.Ack> acks;
+        final Runnable export;
+
+        Task(int records, List<LogSinkBatcher.Ack> acks, Runnable export) {
+            this.records = records;
+            this.acks = acks;
+            this.export = export;
+        }
+
+        @Override
+        public void run() {
+            try {
+                export.run();
+            } finally {
+                inFlight.addAndGet(-records);
+            }
+        }
+    }
+}
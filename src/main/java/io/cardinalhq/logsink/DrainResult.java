@@ -0,0 +1,40 @@
+package io.cardinalhq.logsink;
+
+/**
+ * Outcome of a bounded shutdown drain: how many records queued at shutdown reached the
+ * collector, and how many were abandoned (export failed, timed out, or never attempted
+ * before the deadline).
+ */
+public final class DrainResult {
+    private final long delivered;
+    private final long abandoned;
+    private final long elapsedMillis;
+
+    DrainResult(long delivered, long abandoned, long elapsedMillis) {
+        this.delivered = delivered;
+        this.abandoned = abandoned;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    public long getAbandoned() {
+        return abandoned;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** True when nothing was left behind. */
+    public boolean isComplete() {
+        return abandoned == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "delivered=" + delivered + ", abandoned=" + abandoned + ", elapsedMs=" + elapsedMillis;
+    }
+}
@@ -0,0 +1,136 @@
+package io.cardinalhq.logsink;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+
+import java.util.Arrays;
+
+/**
+ * The fields of one {@link LogSinkEvent} in reusable arrays: typed attribute values sit in
+ * primitive slots and strings are copied into char buffers owned by the draft, so filling one in
+ * allocates nothing once the buffers have grown to the event's size. Drafts change hands with
+ * ring slots instead of being copied; the consumer builds the {@link LogRecord} from the draft
+ * and leaves it in the slot for the next producer to take over.
+ */
+final class EventDraft {
+    static final byte LONG = 1, DOUBLE = 2, BOOLEAN = 3, STRING = 4, BYTES = 5;
+
+    long timeNanos;
+    long observedNanos;
+    int severity;
+    String severityText;
+    LogSinkRoute route;
+    long charged; // bytes charged to the memory budget, 0 without one
+
+    private char[] body = new char[64];
+    private int bodyLength = -1; // -1 => no body
+
+    private int attrs;
+    private String[] keys = new String[8];
+    private byte[] kinds = new byte[8];
+    private long[] bits = new long[8];     // long, double bits, or 0/1
+    private char[][] text = new char[8][];
+    private byte[][] data = new byte[8][];
+    private int[] textLength = new int[8]; // chars of a string, or bytes of a byte array
+
+    void reset(int severity, String severityText) {
+        this.timeNanos = 0;
+        this.observedNanos = 0;
+        this.severity = severity;
+        this.severityText = severityText;
+        this.route = null;
+        this.charged = 0;
+        this.bodyLength = -1;
+        for (int i = 0; i < attrs; i++) keys[i] = null;
+        this.attrs = 0;
+    }
+
+    void setBody(CharSequence cs) {
+        if (cs == null) {
+            bodyLength = -1;
+            return;
+        }
+        body = copy(cs, body);
+        bodyLength = cs.length();
+    }
+
+    void add(String key, byte kind, long value) {
+        int i = slot(key, kind);
+        bits[i] = value;
+    }
+
+    void add(String key, CharSequence value) {
+        int i = slot(key, STRING);
+        text[i] = copy(value, text[i]);
+        textLength[i] = value.length();
+    }
+
+    void add(String key, byte[] value) {
+        int i = slot(key, BYTES);
+        byte[] into = data[i];
+        if (into == null || into.length < value.length) into = data[i] = new byte[Math.max(value.length, 16)];
+        System.arraycopy(value, 0, into, 0, value.length);
+        textLength[i] = value.length;
+    }
+
+    private int slot(String key, byte kind) {
+        if (attrs == keys.length) {
+            int n = attrs * 2;
+            keys = Arrays.copyOf(keys, n);
+            kinds = Arrays.copyOf(kinds, n);
+            bits = Arrays.copyOf(bits, n);
+            text = Arrays.copyOf(text, n);
+            data = Arrays.copyOf(data, n);
+            textLength = Arrays.copyOf(textLength, n);
+        }
+        int i = attrs++;
+        keys[i] = key;
+        kinds[i] = kind;
+        return i;
+    }
+
+    private static char[] copy(CharSequence cs, char[] into) {
+        int n = cs.length();
+        if (into == null || into.length < n) into = new char[Math.max(n, into == null ? 16 : into.length * 2)];
+        if (cs instanceof String) {
+            ((String) cs).getChars(0, n, into, 0);
+        } else if (cs instanceof StringBuilder) {
+            ((StringBuilder) cs).getChars(0, n, into, 0);
+        } else {
+            for (int i = 0; i < n; i++) into[i] = cs.charAt(i);
+        }
+        return into;
+    }
+
+    /** What the record will weigh in the memory budget, estimated before it is built. */
+    long estimatedBytes() {
+        long n = 24 + Math.max(0, bodyLength) + (severityText == null ? 0 : severityText.length());
+        for (int i = 0; i < attrs; i++) {
+            n += 8 + keys[i].length() + (kinds[i] == STRING || kinds[i] == BYTES ? textLength[i] : 9);
+        }
+        return n + MemoryBudget.RECORD_OVERHEAD;
+    }
+
+    LogRecord toRecord() {
+        LogRecord.Builder b = LogRecord.newBuilder()
+                .setTimeUnixNano(timeNanos)
+                .setObservedTimeUnixNano(observedNanos)
+                .setSeverityNumberValue(severity);
+        if (severityText != null) b.setSeverityText(severityText);
+        if (bodyLength >= 0) b.setBody(AnyValue.newBuilder().setStringValue(new String(body, 0, bodyLength)));
+        for (int i = 0; i < attrs; i++) {
+            AnyValue.Builder v = AnyValue.newBuilder();
+            switch (kinds[i]) {
+                case LONG: v.setIntValue(bits[i]); break;
+                case DOUBLE: v.setDoubleValue(Double.longBitsToDouble(bits[i])); break;
+                case BOOLEAN: v.setBoolValue(bits[i] != 0); break;
+                case BYTES: v.setBytesValue(ByteString.copyFrom(data[i], 0, textLength[i])); break;
+                default: v.setStringValue(new String(text[i], 0, textLength[i]));
+            }
+            b.addAttributes(KeyValue.newBuilder().setKey(keys[i]).setValue(v));
+        }
+        return b.build();
+    }
+}
@@ -0,0 +1,99 @@
+package io.cardinalhq.logsink;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the batch exports the consumer thread cuts. This is the Java 17 implementation: one
+ * export thread sends the batches one at a time, in order, so the consumer keeps appending records
+ * and meeting ack deadlines while a request is in flight. While the thread is busy the consumer
+ * holds partial batches back and only full ones queue; up to {@code maxInFlight} batches wait,
+ * and beyond that the consumer waits and the ring fills up as it would behind a blocking send.
+ * On Java 21 and later the multi-release jar replaces this class with one that exports on
+ * virtual threads, out of order (see {@code src/main/java21}); both have the same members.
+ */
+final class ExportWorkers {
+    private final int maxQueued;
+    private final Semaphore permits;
+    private final AtomicLong inFlight = new AtomicLong(); // records queued or exporting
+    private final ThreadPoolExecutor thread;
+    private final Runnable freed;
+
+    /** {@code freed} runs on the export thread after each export, once {@link #busy()} may be false. */
+    ExportWorkers(int maxInFlight, Runnable freed) {
+        this.maxQueued = Math.max(1, maxInFlight);
+        this.freed = freed;
+        this.permits = new Semaphore(maxQueued);
+        this.thread = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "logsink-export");
+            t.setDaemon(true);
+            return t;
+        });
+        thread.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queues {@code export}, which carries {@code records} records, once fewer than the cap are waiting. */
+    void execute(int records, Runnable export) {
+        inFlight.addAndGet(records); // counted while waiting, so a drain giving up accounts for them
+        permits.acquireUninterruptibly();
+        try {
+            thread.execute(() -> {
+                try {
+                    export.run();
+                } finally {
+                    inFlight.addAndGet(-records);
+                    permits.release();
+                    freed.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.addAndGet(-records);
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Exports that may run at once. */
+    int parallelism() {
+        return 1;
+    }
+
+    /** Whether a new export would wait: here, whether the export thread has work. */
+    boolean busy() {
+        return inFlight.get() > 0;
+    }
+
+    /** Records in exports that have not finished yet. */
+    long inFlightRecords() {
+        return inFlight.get();
+    }
+
+    /** Waits until no export is queued or running, or the deadline passes. */
+    boolean awaitIdle(long deadlineNanos) {
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            if (!permits.tryAcquire(maxQueued, remaining, TimeUnit.NANOSECONDS)) return false;
+            permits.release(maxQueued);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Drops the queued exports and interrupts the running one. Records of exports that never ran
+     * stay counted in {@link #inFlightRecords()}, for the caller's abandoned count.
+     */
+    void shutdownNow() {
+        thread.shutdownNow();
+    }
+
+    String describe() {
+        return "on one export thread, in order, up to " + maxQueued + " batches queued";
+    }
+}
@@ -0,0 +1,227 @@
+package io.cardinalhq.logsink;
+
+import org.apache.logging.log4j.Level;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Holds recent low-severity events per thread or per trace id instead of exporting them, and
+ * hands them over only when an ERROR or FATAL occurs on the same key within the window.
+ * <p>
+ * Each key owns a small ring of preallocated entries that are overwritten in place, so the
+ * append path stores a few references and the formatted message and builds no protobuf. Entries
+ * older than the window are skipped on flush and freed by a periodic sweep. All rings together
+ * are capped by an approximate byte budget; events that would exceed it are not buffered.
+ * <p>
+ * The sweep thread runs between {@link #start()} and {@link #close()}, which the appender calls
+ * from its own start and stop, so a configuration that is built but never started owns no thread.
+ */
+final class FlightRecorder {
+    /** Approximate fixed cost of a buffered entry beyond its message characters. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    static final class Entry {
+        long timeMillis;
+        Level level;
+        String loggerName;
+        String threadName;
+        String message;
+        Throwable thrown;
+        int weight;
+
+        void clear() {
+            level = null;
+            loggerName = null;
+            threadName = null;
+            message = null;
+            thrown = null;
+            weight = 0;
+        }
+    }
+
+    private final int capacity;
+    private final long windowMillis;
+    private final long maxBytes;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ThreadLocal<Ring> threadRings;
+    private final ConcurrentLinkedQueue<Ring> threadRingRegistry = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Ring> keyedRings = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper; // guarded by this; null until started and after close
+
+    FlightRecorder(int capacityPerKey, long windowMillis, long maxBytes) {
+        this.capacity = Math.max(1, capacityPerKey);
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.threadRings = ThreadLocal.withInitial(() -> {
+            Ring r = new Ring(capacity, Thread.currentThread());
+            threadRingRegistry.add(r);
+            return r;
+        });
+    }
+
+    /** Starts the periodic sweep; a no-op while it runs. */
+    synchronized void start() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "logsink-flight-recorder-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(100, windowMillis / 2);
+        sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Buffers one event under {@code key} (null = the calling thread). Returns false if the byte cap was hit. */
+    boolean record(String key, long timeMillis, Level level, String loggerName, String threadName,
+                   String message, Throwable thrown) {
+        int weight = ENTRY_OVERHEAD + 2 * message.length() + (thrown != null ? 1024 : 0);
+        if (bytes.addAndGet(weight) > maxBytes) {
+            bytes.addAndGet(-weight);
+            dropped.incrementAndGet();
+            return false;
+        }
+        while (true) {
+            Ring ring = key == null ? threadRings.get() : keyedRings.computeIfAbsent(key, k -> new Ring(capacity, null));
+            synchronized (ring) {
+                if (ring.retired) continue; // flushed or expired concurrently; take the fresh ring
+                store(ring, timeMillis, level, loggerName, threadName, message, thrown, weight);
+            }
+            return true;
+        }
+    }
+
+    /** Caller holds the ring lock. */
+    private void store(Ring ring, long timeMillis, Level level, String loggerName, String threadName,
+                       String message, Throwable thrown, int weight) {
+        Entry e = ring.entries[ring.next];
+        if (e.weight != 0) {
+            bytes.addAndGet(-e.weight); // overwriting the oldest entry
+        } else {
+            ring.size++;
+        }
+        e.timeMillis = timeMillis;
+        e.level = level;
+        e.loggerName = loggerName;
+        e.threadName = threadName;
+        e.message = message;
+        e.thrown = thrown;
+        e.weight = weight;
+        ring.next = (ring.next + 1) % capacity;
+        ring.lastTouched = timeMillis;
+    }
+
+    /**
+     * Passes the buffered events of {@code key} that are within the window, oldest first, to
+     * {@code sink} and empties the ring.
+     */
+    void flush(String key, long nowMillis, Consumer<Entry> sink) {
+        Ring ring = key == null ? threadRings.get() : keyedRings.remove(key);
+        if (ring == null) return;
+        synchronized (ring) {
+            ring.retired = key != null;
+            long oldest = nowMillis - windowMillis;
+            int start = (ring.next - ring.size + capacity) % capacity;
+            for (int i = 0; i < ring.size; i++) {
+                Entry e = ring.entries[(start + i) % capacity];
+                if (e.timeMillis >= oldest) sink.accept(e);
+                bytes.addAndGet(-e.weight);
+                e.clear();
+            }
+            ring.size = 0;
+            ring.next = 0;
+        }
+    }
+
+    long bufferedBytes() {
+        return bytes.get();
+    }
+
+    long droppedEvents() {
+        return dropped.get();
+    }
+
+    /** Stops the sweep and waits briefly for a sweep in progress; {@link #start()} may follow. */
+    synchronized void close() {
+        if (sweeper == null) return;
+        sweeper.shutdownNow();
+        try {
+            sweeper.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sweeper = null;
+    }
+
+    /** Frees entries that aged out of the window and forgets rings of finished threads and traces. */
+    private void sweep() {
+        long oldest = System.currentTimeMillis() - windowMillis;
+        for (Iterator<Ring> it = threadRingRegistry.iterator(); it.hasNext(); ) {
+            Ring r = it.next();
+            expire(r, oldest);
+            Thread owner = r.owner == null ? null : r.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                synchronized (r) {
+                    if (r.size == 0) it.remove();
+                }
+            }
+        }
+        keyedRings.forEach((k, r) -> {
+            if (r.lastTouched < oldest) {
+                flushExpired(k, r);
+            } else {
+                expire(r, oldest);
+            }
+        });
+    }
+
+    private void flushExpired(String key, Ring r) {
+        if (!keyedRings.remove(key, r)) return;
+        synchronized (r) {
+            r.retired = true;
+            for (Entry e : r.entries) {
+                bytes.addAndGet(-e.weight);
+                e.clear();
+            }
+            r.size = 0;
+        }
+    }
+
+    private void expire(Ring r, long oldest) {
+        synchronized (r) {
+            int start = (r.next - r.size + capacity) % capacity;
+            while (r.size > 0) {
+                Entry e = r.entries[start];
+                if (e.timeMillis >= oldest) break;
+                bytes.addAndGet(-e.weight);
+                e.clear();
+                start = (start + 1) % capacity;
+                r.size--;
+            }
+        }
+    }
+
+    private static final class Ring {
+        final Entry[] entries;
+        final WeakReference<Thread> owner; // null for trace-keyed rings
+        int next;
+        int size;
+        long lastTouched;
+        boolean retired; // removed from the keyed map; writers must look the key up again
+
+        Ring(int capacity, Thread owner) {
+            this.entries = new Entry[capacity];
+            for (int i = 0; i < capacity; i++) entries[i] = new Entry();
+            this.owner = owner == null ? null : new WeakReference<>(owner);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.cardinalhq.logsink;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces exports against two targets: a latency target, the longest a record may wait for its
+ * batch ({@code flushIntervalMillis}), and an efficiency target, the serialized bytes one request
+ * should carry ({@code targetRequestBytes}). A lane is exported once it holds the current batch
+ * size or the target bytes, or once {@link #due} says its partial batch should not wait longer.
+ * <p>
+ * Without an efficiency target the controller stays out of the way: batches are
+ * {@code maxBatchSize} records and a partial batch is due as soon as the queue runs dry. With one,
+ * both numbers are recomputed about every 100 ms from moving averages of what the consumer sees:
+ * <ul>
+ *   <li>The batch size is the target bytes divided by the average record size, raised when
+ *       exports are slow so that the records arriving during one export fit in the exports
+ *       allowed in flight, and capped by {@code maxBatchSize}.</li>
+ *   <li>A lane's linger is the average export latency, capped by the latency target. Records
+ *       that arrive during an export would wait for it anyway, so collecting them for that long
+ *       trades fewer requests for little delivery latency. Before any export has been timed the
+ *       linger is zero, which is the behaviour without a target.</li>
+ *   <li>A partial batch is not held for a record that is unlikely to come in time: it is due
+ *       once its lane has been quiet for one inter-arrival gap, or once waiting another gap would
+ *       take it past its linger.</li>
+ * </ul>
+ * Everything but {@link #exported} and the latency target runs on the consumer thread.
+ */
+final class LingerController {
+    static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double WEIGHT = 0.3; // of the latest window in each moving average
+
+    private volatile long maxLingerNanos;
+    private final int targetBytes;
+    private final int parallelism;
+
+    private final AtomicLong exportNanos = new AtomicLong(); // written by whatever runs the exports
+    private final AtomicLong exports = new AtomicLong();
+
+    private long windowStart;
+    private long windowRecords;
+    private long windowBytes;
+    private long seenExportNanos;
+    private long seenExports;
+    private double rate;        // records per nanosecond, all lanes
+    private double recordBytes;
+    private double exportLatency;
+    private int batchRecords;
+
+    private volatile long lingerView; // default lane, for JMX
+    private volatile int batchView;
+
+    LingerController(long maxLingerMillis, int targetBytes, int parallelism, int maxBatchSize) {
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.targetBytes = targetBytes;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchRecords = maxBatchSize;
+        this.batchView = maxBatchSize;
+        this.lingerView = 0;
+        this.windowStart = System.nanoTime();
+    }
+
+    long maxLingerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLingerNanos);
+    }
+
+    /** Applies to lanes at once; lingers adapt to it within a window. */
+    void setMaxLingerMillis(long millis) {
+        maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /** Whether a lane holding {@code bytes} serialized bytes reached the efficiency target. */
+    boolean full(long bytes) {
+        return targetBytes > 0 && bytes >= targetBytes;
+    }
+
+    /** Records per request at the current load, before {@code maxBatchSize} applies. */
+    int batchRecords() {
+        return batchRecords;
+    }
+
+    double lingerMillis() {
+        return lingerView / 1e6;
+    }
+
+    int batchSize() {
+        return batchView;
+    }
+
+    void arrived(LogSinkBatcher.Lane lane, int bytes, long now) {
+        lane.lastNanos = now;
+        lane.arrivals++;
+        windowRecords++;
+        windowBytes += bytes;
+    }
+
+    /** Reports one finished export; called from any thread. */
+    void exported(long nanos) {
+        exportNanos.addAndGet(nanos);
+        exports.incrementAndGet();
+    }
+
+    /** Recomputes batch size and lingers once a window has passed; cheap otherwise. */
+    void update(long now, List<LogSinkBatcher.Lane> lanes, int maxBatchSize) {
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NANOS) return;
+        windowStart = now;
+
+        rate = average(rate, windowRecords / (double) elapsed);
+        if (windowRecords > 0) recordBytes = average(recordBytes, windowBytes / (double) windowRecords);
+        long n = exports.get();
+        long total = exportNanos.get();
+        if (n > seenExports) exportLatency = average(exportLatency, (total - seenExportNanos) / (double) (n - seenExports));
+        seenExports = n;
+        seenExportNanos = total;
+        windowRecords = 0;
+        windowBytes = 0;
+
+        for (LogSinkBatcher.Lane lane : lanes) {
+            lane.rate = average(lane.rate, lane.arrivals / (double) elapsed);
+            lane.arrivals = 0;
+        }
+        if (targetBytes <= 0) {
+            batchRecords = maxBatchSize;
+            batchView = batchRecords;
+            return;
+        }
+
+        double fill = recordBytes > 0 ? targetBytes / recordBytes : maxBatchSize;
+        double keepUp = rate * exportLatency / parallelism;
+        batchRecords = (int) Math.max(1, Math.min(maxBatchSize, Math.max(fill, keepUp)));
+
+        long linger = (long) Math.min(maxLingerNanos, exportLatency);
+        for (LogSinkBatcher.Lane lane : lanes) lane.lingerNanos = linger;
+        lingerView = linger;
+        batchView = batchRecords;
+    }
+
+    /** Whether the partial batch of {@code lane} should be sent at {@code now}, when the queue is idle. */
+    boolean due(LogSinkBatcher.Lane lane, long now) {
+        long linger = Math.min(lane.lingerNanos, maxLingerNanos);
+        if (linger <= 0 || lane.rate <= 0) return true;
+        long gap = (long) Math.min(maxLingerNanos, 1 / lane.rate);
+        return now - lane.lastNanos >= gap || now - lane.firstNanos + gap >= linger;
+    }
+
+    private static double average(double previous, double latest) {
+        return previous == 0 ? latest : previous + WEIGHT * (latest - previous);
+    }
+}
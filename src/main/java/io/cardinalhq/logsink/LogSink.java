@@ -1,5 +1,7 @@
 package io.cardinalhq.logsink;
 
+import io.cardinalhq.logsink.metrics.LogMetricsStage;
+import io.cardinalhq.logsink.template.TemplateMiner;
 import io.opentelemetry.proto.common.v1.AnyValue;
 import io.opentelemetry.proto.common.v1.KeyValue;
 import io.opentelemetry.proto.logs.v1.LogRecord;
@@ -8,6 +10,8 @@ import org.apache.logging.log4j.status.StatusLogger;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 
@@ -15,14 +19,102 @@ public class LogSink {
     private static final StatusLogger logger = StatusLogger.getLogger();
 
     private final LogSinkBatcher batcher;
+    private final TemplateMiner templateMiner;
+    private final LogMetricsStage metrics;
+    private final LogSinkExporter exporter;
+    private final long shutdownTimeoutMillis;
+    private final Thread shutdownHook;
+    private final LogSinkControl control; // null when JMX is off
+    private final ThreadLocal<LogSinkEvent> events = ThreadLocal.withInitial(() -> new LogSinkEvent(this));
 
     public LogSink(LogSinkConfig config) {
-        LogSinkExporter exporter = new LogSinkExporter(config);
+        this.exporter = new LogSinkExporter(config);
         this.batcher = new LogSinkBatcher(config, exporter);
+        this.templateMiner = config.isTemplateMining()
+                ? new TemplateMiner(config.getTemplateMaxClusters())
+                : null;
+        this.metrics = config.isLogMetrics() ? new LogMetricsStage(config, exporter) : null;
+        this.shutdownTimeoutMillis = config.getShutdownTimeoutMillis();
+        if (config.isJmxEnabled()) {
+            this.control = new LogSinkControl(batcher, exporter);
+            control.register(config.getAppName());
+        } else {
+            this.control = null;
+        }
+        if (config.isRegisterShutdownHook()) {
+            this.shutdownHook = new Thread(this::drainOnExit, "logsink-shutdown-hook");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            this.shutdownHook = null;
+        }
     }
 
     public boolean log(LogRecord record) {
-        return batcher.add(record);
+        return log(null, record);
+    }
+
+    /**
+     * Logs a record for another service hosted in this JVM: it is batched and sent with the
+     * route's resource (and endpoint, if set) instead of the sink's. Null means the sink's own.
+     */
+    public boolean log(LogSinkRoute route, LogRecord record) {
+        if (templateMiner != null) {
+            record = templateMiner.annotate(record);
+        }
+        if (metrics != null && !metrics.accept(route, record)) {
+            return true; // counted; below the metrics-only severity, so not shipped
+        }
+        return batcher.add(record, route);
+    }
+
+    /**
+     * Logs a record and reports whether the collector accepted it. The future completes when
+     * the batch carrying the record got a 2xx, and fails when the batch was refused or went
+     * unanswered after retries, or when the record could not be queued at all. Concurrent
+     * callers share batches, so many acknowledged records cost one round trip, not one each.
+     * Acknowledged records are never sampled or cut by the minimum severity.
+     */
+    public CompletableFuture<Void> logAcknowledged(LogRecord record) {
+        return logAcknowledged(null, record);
+    }
+
+    /** {@link #logAcknowledged(LogRecord)} for a record of another service; see {@link #log(LogSinkRoute, LogRecord)}. */
+    public CompletableFuture<Void> logAcknowledged(LogSinkRoute route, LogRecord record) {
+        if (templateMiner != null) {
+            record = templateMiner.annotate(record);
+        }
+        if (metrics != null) {
+            metrics.accept(route, record); // shipped regardless of the metrics-only severity
+        }
+        return batcher.addAcknowledged(record, route);
+    }
+
+    /**
+     * Starts a record on this thread's reusable {@link LogSinkEvent}; finish it with
+     * {@link LogSinkEvent#emit()}. Unlike the other {@code log} methods this allocates nothing
+     * per record on the calling thread once warmed up.
+     */
+    public LogSinkEvent event(SeverityNumber severity) {
+        int n = severity.getNumber();
+        return event(n, n >= 1 && n <= 24 ? SeverityFilter.BANDS[(n - 1) / 4] : null);
+    }
+
+    /** {@link #event(SeverityNumber)} with the severity mapped as in {@link #log(long, String, Level, String...)}. */
+    public LogSinkEvent event(Level level) {
+        return event(mapLevelToSeverity(level).getNumber(), level.getName());
+    }
+
+    private LogSinkEvent event(int severity, String severityText) {
+        LogSinkEvent e = events.get();
+        if (e.open) e = new LogSinkEvent(this); // started while building another; leave that one intact
+        return e.start(severity, severityText);
+    }
+
+    boolean emit(LogSinkEvent e) {
+        if (templateMiner != null || metrics != null) {
+            return log(e.draft.route, e.draft.toRecord()); // these stages work on the built record
+        }
+        return batcher.add(e);
     }
 
     public boolean log(long timestamp, String message, Level level, String... tags) {
@@ -51,7 +143,7 @@ public class LogSink {
                 .addAllAttributes(attributes)
                 .build();
 
-        return batcher.add(record);
+        return log(record);
     }
 
     private SeverityNumber mapLevelToSeverity(Level level) {
@@ -69,7 +161,43 @@ public class LogSink {
         batcher.flush();
     }
 
+    LogSinkBatcher batcher() {
+        return batcher;
+    }
+
     public void shutdown() {
-        batcher.shutdown();
+        shutdown(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting records and delivers what is already queued, giving up at the deadline.
+     * The final log metrics export, if enabled, gets whatever the drain leaves of the deadline.
+     * Safe to call more than once; later calls return the first result.
+     */
+    public DrainResult shutdown(long timeout, TimeUnit unit) {
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignore) {
+                // JVM already exiting; the hook is running or about to
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        DrainResult r = batcher.shutdown(timeout, unit);
+        if (metrics != null) metrics.close(deadline); // the final counts get what the drain left of the deadline
+        if (control != null) control.unregister();
+        exporter.close();
+        return r;
+    }
+
+    private void drainOnExit() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        DrainResult r = batcher.shutdown(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (metrics != null) metrics.close(deadline);
+        if (control != null) control.unregister();
+        exporter.close();
+        if (!r.isComplete()) {
+            logger.warn("LogSink shutdown abandoned records: {}", r);
+        }
     }
 }
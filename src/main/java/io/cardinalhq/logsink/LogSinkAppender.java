@@ -40,9 +40,31 @@ public final class LogSinkAppender extends AbstractAppender {
     private final int maxBatchSize;
     private final boolean enableGc;
     private final boolean enableStdStreams;
+    private final boolean enableTemplateMining;
+    private final long shutdownTimeoutMillis;
+    private final int ingestStripes;
+    private final long stripeFlushMillis;
+    private final long maxQueuedBytes;
+    private final double heapPressureThreshold;
+    private final boolean enableLogMetrics;
+    private final List<String> metricDimensions;  // empty => config default
+    private final int metricsOnlyBelow;           // severity number; 0 => ship everything
+    private final FlightRecorder flightRecorder;  // null => low-severity events ship as usual
+    private final Level flightRecorderBelow;      // events less severe than this are buffered
+    private final String flightRecorderKey;       // context-data key; null => per thread
+    private final LogSinkConfig.Transport transport;
+    private final boolean routeByContext;
+    private final int maxRoutes;
+    private final int maxInFlightExports;
+    private final long flushIntervalMillis;
+    private final int targetRequestBytes;
+    private final boolean jmx;
+    private final String sharedRingFile;  // transport="sharedRing" only
+    private final int sharedRingBytes;
 
     // ---- Internal ----
     private volatile LogSink sink;                 // created lazily on first event with endpoint
+    private RouteCache routes;                     // routeByContext only; published by the write to sink
     private volatile boolean bridgesInstalled;     // ensure bridges only once
     private GcJfrOtelBridge jfrBridge;
 
@@ -56,13 +78,55 @@ public final class LogSinkAppender extends AbstractAppender {
             int queueSize,
             int maxBatchSize,
             boolean enableGc,
-            boolean enableStdStreams
+            boolean enableStdStreams,
+            boolean enableTemplateMining,
+            long shutdownTimeoutMillis,
+            int ingestStripes,
+            long stripeFlushMillis,
+            long maxQueuedBytes,
+            double heapPressureThreshold,
+            boolean enableLogMetrics,
+            List<String> metricDimensions,
+            int metricsOnlyBelow,
+            FlightRecorder flightRecorder,
+            Level flightRecorderBelow,
+            String flightRecorderKey,
+            LogSinkConfig.Transport transport,
+            boolean routeByContext,
+            int maxRoutes,
+            int maxInFlightExports,
+            long flushIntervalMillis,
+            int targetRequestBytes,
+            boolean jmx,
+            String sharedRingFile,
+            int sharedRingBytes
     ) {
         super(name, filter, layout, ignoreExceptions, Property.EMPTY_ARRAY);
         this.queueSize = queueSize > 0 ? queueSize : 1000;
         this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 100;
         this.enableGc = enableGc;
         this.enableStdStreams = enableStdStreams;
+        this.enableTemplateMining = enableTemplateMining;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis > 0 ? shutdownTimeoutMillis : 5000;
+        this.ingestStripes = Math.max(0, ingestStripes);
+        this.stripeFlushMillis = stripeFlushMillis > 0 ? stripeFlushMillis : 5;
+        this.maxQueuedBytes = Math.max(0, maxQueuedBytes);
+        this.heapPressureThreshold = heapPressureThreshold > 0 && heapPressureThreshold < 1 ? heapPressureThreshold : 0;
+        this.enableLogMetrics = enableLogMetrics;
+        this.metricDimensions = metricDimensions;
+        this.metricsOnlyBelow = metricsOnlyBelow;
+        this.flightRecorder = flightRecorder;
+        this.flightRecorderBelow = flightRecorderBelow;
+        this.flightRecorderKey = flightRecorderKey;
+        this.transport = transport;
+        this.routeByContext = routeByContext;
+        this.maxRoutes = maxRoutes > 0 ? maxRoutes : 64;
+        this.maxInFlightExports = maxInFlightExports > 0 ? maxInFlightExports : 16;
+        this.flushIntervalMillis = flushIntervalMillis > 0 ? flushIntervalMillis : 1000;
+        this.targetRequestBytes = Math.max(0, targetRequestBytes); // 0: adaptive batching off
+        this.jmx = jmx;
+        this.sharedRingFile = sharedRingFile;
+        this.sharedRingBytes = sharedRingBytes > 0 ? sharedRingBytes : 64 << 20;
     }
 
     @PluginFactory
@@ -72,6 +136,30 @@ public final class LogSinkAppender extends AbstractAppender {
             @PluginAttribute(value = "maxBatchSize", defaultInt = 100) int maxBatchSize,
             @PluginAttribute(value = "enableGC", defaultBoolean = false) boolean enableGc,
             @PluginAttribute(value = "enableStdStreams", defaultBoolean = false) boolean enableStdStreams,
+            @PluginAttribute(value = "enableTemplateMining", defaultBoolean = false) boolean enableTemplateMining,
+            @PluginAttribute(value = "shutdownTimeoutMillis", defaultLong = 5000) long shutdownTimeoutMillis,
+            @PluginAttribute(value = "ingestStripes", defaultInt = 0) int ingestStripes,
+            @PluginAttribute(value = "stripeFlushMillis", defaultLong = 5) long stripeFlushMillis,
+            @PluginAttribute(value = "maxQueuedBytes", defaultLong = 0) long maxQueuedBytes,
+            @PluginAttribute(value = "heapPressureThreshold", defaultDouble = 0) double heapPressureThreshold,
+            @PluginAttribute(value = "enableLogMetrics", defaultBoolean = false) boolean enableLogMetrics,
+            @PluginAttribute("metricDimensions") String metricDimensions,   // e.g. "severity,log4j.logger,exception.type"
+            @PluginAttribute("metricsOnlyBelow") String metricsOnlyBelow,   // Log4j level, e.g. "WARN"
+            @PluginAttribute(value = "flightRecorder", defaultBoolean = false) boolean flightRecorder,
+            @PluginAttribute(value = "flightRecorderBelow", defaultString = "INFO") String flightRecorderBelow,
+            @PluginAttribute(value = "flightRecorderKey", defaultString = "thread") String flightRecorderKey, // or e.g. "trace_id"
+            @PluginAttribute(value = "flightRecorderWindowMillis", defaultLong = 30_000) long flightRecorderWindowMillis,
+            @PluginAttribute(value = "flightRecorderPerKey", defaultInt = 256) int flightRecorderPerKey,
+            @PluginAttribute(value = "flightRecorderMaxBytes", defaultLong = 8L << 20) long flightRecorderMaxBytes,
+            @PluginAttribute(value = "transport", defaultString = "otlp") String transport, // otlp | columnar | sharedRing
+            @PluginAttribute(value = "routeByContext", defaultBoolean = false) boolean routeByContext,
+            @PluginAttribute(value = "maxRoutes", defaultInt = 64) int maxRoutes,
+            @PluginAttribute(value = "maxInFlightExports", defaultInt = 16) int maxInFlightExports, // queued batches on Java 17
+            @PluginAttribute(value = "flushIntervalMillis", defaultLong = 1000) long flushIntervalMillis, // latency target
+            @PluginAttribute(value = "targetRequestBytes", defaultInt = 0) int targetRequestBytes,
+            @PluginAttribute(value = "jmx", defaultBoolean = false) boolean jmx,
+            @PluginAttribute("sharedRingFile") String sharedRingFile,
+            @PluginAttribute(value = "sharedRingBytes", defaultInt = 64 << 20) int sharedRingBytes,
             @PluginElement("Filter") Filter filter,
             @PluginElement("Layout") Layout<? extends Serializable> layout
     ) {
@@ -82,12 +170,35 @@ public final class LogSinkAppender extends AbstractAppender {
         if (layout == null) {
             layout = PatternLayout.newBuilder().withPattern("%m%n").build();
         }
-        return new LogSinkAppender(name, filter, layout, true, queueSize, maxBatchSize, enableGc, enableStdStreams);
+        return new LogSinkAppender(name, filter, layout, true, queueSize, maxBatchSize, enableGc, enableStdStreams,
+                enableTemplateMining, shutdownTimeoutMillis, ingestStripes, stripeFlushMillis,
+                maxQueuedBytes, heapPressureThreshold, enableLogMetrics, splitList(metricDimensions),
+                metricsOnlyBelow == null || metricsOnlyBelow.isBlank()
+                        ? 0 : mapSeverity(Level.toLevel(metricsOnlyBelow.trim(), Level.INFO)).getNumber(),
+                flightRecorder ? new FlightRecorder(
+                        flightRecorderPerKey > 0 ? flightRecorderPerKey : 256,
+                        flightRecorderWindowMillis > 0 ? flightRecorderWindowMillis : 30_000,
+                        flightRecorderMaxBytes > 0 ? flightRecorderMaxBytes : 8L << 20) : null,
+                Level.toLevel(trim(flightRecorderBelow), Level.INFO),
+                flightRecorderKey == null || flightRecorderKey.isBlank() || "thread".equals(flightRecorderKey.trim())
+                        ? null : flightRecorderKey.trim(),
+                parseTransport(trim(transport)),
+                routeByContext, maxRoutes, maxInFlightExports, flushIntervalMillis, targetRequestBytes, jmx,
+                trim(sharedRingFile), sharedRingBytes);
+    }
+
+    private static LogSinkConfig.Transport parseTransport(String transport) {
+        if ("columnar".equalsIgnoreCase(transport)) return LogSinkConfig.Transport.COLUMNAR;
+        if ("sharedRing".equalsIgnoreCase(transport) || "shared-ring".equalsIgnoreCase(transport)) {
+            return LogSinkConfig.Transport.SHARED_RING;
+        }
+        return LogSinkConfig.Transport.OTLP;
     }
 
     @Override
     public void start() {
         // No sink yet; we’ll build it on the first event that has an endpoint in context
+        if (flightRecorder != null) flightRecorder.start();
         super.start();
     }
 
@@ -95,8 +206,8 @@ public final class LogSinkAppender extends AbstractAppender {
     public void append(LogEvent event) {
         if (!isStarted()) return;
 
-        // Once the sink exists, every event is sent unconditionally — no per-event
-        // context lookups, so app logs cannot silently stop while bridges keep running.
+        // Once the sink exists, every event is sent unconditionally — per-event context only
+        // picks a route (routeByContext), so app logs cannot silently stop while bridges keep running.
         LogSink s = sink;
         if (s == null) {
             s = initSink(event);
@@ -106,36 +217,80 @@ public final class LogSinkAppender extends AbstractAppender {
             }
         }
 
-        // Build and send the record (unchanged)
-        long timeUnixNanos = event.getTimeMillis() * 1_000_000L;
-        SeverityNumber sev = mapSeverity(event.getLevel());
+        Level level = event.getLevel();
+        Throwable thrown = event.getThrown();
+        String msg = (event.getMessage() == null) ? "" : event.getMessage().getFormattedMessage();
+
+        FlightRecorder fr = flightRecorder;
+        if (fr != null) {
+            if (level != null && level.intLevel() > flightRecorderBelow.intLevel()) {
+                fr.record(recorderKey(event), event.getTimeMillis(), level, event.getLoggerName(),
+                        event.getThreadName(), msg, thrown);
+                return;
+            }
+            if (level != null && level.isMoreSpecificThan(Level.ERROR)) {
+                // Ship the lead-up first so it sorts before the error it explains.
+                final LogSink target = s;
+                final LogSinkRoute errorRoute = route(event);
+                fr.flush(recorderKey(event), System.currentTimeMillis(), e -> target.log(errorRoute,
+                        buildRecord(e.timeMillis, e.level, e.loggerName, e.threadName, e.message, e.thrown, true)));
+            }
+        }
+
+        s.log(route(event), buildRecord(event.getTimeMillis(), level, event.getLoggerName(), event.getThreadName(), msg, thrown, false));
+    }
+
+    /** The event's route from its context data, or null for the sink's own resource and endpoint. */
+    private LogSinkRoute route(LogEvent event) {
+        RouteCache r = routes;
+        return r == null ? null : r.resolve(event.getContextData());
+    }
+
+    private static LogRecord buildRecord(long timeMillis, Level level, String loggerName, String threadName,
+                                         String msg, Throwable thrown, boolean fromFlightRecorder) {
+        long timeUnixNanos = timeMillis * 1_000_000L;
+        SeverityNumber sev = mapSeverity(level);
+        String levelName = level == null ? Level.INFO.name() : level.name();
 
         List<KeyValue> attrs = new ArrayList<>(8);
         attrs.add(kv("stream", "app"));
-        attrs.add(kv("log4j.logger", safe(event.getLoggerName())));
-        attrs.add(kv("log4j.thread", safe(event.getThreadName())));
-        attrs.add(kv("log4j.level", event.getLevel().name()));
-
+        attrs.add(kv("log4j.logger", safe(loggerName)));
+        attrs.add(kv("log4j.thread", safe(threadName)));
+        attrs.add(kv("log4j.level", levelName));
+        if (fromFlightRecorder) {
+            attrs.add(KeyValue.newBuilder()
+                    .setKey("logsink.flight_recorder")
+                    .setValue(AnyValue.newBuilder().setBoolValue(true))
+                    .build());
+        }
 
-        Throwable thrown = event.getThrown();
         if (thrown != null) {
             attrs.add(kv("exception.type", thrown.getClass().getName()));
             attrs.add(kv("exception.message", thrown.getMessage() == null ? "" : thrown.getMessage()));
             attrs.add(kv("exception.stacktrace", stackToString(thrown)));
         }
 
-        String msg = (event.getMessage() == null) ? "" : event.getMessage().getFormattedMessage();
-
-        LogRecord protoRecord = LogRecord.newBuilder()
+        return LogRecord.newBuilder()
                 .setTimeUnixNano(timeUnixNanos)
                 .setObservedTimeUnixNano(timeUnixNanos)
                 .setSeverityNumber(sev)
-                .setSeverityText(event.getLevel().name())
+                .setSeverityText(levelName)
                 .setBody(AnyValue.newBuilder().setStringValue(msg).build())
                 .addAllAttributes(attrs)
                 .build();
+    }
 
-        s.log(protoRecord);
+    /**
+     * Flight-recorder key of the event: the configured context value (e.g. a trace id), else the
+     * logging thread. Null means "the calling thread's own ring"; with async loggers the appender
+     * runs on another thread, so the event's thread name keys the ring instead.
+     */
+    private String recorderKey(LogEvent event) {
+        if (flightRecorderKey != null) {
+            Object v = event.getContextData().getValue(flightRecorderKey);
+            if (v != null) return v.toString();
+        }
+        return event.getThreadId() == Thread.currentThread().getId() ? null : event.getThreadName();
     }
 
     /**
@@ -151,7 +306,8 @@ public final class LogSinkAppender extends AbstractAppender {
 
             ReadOnlyStringMap ctx = event.getContextData();
             final String endpoint = resolveConfig(ctx, CTX_ENDPOINT, "otel.exporter.otlp.endpoint");
-            if (endpoint == null) return null;
+            // the shared ring's shipper owns the endpoint; this JVM does not need one
+            if (endpoint == null && transport != LogSinkConfig.Transport.SHARED_RING) return null;
 
             final String serviceName = orDefault(
                     resolveConfig(ctx, CTX_SERVICE, "otel.service.name"), "unknown_service:log4j2");
@@ -164,8 +320,28 @@ public final class LogSinkAppender extends AbstractAppender {
                     .setAppName(serviceName)
                     .setQueueSize(queueSize)
                     .setMaxBatchSize(maxBatchSize)
+                    .setTemplateMining(enableTemplateMining)
+                    .setIngestStripes(ingestStripes)
+                    .setStripeFlushMillis(stripeFlushMillis)
+                    .setMaxQueuedBytes(maxQueuedBytes)
+                    .setHeapPressureThreshold(heapPressureThreshold)
+                    .setLogMetrics(enableLogMetrics)
+                    .setMetricsOnlyBelow(metricsOnlyBelow)
+                    .setTransport(transport)
+                    .setMaxInFlightExports(maxInFlightExports)
+                    .setFlushIntervalMillis(flushIntervalMillis)
+                    .setTargetRequestBytes(targetRequestBytes)
+                    .setJmxEnabled(jmx)
+                    .setSharedRingFile(sharedRingFile)
+                    .setSharedRingBytes(sharedRingBytes)
                     .addResourceAttributes(resAttrs);
 
+            if (!metricDimensions.isEmpty()) b.setMetricDimensions(metricDimensions);
+
+            if (routeByContext) {
+                this.routes = new RouteCache(CTX_ENDPOINT, CTX_SERVICE, CTX_RES_ATTRS,
+                        endpoint, serviceName, resStr, maxRoutes);
+            }
             this.sink = new LogSink(b.build());
 
             if (!bridgesInstalled) {
@@ -185,16 +361,28 @@ public final class LogSinkAppender extends AbstractAppender {
         }
     }
 
+    /**
+     * Drains the sink within the stop timeout Log4j hands us (or {@code shutdownTimeoutMillis}
+     * when it passes none), so records queued at shutdown are delivered rather than dropped.
+     */
     @Override
     public boolean stop(long timeout, TimeUnit timeUnit) {
+        long deadline = System.nanoTime() + (timeout > 0
+                ? timeUnit.toNanos(timeout)
+                : TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis));
         try {
             if (jfrBridge != null) { jfrBridge.close(); jfrBridge = null; }
         } catch (Throwable ignore) {}
+        if (flightRecorder != null) flightRecorder.close();
         boolean res = super.stop(timeout, timeUnit);
         try {
             if (sink != null) {
-                sink.flush();
-                sink.shutdown();
+                DrainResult r = sink.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (r.isComplete()) {
+                    LOGGER.info("LogSinkAppender {} drained: {}", getName(), r);
+                } else {
+                    LOGGER.warn("LogSinkAppender {} stopped with undelivered records: {}", getName(), r);
+                }
             }
         } catch (Throwable ignore) {}
         return res;
@@ -222,7 +410,7 @@ public final class LogSinkAppender extends AbstractAppender {
         return v == null ? null : v.toString();
     }
 
-    private static Map<String, String> parseOtelResourceAttributes(String s) {
+    static Map<String, String> parseOtelResourceAttributes(String s) {
         Map<String, String> out = new LinkedHashMap<>();
         if (s == null || s.isBlank()) return out;
         for (String pair : s.split("\\s*,\\s*")) {
@@ -254,6 +442,15 @@ public final class LogSinkAppender extends AbstractAppender {
         return (s == null || s.isEmpty()) ? def : s;
     }
 
+    private static List<String> splitList(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        for (String part : s.split(",")) {
+            if (!part.isBlank()) out.add(part.trim());
+        }
+        return out;
+    }
+
     private static SeverityNumber mapSeverity(Level level) {
         if (level == null) return SeverityNumber.SEVERITY_NUMBER_INFO;
         if (level == Level.TRACE) return SeverityNumber.SEVERITY_NUMBER_TRACE;
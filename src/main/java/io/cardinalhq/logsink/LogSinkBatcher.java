@@ -3,129 +3,598 @@ package io.cardinalhq.logsink;
 import com.lmax.disruptor.*;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import io.cardinalhq.logsink.ring.SharedRingWriter;
 import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.apache.logging.log4j.status.StatusLogger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
 
 public class LogSinkBatcher {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+
+    /** Completion of one acknowledged record; carries the record's route through the ring. */
+    static final class Ack extends CompletableFuture<Void> {
+        final LogSinkRoute route;
+
+        Ack(LogSinkRoute route) {
+            this.route = route;
+        }
+
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new CompletableFuture<>(); // dependents need no route
+        }
+    }
+
     static final class LogEvent {
         LogRecord record;
-        boolean flushTick;
+        LogSinkRoute route; // null => the sink's own endpoint and resource
+        Ack ack;            // set for acknowledged records
+        EventDraft draft;   // owned by the slot; swapped with a LogSinkEvent's when one is queued
+        boolean drafted;    // draft holds a record to build
+        LogRecord[] chunk; // striped mode: records staged by one producer thread, in order
+        LogSinkRoute[] chunkRoutes;
+        int chunkSize;
+        boolean flushRequest;
+        boolean drainMarker;
 
-        void setRecord(LogRecord r) {
+        void setRecord(LogRecord r, LogSinkRoute route) {
             this.record = r;
-            this.flushTick = false;
+            this.route = route;
+            this.flushRequest = false;
+        }
+
+        void setFlushRequest() {
+            this.record = null;
+            this.flushRequest = true;
+        }
+
+        void setChunk(LogRecord[] src, LogSinkRoute[] routes, int n) {
+            if (chunk == null || chunk.length < n) {
+                chunk = new LogRecord[src.length];
+                chunkRoutes = new LogSinkRoute[src.length];
+            }
+            System.arraycopy(src, 0, chunk, 0, n);
+            System.arraycopy(routes, 0, chunkRoutes, 0, n);
+            this.chunkSize = n;
         }
 
-        void setFlushTick() {
+        void setDrainMarker() {
             this.record = null;
-            this.flushTick = true;
+            this.drainMarker = true;
         }
 
         void clear() {
             this.record = null;
-            this.flushTick = false;
+            this.route = null;
+            this.ack = null;
+            this.drafted = false;
+            this.chunkSize = 0;
+            this.flushRequest = false;
+            this.drainMarker = false;
         }
     }
 
+    /** Parallel final exports; the consumer thread alone would send the backlog one request at a time. */
+    private static final int DRAIN_PARALLELISM = 4;
+
+    /** Longest the idle consumer sleeps before checking lingering lanes and staged chunks again. */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** The same with adaptive batching, so a lane that went quiet for one inter-arrival gap is noticed in time. */
+    private static final long ADAPTIVE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private static final EventFactory<LogEvent> EVENT_FACTORY = LogEvent::new;
 
-    private final Disruptor<LogEvent> disruptor;
-    private final RingBuffer<LogEvent> ring;
-    private final ScheduledExecutorService scheduler;
+    private static final EventTranslatorTwoArg<LogEvent, LogRecord, LogSinkRoute> RECORD_TX =
+            (evt, seq, rec, route) -> {
+                evt.clear();
+                evt.setRecord(rec, route);
+            };
+
+    private static final EventTranslatorTwoArg<LogEvent, LogRecord, Ack> ACK_TX =
+            (evt, seq, rec, ack) -> {
+                evt.clear();
+                evt.setRecord(rec, ack.route);
+                evt.ack = ack;
+            };
+
+    /** Trades drafts with the slot: the event takes the slot's spent draft, or a new one on a fresh slot. */
+    private static final EventTranslatorTwoArg<LogEvent, LogSinkEvent, Void> DRAFT_TX =
+            (evt, seq, e, unused) -> {
+                evt.clear();
+                EventDraft spare = evt.draft;
+                evt.draft = e.draft;
+                evt.drafted = true;
+                e.draft = spare != null ? spare : new EventDraft();
+            };
+
+    private static final EventTranslatorTwoArg<LogEvent, Void, Void> FLUSH_TX =
+            (evt, seq, a, b) -> {
+                evt.clear();
+                evt.setFlushRequest();
+            };
+
+    /** An empty event: the consumer only reaches the end of a batch and paces the lanes. */
+    private static final EventTranslatorTwoArg<LogEvent, Void, Void> WAKE_TX =
+            (evt, seq, a, b) -> evt.clear();
+
+    private static final EventTranslatorTwoArg<LogEvent, Void, Void> MARKER_TX =
+            (evt, seq, a, b) -> {
+                evt.clear();
+                evt.setDrainMarker();
+            };
+
+    private static final ThreadFactory CONSUMER_THREADS = r -> {
+        Thread t = new Thread(r, "logsink-disruptor-worker");
+        t.setDaemon(true);
+        return t;
+    };
+
+    private static final ExceptionHandler<LogEvent> PRINT_EXCEPTIONS = new ExceptionHandler<>() {
+        @Override
+        public void handleEventException(Throwable ex, long seq, LogEvent evt) {
+            ex.printStackTrace();
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            ex.printStackTrace();
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            ex.printStackTrace();
+        }
+    };
+
+    /** One ring and its consumer; a resize replaces the whole pipeline. */
+    private static final class Pipeline {
+        final Disruptor<LogEvent> disruptor;
+        final RingBuffer<LogEvent> ring;
+        final int queueSize;
+
+        Pipeline(Disruptor<LogEvent> disruptor, int queueSize) {
+            this.disruptor = disruptor;
+            this.ring = disruptor.getRingBuffer();
+            this.queueSize = queueSize;
+        }
+    }
+
+    private volatile Pipeline pipeline;
+    /** Write-held only while a resize swaps pipelines; producers just validate an optimistic stamp. */
+    private final StampedLock swapLock = new StampedLock();
+    private final int slotRecords; // records per ring slot: the stripe chunk size, or 1
+    private final long pollNanos;   // wait strategy timeout: how often an idle consumer looks at the clock
+    private final BatchingHandler handler;
+    private final StripedIngest striped; // null unless ingestStripes > 0
+    private final MemoryBudget budget;   // null when neither a byte cap nor heap pressure shedding is set
+    private final ExportWorkers workers;
+    private final AckExports ackExports;
+    private final SharedRingWriter shared; // null unless the transport is SHARED_RING
+
+    private volatile SeverityFilter filter = SeverityFilter.KEEP_ALL;
+    private final AtomicLong filtered = new AtomicLong();
 
     private volatile boolean running = true;
+    private DrainResult drainResult;
 
     public LogSinkBatcher(LogSinkConfig config, LogSinkExporter exporter) {
         LogSinkExporter exporter1 = Objects.requireNonNull(exporter, "exporter");
         int maxBatchSize = Math.max(1, config.getMaxBatchSize());
 
-        int ringSize = pow2AtLeast(config.getQueueSize()); // Disruptor requires power-of-two
-        WaitStrategy waitStrategy = new BlockingWaitStrategy();
+        boolean stripedMode = config.getIngestStripes() > 0;
+        int chunkSize = config.getStripeChunkSize();
+        this.slotRecords = stripedMode ? chunkSize : 1;
+
+        this.budget = config.getMaxQueuedBytes() > 0 || config.getHeapPressureThreshold() > 0
+                ? new MemoryBudget(config.getMaxQueuedBytes(), config.getHeapPressureThreshold(),
+                        config.getMaxFieldCharsUnderPressure())
+                : null;
+        this.workers = new ExportWorkers(config.getMaxInFlightExports(), this::exportFreed);
+        this.ackExports = new AckExports(config.getMaxInFlightExports());
+        logger.debug("LogSink exports run {}", workers.describe());
+        this.shared = config.getTransport() == LogSinkConfig.Transport.SHARED_RING ? openSharedRing(config) : null;
+        this.striped = stripedMode
+                ? new StripedIngest(this, config.getIngestStripes(), chunkSize,
+                        TimeUnit.MILLISECONDS.toNanos(config.getStripeFlushMillis()), () -> running)
+                : null;
+        // Staged chunks are checked as often as their deadline needs, lanes within about 10 ms of theirs
+        long poll = config.getTargetRequestBytes() > 0 ? ADAPTIVE_POLL_NANOS : POLL_NANOS;
+        this.pollNanos = stripedMode
+                ? Math.min(poll, TimeUnit.MILLISECONDS.toNanos(config.getStripeFlushMillis()))
+                : poll;
+        LingerController pacer = new LingerController(config.getFlushIntervalMillis(), config.getTargetRequestBytes(),
+                workers.parallelism(), maxBatchSize);
+        this.handler = new BatchingHandler(exporter1, config, maxBatchSize, budget, workers, ackExports, pacer, shared,
+                striped != null ? striped::drainDue : null);
+
+        this.pipeline = newPipeline(config.getQueueSize());
+        pipeline.disruptor.start();
+    }
+
+    private static SharedRingWriter openSharedRing(LogSinkConfig config) {
+        try {
+            SharedRingWriter w = SharedRingWriter.open(Paths.get(config.getSharedRingFile()),
+                    config.getSharedRingBytes(), config.getResource());
+            logger.debug("LogSink hands records to the shipper through {}", config.getSharedRingFile());
+            return w;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open shared ring " + config.getSharedRingFile(), e);
+        }
+    }
+
+    public boolean add(LogRecord record) {
+        return add(record, null);
+    }
+
+    /**
+     * Queues a record for {@code route}; null means the sink's own endpoint and resource.
+     * Records cut by the severity filter count as accepted.
+     */
+    public boolean add(LogRecord record, LogSinkRoute route) {
+        if (!running) return false;
+        if (record == null) return true; // ignore nulls safely
+        if (!filter.keep(record)) {
+            filtered.incrementAndGet();
+            return true;
+        }
+        MemoryBudget b = budget;
+        if (b != null) {
+            record = b.admit(record);
+            if (record == null) return false;
+        }
+
+        boolean ok;
+        if (striped != null) {
+            ok = striped.offer(record, route);
+        } else {
+            // non-blocking, mirrors LinkedBlockingQueue.offer()
+            ok = publish(RECORD_TX, record, route);
+        }
+        if (!ok && b != null) b.release(record);
+        return ok;
+    }
+
+    /**
+     * Queues a {@link LogSinkEvent}'s record, to be built on the consumer thread. Same filtering,
+     * budget, and result as {@link #add(LogRecord, LogSinkRoute)}; the budget is charged an
+     * estimate of the record's size.
+     */
+    boolean add(LogSinkEvent e) {
+        if (!running) return false;
+        EventDraft d = e.draft;
+        if (!filter.keep(d.severity)) {
+            filtered.incrementAndGet();
+            return true;
+        }
+        MemoryBudget b = budget;
+        if (b != null) {
+            d.charged = d.estimatedBytes();
+            if (!b.admit(d.charged, d.severity)) return false;
+        }
+        long charged = d.charged; // the draft belongs to the ring once published
+        boolean ok = striped != null ? striped.offerDirect(DRAFT_TX, e, null) : publish(DRAFT_TX, e, null);
+        if (!ok && b != null) b.release(charged);
+        return ok;
+    }
+
+    /**
+     * Queues a record whose caller waits for the collector's answer. The returned future completes
+     * once the batch carrying the record got a 2xx, after retries where the failure looked
+     * transient. It fails with {@link IOException} when the collector refused the batch or never
+     * answered, {@link RejectedExecutionException} when the record could not be queued, and
+     * {@link IllegalStateException} when the batcher is shut down or stopped before exporting it.
+     * Acknowledged records bypass severity filtering and sampling. With the shared ring transport
+     * the answer is out of reach, and the future fails with {@link UnsupportedOperationException}.
+     */
+    public CompletableFuture<Void> addAcknowledged(LogRecord record, LogSinkRoute route) {
+        Objects.requireNonNull(record, "record");
+        Ack ack = new Ack(route);
+        if (shared != null) {
+            ack.completeExceptionally(new UnsupportedOperationException(
+                    "acknowledged delivery needs an HTTP transport; the shared ring's shipper exports these records"));
+            return ack;
+        }
+        if (!running) {
+            ack.completeExceptionally(new IllegalStateException("LogSink is shut down"));
+            return ack;
+        }
+        MemoryBudget b = budget;
+        if (b != null) {
+            record = b.admit(record);
+            if (record == null) {
+                ack.completeExceptionally(new RejectedExecutionException("LogSink memory budget is exhausted"));
+                return ack;
+            }
+        }
+        boolean ok = striped != null ? striped.offerDirect(ACK_TX, record, ack) : publish(ACK_TX, record, ack);
+        if (!ok) {
+            if (b != null) b.release(record);
+            ack.completeExceptionally(running
+                    ? new RejectedExecutionException("LogSink queue is full")
+                    : new IllegalStateException("LogSink is shut down"));
+        }
+        return ack;
+    }
+
+    /**
+     * Publishes one event to the current ring without blocking; false when it is full. A claim
+     * that races a resize is published as an empty event on the old ring and retried on the new.
+     */
+    <A, B> boolean publish(EventTranslatorTwoArg<LogEvent, A, B> tx, A a, B b) {
+        while (true) {
+            long stamp = swapLock.tryOptimisticRead();
+            if (stamp == 0) { // a swap is under way; claiming now would only waste a slot
+                Thread.onSpinWait();
+                continue;
+            }
+            RingBuffer<LogEvent> ring = pipeline.ring;
+            long seq;
+            try {
+                seq = ring.tryNext();
+            } catch (InsufficientCapacityException e) {
+                if (swapLock.validate(stamp)) return false;
+                continue; // the ring was retired meanwhile; its fill level no longer matters
+            }
+            LogEvent evt = ring.get(seq);
+            if (swapLock.validate(stamp)) {
+                tx.translateTo(evt, seq, a, b);
+                ring.publish(seq);
+                return true;
+            }
+            // Claimed after the swap: the old consumer may already be past this slot
+            evt.clear();
+            ring.publish(seq);
+        }
+    }
 
-        ThreadFactory workerFactory = r -> {
-            Thread t = new Thread(r, "logsink-disruptor-worker");
-            t.setDaemon(true);
-            return t;
-        };
+    /**
+     * Replaces the ring with one sized for {@code queueSize} records. Producers move to the new
+     * ring at once, which is not consumed yet; the old consumer finishes every record claimed
+     * before the swap and stops, then the new consumer starts. Queued records keep their order
+     * and none is dropped; partial batches are flushed at the hand-off. Blocks while the old
+     * consumer finishes its current export. Returns false once the batcher is shut down.
+     */
+    synchronized boolean resize(int queueSize) {
+        if (!running) return false;
+        Pipeline old = pipeline;
+        if (queueSize == old.queueSize) return true;
+        Pipeline next = newPipeline(queueSize);
+        long cursor;
+        long stamp = swapLock.writeLock();
+        try {
+            pipeline = next;
+            cursor = old.ring.getCursor(); // every claim validated before the swap is at or below this
+        } finally {
+            swapLock.unlockWrite(stamp);
+        }
+        while (old.disruptor.getSequenceValueFor(handler) < cursor) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+        CountDownLatch halted = new CountDownLatch(1);
+        handler.halted = halted;
+        old.disruptor.halt();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                halted.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // the new consumer must start regardless
+            }
+        }
+        handler.halted = null;
+        next.disruptor.start();
+        if (interrupted) Thread.currentThread().interrupt();
+        logger.debug("LogSink ring resized from {} to {} slots", old.ring.getBufferSize(), next.ring.getBufferSize());
+        return true;
+    }
 
-        this.disruptor = new Disruptor<>(
+    private Pipeline newPipeline(int queueSize) {
+        // Disruptor requires power-of-two; in striped mode each slot carries a chunk of records
+        int ringSize = pow2AtLeast((queueSize + slotRecords - 1) / slotRecords);
+        Disruptor<LogEvent> disruptor = new Disruptor<>(
                 EVENT_FACTORY,
                 ringSize,
-                workerFactory,
+                CONSUMER_THREADS,
                 ProducerType.MULTI,       // many logging threads
-                waitStrategy
+                new TimeoutBlockingWaitStrategy(pollNanos, TimeUnit.NANOSECONDS) // idle consumer gets onTimeout
         );
+        disruptor.handleEventsWith(handler);
+        disruptor.setDefaultExceptionHandler(PRINT_EXCEPTIONS);
+        return new Pipeline(disruptor, queueSize);
+    }
 
-        disruptor.handleEventsWith(new BatchingHandler(exporter1, maxBatchSize));
-        disruptor.setDefaultExceptionHandler(new ExceptionHandler<>() {
-            @Override
-            public void handleEventException(Throwable ex, long seq, LogEvent evt) {
-                ex.printStackTrace();
-            }
+    int queueSize() {
+        return pipeline.queueSize;
+    }
 
-            @Override
-            public void handleOnStartException(Throwable ex) {
-                ex.printStackTrace();
-            }
+    long ringFreeSlots() {
+        return pipeline.ring.remainingCapacity();
+    }
 
-            @Override
-            public void handleOnShutdownException(Throwable ex) {
-                ex.printStackTrace();
-            }
-        });
+    int maxBatchSize() {
+        return handler.maxBatchSize;
+    }
 
-        this.ring = disruptor.start();
+    /** The consumer picks it up with its next record; a lane already over the new size flushes then. */
+    void setMaxBatchSize(int maxBatchSize) {
+        handler.maxBatchSize = maxBatchSize;
+    }
 
-        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "log-sink-flush-ticker");
-            t.setDaemon(true);
-            return t;
-        });
-        this.scheduler.scheduleAtFixedRate(this::postFlushTick, 1, 1, TimeUnit.SECONDS);
+    /** The latency target: the longest a record waits for its batch to fill. */
+    long flushIntervalMillis() {
+        return handler.pacer.maxLingerMillis();
     }
 
-    public boolean add(LogRecord record) {
-        if (!running) return false;
-        if (record == null) return true; // ignore nulls safely
+    /** Lanes already waiting are held to the new target from the consumer's next look at the clock. */
+    void setFlushIntervalMillis(long millis) {
+        handler.pacer.setMaxLingerMillis(millis);
+    }
+
+    /** Current linger of the sink's own lane, as set by the controller. */
+    double lingerMillis() {
+        return handler.pacer.lingerMillis();
+    }
+
+    /** Current records per request, as set by the controller. */
+    int adaptiveBatchSize() {
+        return Math.min(handler.pacer.batchSize(), handler.maxBatchSize);
+    }
+
+    long exportRequests() {
+        return handler.requests.get();
+    }
+
+    /** Whether batches reach the collector in the order they were cut: on Java 17, or with one export in flight. */
+    boolean exportsInOrder() {
+        return workers.parallelism() == 1;
+    }
+
+    /** Routed lanes the consumer keeps, besides the default one. */
+    int routedLanes() {
+        return handler.routedView;
+    }
+
+    SeverityFilter severityFilter() {
+        return filter;
+    }
+
+    synchronized void updateSeverityFilter(UnaryOperator<SeverityFilter> update) {
+        filter = update.apply(filter);
+    }
+
+    long filteredRecords() {
+        return filtered.get();
+    }
+
+    long deliveredRecords() {
+        return handler.delivered.get();
+    }
 
-        EventTranslatorOneArg<LogEvent, LogRecord> tx =
-                (evt, seq, rec) -> {
-                    evt.clear();
-                    evt.setRecord(rec);
-                };
+    long inFlightExportRecords() {
+        return workers.inFlightRecords() + ackExports.inFlightRecords();
+    }
+
+    /** The shared ring's producer side, or null with an HTTP transport. */
+    SharedRingWriter sharedRing() {
+        return shared;
+    }
 
-        return ring.tryPublishEvent(tx, record); // non-blocking, mirrors LinkedBlockingQueue.offer()
+    /** Byte accounting for queued records, or null when unbounded. */
+    MemoryBudget memoryBudget() {
+        return budget;
     }
 
     public void flush() {
         if (!running) return;
-        postFlushTick();
+        if (striped != null) striped.drainAll();
+        publish(FLUSH_TX, null, null); // if full, fine: the records ahead of it are exported soon anyway
+    }
+
+    /** An export finished: wakes the consumer if it held partial batches back for a free export. */
+    private void exportFreed() {
+        BatchingHandler h = handler;
+        if (h == null || !h.deferred) return;
+        h.deferred = false;
+        if (running) publish(WAKE_TX, null, null); // if full, fine: the consumer is busy and paces soon
     }
 
     public void shutdown() {
+        shutdown(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops intake and delivers what is queued within the deadline: the ring is flushed behind
+     * a drain marker while the pending batches are exported in parallel. Whatever has not been
+     * delivered when the deadline passes is abandoned and counted. Idempotent; later calls
+     * return the first result.
+     */
+    public synchronized DrainResult shutdown(long timeout, TimeUnit unit) {
+        if (drainResult != null) return drainResult;
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(Math.max(0, timeout));
         running = false;
+
+        long unstaged = striped != null ? striped.drainAll(deadline) : 0;
+        long deliveredBefore = handler.delivered.get();
+        Pipeline p = pipeline; // resizes are excluded by the lock
+        Drain drain = new Drain(deadline);
+        handler.drain = drain;
+        long exportInFlight = 0;
+        long ackInFlight = 0;
         try {
-            postFlushTick();
-            scheduler.shutdownNow();
-            disruptor.shutdown();
+            while (!publish(MARKER_TX, null, null)) {
+                if (System.nanoTime() - deadline >= 0) break;
+                LockSupport.parkNanos(100_000L);
+            }
+            await(drain.markerSeen, deadline);
+            p.disruptor.halt();
+            await(drain.stopped, deadline);
+            drain.awaitExports(deadline);
+            workers.awaitIdle(deadline);
+            ackExports.awaitIdle(deadline);
         } catch (Throwable t) {
             t.printStackTrace();
+        } finally {
+            exportInFlight = workers.inFlightRecords(); // before an interrupted export gives up
+            ackInFlight = ackExports.inFlightRecords();
+            workers.shutdownNow();
+            ackExports.shutdownNow("LogSink shutdown deadline passed before the collector answered");
+            drain.pool.shutdownNow();
+            if (budget != null) budget.close();
+            closeSharedRing();
         }
+
+        long abandoned = unstaged + drain.abandoned.get() + exportInFlight + ackInFlight + unprocessedRecords(p)
+                + handler.pendingView.get(); // still in lanes if the consumer never got to the marker
+        long delivered = handler.delivered.get() - deliveredBefore;
+        drainResult = new DrainResult(delivered, abandoned, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return drainResult;
     }
 
-    private void postFlushTick() {
-        if (!running) return;
-        EventTranslator<LogEvent> tickTx = (evt, seq) -> {
-            evt.clear();
-            evt.setFlushTick();
-        };
-        ring.tryPublishEvent(tickTx); // if full, fine—the next record/tick will flush
+    private void closeSharedRing() {
+        if (shared == null) return;
+        try {
+            shared.close();
+        } catch (IOException e) {
+            logger.debug("LogSink: closing the shared ring: {}", e.toString());
+        }
+    }
+
+    /** Records published to the ring that the consumer never reached. */
+    private long unprocessedRecords(Pipeline p) {
+        long processed = p.disruptor.getSequenceValueFor(handler);
+        long cursor = p.ring.getCursor();
+        long n = 0;
+        for (long seq = processed + 1; seq <= cursor; seq++) {
+            LogEvent evt = p.ring.get(seq);
+            if (evt.record != null || evt.drafted) n++;
+            if (evt.ack != null) evt.ack.completeExceptionally(new IllegalStateException("LogSink stopped before exporting the record"));
+            n += evt.chunkSize;
+        }
+        return n;
+    }
+
+    private static void await(CountDownLatch latch, long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) latch.await(remaining, TimeUnit.NANOSECONDS);
     }
 
     private static int pow2AtLeast(int n) {
@@ -134,15 +603,184 @@ public class LogSinkBatcher {
         return Math.max(1024, x); // sensible minimum
     }
 
+    /** Shutdown state handed to the consumer: where final batches go and how to signal progress. */
+    static final class Drain {
+        final long deadline;
+        final ExecutorService pool;
+        final Queue<PendingExport> exports = new ConcurrentLinkedQueue<>();
+        final AtomicLong abandoned = new AtomicLong();
+        final CountDownLatch markerSeen = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        Drain(long deadline) {
+            this.deadline = deadline;
+            AtomicInteger n = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(DRAIN_PARALLELISM, r -> {
+                Thread t = new Thread(r, "logsink-drain-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        void submit(LogSinkExporter exporter, String endpoint, String apiKey, List<ResourceLogs> resourceLogs,
+                    int records, List<Ack> acks, AtomicLong delivered, MemoryBudget budget, long bytes) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                abandoned.addAndGet(records);
+                if (budget != null) budget.release(bytes);
+                fail(acks, "LogSink shutdown deadline passed before the record was exported");
+                return;
+            }
+            Duration timeout = Duration.ofNanos(remaining);
+            try {
+                Future<Boolean> f = pool.submit(() -> {
+                    boolean ok = false;
+                    try {
+                        ok = exporter.send(endpoint, apiKey, resourceLogs, timeout);
+                        if (ok) delivered.addAndGet(records);
+                        return ok;
+                    } finally {
+                        if (budget != null) budget.release(bytes);
+                        settle(acks, ok);
+                    }
+                });
+                exports.add(new PendingExport(records, acks, f));
+            } catch (RejectedExecutionException e) {
+                abandoned.addAndGet(records);
+                if (budget != null) budget.release(bytes);
+                fail(acks, "LogSink shutdown deadline passed before the record was exported");
+            }
+        }
+
+        void awaitExports(long deadline) throws InterruptedException {
+            PendingExport p;
+            while ((p = exports.poll()) != null) {
+                try {
+                    long remaining = deadline - System.nanoTime();
+                    if (!p.future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        abandoned.addAndGet(p.records);
+                    }
+                } catch (java.util.concurrent.TimeoutException | ExecutionException | CancellationException e) {
+                    p.future.cancel(true);
+                    abandoned.addAndGet(p.records);
+                    fail(p.acks, "LogSink shutdown deadline passed before the collector answered");
+                }
+            }
+        }
+    }
+
+    static final class PendingExport {
+        final int records;
+        final List<Ack> acks;
+        final Future<Boolean> future;
+
+        PendingExport(int records, List<Ack> acks, Future<Boolean> future) {
+            this.records = records;
+            this.acks = acks;
+            this.future = future;
+        }
+    }
+
+    /** Completes the acknowledgements of one export; {@code acks} may be null. */
+    static void settle(List<Ack> acks, boolean delivered) {
+        if (acks == null) return;
+        if (delivered) {
+            for (Ack a : acks) a.complete(null);
+        } else {
+            IOException e = new IOException("collector did not acknowledge the batch");
+            for (Ack a : acks) a.completeExceptionally(e);
+        }
+    }
+
+    static void fail(List<Ack> acks, String why) {
+        if (acks == null) return;
+        IllegalStateException e = new IllegalStateException(why);
+        for (Ack a : acks) a.completeExceptionally(e);
+    }
+
+    /** Records of one route awaiting export; lanes with the same destination share requests. */
+    static final class Lane {
+        final String endpoint;
+        final String apiKey;
+        final Resource resource;
+        final ArrayList<LogRecord> records;
+        long bytes;            // charged to the memory budget
+        long payload;          // serialized size of {@code records}
+        long firstNanos;       // when the oldest of {@code records} arrived
+        long lastNanos;        // when the newest of {@code records} arrived
+        long lingerNanos;      // set by the LingerController; 0 sends a partial batch once the queue is idle
+        double rate;           // arrivals per nanosecond, moving average; LingerController's
+        int arrivals;          // in the controller's current window
+        boolean touched; // received a record since the last pruning
+        ArrayList<Ack> acks;   // acknowledged records among {@code records}; null until the first
+        long ackDeadline;      // nanoTime by which a lane holding acks is flushed, when acks linger
+
+        Lane(String endpoint, String apiKey, Resource resource, int capacity) {
+            this.endpoint = endpoint;
+            this.apiKey = apiKey;
+            this.resource = resource;
+            this.records = new ArrayList<>(capacity);
+        }
+
+        boolean hasAcks() {
+            return acks != null && !acks.isEmpty();
+        }
+
+        boolean sameDestination(Lane o) {
+            return endpoint.equals(o.endpoint) && apiKey.equals(o.apiKey);
+        }
+    }
+
     static final class BatchingHandler implements EventHandler<LogEvent> {
+        /** How often routed lanes that stayed empty are forgotten. */
+        private static final long PRUNE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
         private final LogSinkExporter exporter;
-        private final ArrayList<LogRecord> batch;
-        private final int maxBatchSize;
+        private final LogSinkConfig config;
+        volatile int maxBatchSize;
+        private final MemoryBudget budget;
+        private final ExportWorkers workers;
+        private final AckExports ackExports;
+        private final long ackLingerNanos;
+        private final int ackMaxAttempts;
+        final LingerController pacer;
+        private final Runnable drainStripes; // publishes overdue staged chunks; null unless striped
+        private final SharedRingWriter shared; // when set, records are copied there instead of batched
+        private final Lane defaultLane;
+        private final HashMap<LogSinkRoute, Lane> routed = new HashMap<>();
+        private final ArrayList<Lane> lanes = new ArrayList<>(); // defaultLane first, then routed lanes
+        private final ArrayList<Lane> group = new ArrayList<>();
+        private int pending; // records across all lanes
+        final AtomicInteger pendingView = new AtomicInteger(); // pending, as last published for a drain that gives up on the consumer
+        volatile int routedView; // routed lanes, as last published; for tests and monitoring
+        private long nextPrune = System.nanoTime() + PRUNE_NANOS;
 
-        BatchingHandler(LogSinkExporter exporter, int maxBatchSize) {
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong requests = new AtomicLong();
+        volatile boolean deferred; // partial batches wait for a free export; the export that ends wakes the consumer
+        volatile Drain drain;
+        volatile CountDownLatch halted; // set while a resize stops this consumer on the old ring
+
+        BatchingHandler(LogSinkExporter exporter, LogSinkConfig config, int maxBatchSize, MemoryBudget budget,
+                        ExportWorkers workers, AckExports ackExports, LingerController pacer, SharedRingWriter shared,
+                        Runnable drainStripes) {
             this.exporter = exporter;
+            this.shared = shared;
+            this.workers = workers;
+            this.ackExports = ackExports;
+            this.ackLingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getAckLingerMillis());
+            this.ackMaxAttempts = config.getAckMaxAttempts();
+            this.pacer = pacer;
+            this.drainStripes = drainStripes;
+            this.config = config;
             this.maxBatchSize = maxBatchSize;
-            this.batch = new ArrayList<>(Math.min(Math.max(16, maxBatchSize), 1024));
+            this.budget = budget;
+            this.defaultLane = new Lane(config.getOTLPEndpoint(), config.getApiKey(), config.getResource(), laneCapacity());
+            this.lanes.add(defaultLane);
+        }
+
+        private int laneCapacity() {
+            return Math.min(Math.max(16, maxBatchSize), 1024);
         }
 
         @Override
@@ -150,38 +788,269 @@ public class LogSinkBatcher {
 
         @Override
         public void onShutdown() {
+            if (shared != null) shared.publish();
+            Drain d = drain;
+            if (d == null) {
+                flushBatch();
+                CountDownLatch h = halted;
+                if (h != null) h.countDown();
+                return;
+            }
+            // Halted by the drain: hand what is left to the drain pool rather than blocking here.
             flushBatch();
+            d.stopped.countDown();
+        }
+
+        /** The ring stayed empty for the wait strategy's timeout: lingering lanes may be due. */
+        @Override
+        public void onTimeout(long sequence) {
+            pace(System.nanoTime());
         }
 
         @Override
         public void onEvent(LogEvent event, long sequence, boolean endOfBatch) {
-            if (event.flushTick) {
-                flushBatch();
+            if (shared != null) {
+                handOff(event, endOfBatch);
                 return;
             }
 
-            if (event.record != null) {
-                batch.add(event.record);
-                if (batch.size() >= maxBatchSize) {
-                    flushBatch();
-                }
+            if (event.drainMarker) {
+                flushBatch();
+                Drain d = drain;
+                if (d != null) d.markerSeen.countDown();
+                event.clear();
+                return;
             }
 
-            if (endOfBatch) {
+            if (event.flushRequest) {
                 flushBatch();
+                return;
+            }
+
+            // Each record leaves the slot before it is appended, since appending may block in an
+            // export: a drain giving up meanwhile counts it in flight or pending, not unprocessed.
+            LogRecord r = event.record;
+            if (r != null) {
+                Ack ack = event.ack;
+                event.record = null;
+                event.ack = null;
+                append(r, event.route, ack, weight(r));
+            }
+
+            if (event.drafted) {
+                event.drafted = false;
+                EventDraft d = event.draft;
+                append(d.toRecord(), d.route, null, d.charged);
+                d.route = null;
             }
 
+            LogRecord[] chunk = event.chunk;
+            LogSinkRoute[] routes = event.chunkRoutes;
+            for (int i = 0, n = event.chunkSize; i < n; i++) {
+                LogRecord c = chunk[i];
+                LogSinkRoute route = routes[i];
+                chunk[i] = null;
+                routes[i] = null;
+                event.chunkSize = n - i - 1;
+                append(c, route, null, weight(c));
+            }
+            event.clear();
+
+            if (endOfBatch) pace(System.nanoTime());
+            pendingView.lazySet(pending);
+        }
+
+        /**
+         * Runs whenever the consumer caught up with the ring, and on timeouts while it is idle:
+         * updates the controller, exports lanes that lingered long enough, and does the chores
+         * that used to need a timer thread.
+         */
+        private void pace(long now) {
+            if (shared == null) {
+                pacer.update(now, lanes, maxBatchSize);
+                if (drain == null) flushDue(now); // while draining, only full batches and the marker flush
+                if (now - nextPrune >= 0) {
+                    nextPrune = now + PRUNE_NANOS;
+                    pruneIdleLanes();
+                }
+            }
+            if (drainStripes != null) drainStripes.run();
+        }
+
+        /** Shared ring transport: copies the event's records into the ring, publishing at the end of each batch. */
+        private void handOff(LogEvent event, boolean endOfBatch) {
+            if (event.record != null) {
+                handOff(event.record, event.route, weight(event.record));
+            }
+            if (event.drafted) {
+                EventDraft d = event.draft;
+                handOff(d.toRecord(), d.route, d.charged);
+                d.route = null;
+            }
+            LogRecord[] chunk = event.chunk;
+            LogSinkRoute[] routes = event.chunkRoutes;
+            for (int i = 0, n = event.chunkSize; i < n; i++) {
+                handOff(chunk[i], routes[i], weight(chunk[i]));
+                chunk[i] = null;
+                routes[i] = null;
+            }
+            if (endOfBatch || event.drainMarker) shared.publish();
+            if (event.drainMarker) {
+                Drain d = drain;
+                if (d != null) d.markerSeen.countDown();
+            }
             event.clear();
         }
 
+        private void handOff(LogRecord r, LogSinkRoute route, long charged) {
+            if (shared.write(r, route)) delivered.incrementAndGet();
+            if (budget != null) budget.release(charged);
+        }
+
+        private long weight(LogRecord r) {
+            return budget != null ? MemoryBudget.weight(r) : 0;
+        }
+
+        /** {@code charged} is what the budget holds for the record, 0 without a budget. */
+        private void append(LogRecord r, LogSinkRoute route, Ack ack, long charged) {
+            Lane lane = route == null ? defaultLane : routed.get(route);
+            if (lane == null) lane = newLane(route);
+            long now = System.nanoTime();
+            if (lane.records.isEmpty()) lane.firstNanos = now;
+            if (ack != null) {
+                if (lane.acks == null) lane.acks = new ArrayList<>();
+                if (lane.acks.isEmpty()) lane.ackDeadline = now + ackLingerNanos;
+                lane.acks.add(ack);
+            }
+            int size = r.getSerializedSize(); // memoized; the request encoding reuses it
+            lane.records.add(r);
+            lane.touched = true;
+            pending++;
+            lane.bytes += charged;
+            lane.payload += size;
+            pacer.arrived(lane, size, now);
+            int n = lane.records.size();
+            if (n >= pacer.batchRecords() || n >= maxBatchSize || pacer.full(lane.payload)) {
+                flushDestination(lane);
+            }
+        }
+
+        private Lane newLane(LogSinkRoute route) {
+            Lane lane = new Lane(
+                    route.getEndpoint() != null ? route.getEndpoint() : config.getOTLPEndpoint(),
+                    route.getApiKey() != null ? route.getApiKey() : config.getApiKey(),
+                    route.getResource(), laneCapacity());
+            routed.put(route, lane);
+            lanes.add(lane);
+            routedView = routed.size();
+            return lane;
+        }
+
+        /** Forgets routed lanes that stayed empty since the last pruning, so short-lived routes do not accumulate. */
+        private void pruneIdleLanes() {
+            if (routed.isEmpty()) return;
+            routed.values().removeIf(l -> l.records.isEmpty() && !l.touched);
+            lanes.removeIf(l -> l != defaultLane && l.records.isEmpty() && !l.touched);
+            for (Lane l : lanes) l.touched = false;
+            routedView = routed.size();
+        }
+
+        /**
+         * Exports the partial batches the controller says are due, which without adaptive batching
+         * is every one, and lanes holding acknowledged records once those may not wait any longer.
+         * <p>
+         * While every export is taken a partial batch would only queue behind them, so it keeps
+         * collecting records instead, as records piled up in the ring behind an inline send; the
+         * export that ends wakes the consumer. {@code deferred} is set before {@link ExportWorkers#busy}
+         * is read and read after an export frees up, so one of the two sides always sees the other.
+         */
+        private void flushDue(long now) {
+            for (int i = 0; i < lanes.size() && pending > 0; i++) {
+                Lane lane = lanes.get(i);
+                if (lane.records.isEmpty()) continue;
+                if (lane.hasAcks()) {
+                    if (now - lane.ackDeadline >= 0) flushDestination(lane); // acknowledged exports run apart
+                    continue;
+                }
+                if (!pacer.due(lane, now)) continue;
+                deferred = true;
+                if (workers.busy()) continue;
+                deferred = false;
+                flushDestination(lane);
+            }
+        }
+
+        /** Exports every lane, one request per destination. */
         private void flushBatch() {
-            if (!batch.isEmpty()) {
+            for (int i = 0; i < lanes.size() && pending > 0; i++) {
+                Lane lane = lanes.get(i);
+                if (!lane.records.isEmpty()) flushDestination(lane);
+            }
+        }
+
+        /** Exports {@code first} together with every other non-empty lane bound for the same destination. */
+        private void flushDestination(Lane first) {
+            group.clear();
+            for (Lane l : lanes) {
+                if (!l.records.isEmpty() && (l == first || l.sameDestination(first))) group.add(l);
+            }
+            List<ResourceLogs> resourceLogs = new ArrayList<>(group.size());
+            List<Ack> acks = null;
+            int count = 0;
+            long bytes = 0;
+            for (Lane l : group) {
+                resourceLogs.add(LogSinkExporter.resourceLogs(l.resource, l.records));
+                count += l.records.size();
+                bytes += l.bytes;
+                l.records.clear();
+                l.bytes = 0;
+                l.payload = 0;
+                if (l.hasAcks()) {
+                    if (acks == null) acks = new ArrayList<>(l.acks);
+                    else acks.addAll(l.acks);
+                    l.acks.clear();
+                }
+            }
+            group.clear();
+            pending -= count;
+            pendingView.lazySet(pending);
+            requests.incrementAndGet();
+
+            Drain d = drain;
+            if (d != null) {
+                d.submit(exporter, first.endpoint, first.apiKey, resourceLogs, count, acks, delivered, budget, bytes);
+                return;
+            }
+            final int records = count;
+            final long charged = bytes;
+            if (acks != null) {
+                // Retries back off for seconds; they run apart from the consumer and the export permits.
+                final List<Ack> waiting = acks;
+                boolean queued = ackExports.execute(records, waiting, () -> {
+                    boolean ok = false;
+                    try {
+                        ok = exporter.sendWithRetries(first.endpoint, first.apiKey, resourceLogs,
+                                exporter.requestTimeout(), ackMaxAttempts);
+                        if (ok) delivered.addAndGet(records);
+                    } finally {
+                        if (budget != null) budget.release(charged);
+                        settle(waiting, ok);
+                    }
+                });
+                if (!queued && budget != null) budget.release(charged);
+                return;
+            }
+            workers.execute(records, () -> {
+                boolean ok = false;
+                long start = System.nanoTime();
                 try {
-                    exporter.sendBatch(batch);
+                    ok = exporter.send(first.endpoint, first.apiKey, resourceLogs, exporter.requestTimeout());
+                    if (ok) delivered.addAndGet(records);
                 } finally {
-                    batch.clear();
+                    pacer.exported(System.nanoTime() - start);
+                    if (budget != null) budget.release(charged);
                 }
-            }
+            });
         }
     }
-}
\ No newline at end of file
+}
@@ -7,18 +7,94 @@ import io.opentelemetry.proto.resource.v1.Resource;
 import java.util.*;
 
 public class LogSinkConfig {
+    /** Wire format of exported log batches. */
+    public enum Transport {
+        /** OTLP/HTTP protobuf {@code ExportLogsServiceRequest}, understood by any collector. */
+        OTLP,
+        /** Stateful column-oriented frames (see {@link io.cardinalhq.logsink.columnar.ColumnarEncoder}); needs a receiver that decodes them. */
+        COLUMNAR,
+        /**
+         * Records are copied into a memory-mapped ring file and exported by a shipper process
+         * (see {@link io.cardinalhq.logsink.ring.SharedRingShipper}); no HTTP in this JVM.
+         */
+        SHARED_RING
+    }
+
     private final String otlpEndpoint;
     private final String apiKey;
+    private final String appName;
     private final int maxBatchSize;
     private final Resource resource;
     private final int queueSize; // default
+    private final boolean templateMining;
+    private final int templateMaxClusters;
+    private final long shutdownTimeoutMillis;
+    private final boolean registerShutdownHook;
+    private final int ingestStripes;
+    private final int stripeChunkSize;
+    private final long stripeFlushMillis;
+    private final long maxQueuedBytes;
+    private final double heapPressureThreshold;
+    private final int maxFieldCharsUnderPressure;
+    private final boolean logMetrics;
+    private final List<String> metricDimensions;
+    private final int metricsMaxSeries;
+    private final long metricsIntervalMillis;
+    private final String metricsEndpoint;
+    private final int metricsOnlyBelow;
+    private final Transport transport;
+    private final int columnarDictionarySize;
+    private final int maxInFlightExports;
+    private final long flushIntervalMillis;
+    private final int targetRequestBytes;
+    private final boolean jmxEnabled;
+    private final long ackLingerMillis;
+    private final int ackMaxAttempts;
+    private final String sharedRingFile;
+    private final int sharedRingBytes;
 
     private LogSinkConfig(Builder builder) {
         this.otlpEndpoint = builder.otlpEndpoint;
         this.apiKey = builder.apiKey;
+        this.appName = builder.appName;
         this.maxBatchSize = builder.maxBatchSize;
         this.resource = builder.resource;
         this.queueSize = builder.queueSize;
+        this.templateMining = builder.templateMining;
+        this.templateMaxClusters = builder.templateMaxClusters;
+        this.shutdownTimeoutMillis = builder.shutdownTimeoutMillis;
+        this.registerShutdownHook = builder.registerShutdownHook;
+        this.ingestStripes = builder.ingestStripes;
+        this.stripeChunkSize = builder.stripeChunkSize;
+        this.stripeFlushMillis = builder.stripeFlushMillis;
+        this.maxQueuedBytes = builder.maxQueuedBytes;
+        this.heapPressureThreshold = builder.heapPressureThreshold;
+        this.maxFieldCharsUnderPressure = builder.maxFieldCharsUnderPressure;
+        this.logMetrics = builder.logMetrics;
+        this.metricDimensions = List.copyOf(builder.metricDimensions);
+        this.metricsMaxSeries = builder.metricsMaxSeries;
+        this.metricsIntervalMillis = builder.metricsIntervalMillis;
+        this.metricsEndpoint = builder.metricsEndpoint != null
+                ? builder.metricsEndpoint
+                : builder.otlpEndpoint != null ? deriveMetricsEndpoint(builder.otlpEndpoint) : null;
+        this.metricsOnlyBelow = builder.metricsOnlyBelow;
+        this.transport = builder.transport;
+        this.columnarDictionarySize = builder.columnarDictionarySize;
+        this.maxInFlightExports = builder.maxInFlightExports;
+        this.flushIntervalMillis = builder.flushIntervalMillis;
+        this.targetRequestBytes = builder.targetRequestBytes;
+        this.jmxEnabled = builder.jmxEnabled;
+        this.ackLingerMillis = builder.ackLingerMillis;
+        this.ackMaxAttempts = builder.ackMaxAttempts;
+        this.sharedRingFile = builder.sharedRingFile;
+        this.sharedRingBytes = builder.sharedRingBytes;
+    }
+
+    /** {@code .../v1/logs} becomes {@code .../v1/metrics}; any other path gets {@code /v1/metrics} appended. */
+    private static String deriveMetricsEndpoint(String logsEndpoint) {
+        String base = logsEndpoint.endsWith("/") ? logsEndpoint.substring(0, logsEndpoint.length() - 1) : logsEndpoint;
+        if (base.endsWith("/v1/logs")) return base.substring(0, base.length() - "/v1/logs".length()) + "/v1/metrics";
+        return base + "/v1/metrics";
     }
 
     public String getOTLPEndpoint() {
@@ -29,6 +105,10 @@ public class LogSinkConfig {
         return apiKey;
     }
 
+    public String getAppName() {
+        return appName;
+    }
+
     public int getQueueSize() {
         return queueSize;
     }
@@ -41,6 +121,115 @@ public class LogSinkConfig {
         return this.resource;
     }
 
+    public boolean isTemplateMining() {
+        return templateMining;
+    }
+
+    public int getTemplateMaxClusters() {
+        return templateMaxClusters;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public boolean isRegisterShutdownHook() {
+        return registerShutdownHook;
+    }
+
+    public int getIngestStripes() {
+        return ingestStripes;
+    }
+
+    public int getStripeChunkSize() {
+        return stripeChunkSize;
+    }
+
+    public long getStripeFlushMillis() {
+        return stripeFlushMillis;
+    }
+
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    public double getHeapPressureThreshold() {
+        return heapPressureThreshold;
+    }
+
+    public int getMaxFieldCharsUnderPressure() {
+        return maxFieldCharsUnderPressure;
+    }
+
+    public boolean isLogMetrics() {
+        return logMetrics;
+    }
+
+    public List<String> getMetricDimensions() {
+        return metricDimensions;
+    }
+
+    public int getMetricsMaxSeries() {
+        return metricsMaxSeries;
+    }
+
+    public long getMetricsIntervalMillis() {
+        return metricsIntervalMillis;
+    }
+
+    public String getMetricsEndpoint() {
+        return metricsEndpoint;
+    }
+
+    /** Where the log metrics of {@code route}'s records go: derived from its endpoint, if it sets one. */
+    public String getMetricsEndpoint(LogSinkRoute route) {
+        return route == null || route.getEndpoint() == null ? metricsEndpoint : deriveMetricsEndpoint(route.getEndpoint());
+    }
+
+    public int getMetricsOnlyBelow() {
+        return metricsOnlyBelow;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public int getColumnarDictionarySize() {
+        return columnarDictionarySize;
+    }
+
+    public int getMaxInFlightExports() {
+        return maxInFlightExports;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public int getTargetRequestBytes() {
+        return targetRequestBytes;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public long getAckLingerMillis() {
+        return ackLingerMillis;
+    }
+
+    public int getAckMaxAttempts() {
+        return ackMaxAttempts;
+    }
+
+    public String getSharedRingFile() {
+        return sharedRingFile;
+    }
+
+    public int getSharedRingBytes() {
+        return sharedRingBytes;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -53,6 +242,32 @@ public class LogSinkConfig {
         private final Map<String, String> resourceAttributes = new LinkedHashMap<>();
         private Resource resource;
         private int queueSize = 1000;
+        private boolean templateMining = false;
+        private int templateMaxClusters = 4096;
+        private long shutdownTimeoutMillis = 10_000;
+        private boolean registerShutdownHook = false;
+        private int ingestStripes = 0;
+        private int stripeChunkSize = 64;
+        private long stripeFlushMillis = 5;
+        private long maxQueuedBytes = 0;
+        private double heapPressureThreshold = 0;
+        private int maxFieldCharsUnderPressure = 4096;
+        private boolean logMetrics = false;
+        private List<String> metricDimensions = List.of("severity", "log4j.logger", "exception.type");
+        private int metricsMaxSeries = 2000;
+        private long metricsIntervalMillis = 60_000;
+        private String metricsEndpoint;
+        private int metricsOnlyBelow = 0;
+        private Transport transport = Transport.OTLP;
+        private int columnarDictionarySize = 4096;
+        private int maxInFlightExports = 16;
+        private long flushIntervalMillis = 1000;
+        private int targetRequestBytes = 0; // adaptive batching off
+        private boolean jmxEnabled = false;
+        private long ackLingerMillis = 0;
+        private int ackMaxAttempts = 3;
+        private String sharedRingFile;
+        private int sharedRingBytes = 64 << 20;
 
         public Builder setQueueSize(int queueSize) {
             this.queueSize = queueSize;
@@ -70,11 +285,203 @@ public class LogSinkConfig {
             return this;
         }
 
+        /** Most records per export request; the batch size adapted to the load stays within it. */
         public Builder setMaxBatchSize(int maxBatchSize) {
             this.maxBatchSize = maxBatchSize;
             return this;
         }
 
+        /** Attach a {@code log.template_id} fingerprint to text bodies (see {@link io.cardinalhq.logsink.template.TemplateMiner}). */
+        public Builder setTemplateMining(boolean templateMining) {
+            this.templateMining = templateMining;
+            return this;
+        }
+
+        public Builder setTemplateMaxClusters(int templateMaxClusters) {
+            this.templateMaxClusters = templateMaxClusters;
+            return this;
+        }
+
+        /** How long {@link LogSink#shutdown()} may spend delivering queued records. */
+        public Builder setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+            this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+            return this;
+        }
+
+        /** Drain the sink from a JVM shutdown hook, for uses without a Log4j lifecycle. */
+        public Builder setRegisterShutdownHook(boolean registerShutdownHook) {
+            this.registerShutdownHook = registerShutdownHook;
+            return this;
+        }
+
+        /**
+         * Stages records in per-thread stripes and publishes them to the queue in chunks, cutting
+         * contention on the shared queue when many threads log. 0 (default) publishes each record
+         * directly; otherwise rounded up to a power of two, e.g. the number of cores.
+         */
+        public Builder setIngestStripes(int ingestStripes) {
+            this.ingestStripes = ingestStripes;
+            return this;
+        }
+
+        /** Records per stripe chunk in striped mode. */
+        public Builder setStripeChunkSize(int stripeChunkSize) {
+            this.stripeChunkSize = stripeChunkSize;
+            return this;
+        }
+
+        /** How long a partial chunk may wait in its stripe before it is published anyway. */
+        public Builder setStripeFlushMillis(long stripeFlushMillis) {
+            this.stripeFlushMillis = stripeFlushMillis;
+            return this;
+        }
+
+        /**
+         * Upper bound on the approximate bytes of records held by the pipeline; new records are
+         * refused beyond it, those below WARN already at three quarters. 0 (default) disables the bound.
+         */
+        public Builder setMaxQueuedBytes(long maxQueuedBytes) {
+            this.maxQueuedBytes = maxQueuedBytes;
+            return this;
+        }
+
+        /**
+         * Fraction of a heap pool's capacity, measured after GC, above which records below WARN
+         * are shed and long fields truncated, e.g. 0.85. 0 (default) disables the check.
+         */
+        public Builder setHeapPressureThreshold(double heapPressureThreshold) {
+            this.heapPressureThreshold = heapPressureThreshold;
+            return this;
+        }
+
+        /** Length string bodies and attributes are cut to under heap pressure. */
+        public Builder setMaxFieldCharsUnderPressure(int maxFieldCharsUnderPressure) {
+            this.maxFieldCharsUnderPressure = maxFieldCharsUnderPressure;
+            return this;
+        }
+
+        /**
+         * Count records by {@link #setMetricDimensions dimensions} and export the counts as OTLP
+         * metrics (see {@link io.cardinalhq.logsink.metrics.LogMetricsAggregator}).
+         */
+        public Builder setLogMetrics(boolean logMetrics) {
+            this.logMetrics = logMetrics;
+            return this;
+        }
+
+        /** {@code "severity"} or attribute keys, e.g. {@code log4j.logger}, {@code exception.type}, {@code log.template_id}. */
+        public Builder setMetricDimensions(List<String> metricDimensions) {
+            this.metricDimensions = new ArrayList<>(metricDimensions);
+            return this;
+        }
+
+        /** Distinct series kept before further ones are folded into the overflow series. */
+        public Builder setMetricsMaxSeries(int metricsMaxSeries) {
+            this.metricsMaxSeries = metricsMaxSeries;
+            return this;
+        }
+
+        public Builder setMetricsIntervalMillis(long metricsIntervalMillis) {
+            this.metricsIntervalMillis = metricsIntervalMillis;
+            return this;
+        }
+
+        /** Defaults to the logs endpoint with {@code /v1/logs} replaced by {@code /v1/metrics}. */
+        public Builder setMetricsEndpoint(String metricsEndpoint) {
+            this.metricsEndpoint = metricsEndpoint;
+            return this;
+        }
+
+        /**
+         * Records with a severity number below this are only counted, not shipped as logs, e.g.
+         * {@code SeverityNumber.SEVERITY_NUMBER_WARN_VALUE}. 0 (default) ships everything.
+         */
+        public Builder setMetricsOnlyBelow(int severityNumber) {
+            this.metricsOnlyBelow = severityNumber;
+            return this;
+        }
+
+        public Builder setTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /** Entries per dictionary (keys, values, bodies, resources) of a columnar stream before it starts over. */
+        public Builder setColumnarDictionarySize(int columnarDictionarySize) {
+            this.columnarDictionarySize = columnarDictionarySize;
+            return this;
+        }
+
+        /**
+         * Concurrent batch exports on Java 21+, each on a virtual thread. Those complete in any
+         * order, so records may reach the collector out of order; 1 keeps them in order. On
+         * Java 17, where one export thread sends the batches in order, the batches that may wait
+         * for it.
+         */
+        public Builder setMaxInFlightExports(int maxInFlightExports) {
+            this.maxInFlightExports = maxInFlightExports;
+            return this;
+        }
+
+        /**
+         * Latency target: the longest a record waits for its batch to fill before the partial
+         * batch is sent. Without a {@link #setTargetRequestBytes} partial batches are sent as soon
+         * as the queue runs dry, so this only bounds acknowledged records and adaptive lingers.
+         * Adjustable at runtime through JMX.
+         */
+        public Builder setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Efficiency target: serialized bytes one export request should carry, before compression.
+         * A lane is sent once it holds this much, batch sizes follow it within {@link #setMaxBatchSize},
+         * and partial batches may linger up to one export's latency. 0 (the default) turns adaptive
+         * batching off.
+         */
+        public Builder setTargetRequestBytes(int targetRequestBytes) {
+            this.targetRequestBytes = targetRequestBytes;
+            return this;
+        }
+
+        /**
+         * Registers a {@link LogSinkControlMBean} for live tuning (default off). Sinks with the
+         * same app name get distinct names through an {@code instance} key.
+         */
+        public Builder setJmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        /**
+         * How long a batch holding acknowledged records may wait for more callers before it is
+         * sent, once the queue ran dry. 0 (default) sends as soon as the consumer catches up;
+         * callers arriving during an export still share the next batch.
+         */
+        public Builder setAckLingerMillis(long ackLingerMillis) {
+            this.ackLingerMillis = ackLingerMillis;
+            return this;
+        }
+
+        /** Attempts per batch holding acknowledged records, including the first. */
+        public Builder setAckMaxAttempts(int ackMaxAttempts) {
+            this.ackMaxAttempts = ackMaxAttempts;
+            return this;
+        }
+
+        /** The ring file for {@link Transport#SHARED_RING}, e.g. on tmpfs: {@code /dev/shm/myapp.ring}. */
+        public Builder setSharedRingFile(String sharedRingFile) {
+            this.sharedRingFile = sharedRingFile;
+            return this;
+        }
+
+        /** Frame space of the ring file; rounded down to a multiple of 8. */
+        public Builder setSharedRingBytes(int sharedRingBytes) {
+            this.sharedRingBytes = sharedRingBytes;
+            return this;
+        }
+
         public Builder setAppName(String appName) {
             this.appName = appName;
             return this;
@@ -91,12 +498,82 @@ public class LogSinkConfig {
         }
 
         public LogSinkConfig build() {
-            if (otlpEndpoint == null || otlpEndpoint.isEmpty()) {
+            if ((otlpEndpoint == null || otlpEndpoint.isEmpty()) && transport != Transport.SHARED_RING) {
                 throw new IllegalArgumentException("OTLP endpoint must be provided.");
             }
             if (appName == null || appName.isEmpty()) {
                 throw new IllegalArgumentException("App name must be provided.");
             }
+            if (templateMaxClusters < 1) {
+                throw new IllegalArgumentException("templateMaxClusters must be >= 1");
+            }
+            if (shutdownTimeoutMillis < 0) {
+                throw new IllegalArgumentException("shutdownTimeoutMillis must be >= 0");
+            }
+            if (ingestStripes < 0 || ingestStripes > 4096) {
+                throw new IllegalArgumentException("ingestStripes must be between 0 and 4096");
+            }
+            if (stripeChunkSize < 1) {
+                throw new IllegalArgumentException("stripeChunkSize must be >= 1");
+            }
+            if (stripeFlushMillis < 1) {
+                throw new IllegalArgumentException("stripeFlushMillis must be >= 1");
+            }
+            if (maxQueuedBytes < 0) {
+                throw new IllegalArgumentException("maxQueuedBytes must be >= 0");
+            }
+            if (heapPressureThreshold < 0 || heapPressureThreshold >= 1) {
+                throw new IllegalArgumentException("heapPressureThreshold must be in [0, 1)");
+            }
+            if (maxFieldCharsUnderPressure < 16) {
+                throw new IllegalArgumentException("maxFieldCharsUnderPressure must be >= 16");
+            }
+            if (logMetrics) {
+                if (metricsEndpoint == null && (otlpEndpoint == null || otlpEndpoint.isEmpty())) {
+                    throw new IllegalArgumentException("log metrics are sent from this JVM and need an OTLP or metrics endpoint");
+                }
+                if (metricDimensions.isEmpty()) {
+                    throw new IllegalArgumentException("metricDimensions must not be empty");
+                }
+                if (metricsMaxSeries < 1) {
+                    throw new IllegalArgumentException("metricsMaxSeries must be >= 1");
+                }
+                if (metricsIntervalMillis < 100) {
+                    throw new IllegalArgumentException("metricsIntervalMillis must be >= 100");
+                }
+            }
+            if (transport == null) {
+                throw new IllegalArgumentException("transport must not be null");
+            }
+            if (columnarDictionarySize < 1) {
+                throw new IllegalArgumentException("columnarDictionarySize must be >= 1");
+            }
+            if (maxInFlightExports < 1) {
+                throw new IllegalArgumentException("maxInFlightExports must be >= 1");
+            }
+            if (ackLingerMillis < 0) {
+                throw new IllegalArgumentException("ackLingerMillis must be >= 0");
+            }
+            if (ackMaxAttempts < 1) {
+                throw new IllegalArgumentException("ackMaxAttempts must be >= 1");
+            }
+            if (transport == Transport.SHARED_RING) {
+                if (sharedRingFile == null || sharedRingFile.isEmpty()) {
+                    throw new IllegalArgumentException("sharedRingFile must be provided for the shared ring transport");
+                }
+                if (sharedRingBytes < 64 << 10 || sharedRingBytes > 1 << 30) {
+                    throw new IllegalArgumentException("sharedRingBytes must be between 64 KiB and 1 GiB");
+                }
+                sharedRingBytes &= ~7;
+            }
+            if (flushIntervalMillis < LogSinkControl.MIN_FLUSH_INTERVAL_MILLIS
+                    || flushIntervalMillis > LogSinkControl.MAX_FLUSH_INTERVAL_MILLIS) {
+                throw new IllegalArgumentException("flushIntervalMillis must be between "
+                        + LogSinkControl.MIN_FLUSH_INTERVAL_MILLIS + " and " + LogSinkControl.MAX_FLUSH_INTERVAL_MILLIS);
+            }
+            if (targetRequestBytes != 0 && (targetRequestBytes < 1 << 10 || targetRequestBytes > 16 << 20)) {
+                throw new IllegalArgumentException("targetRequestBytes must be 0 or between 1 KiB and 16 MiB");
+            }
             List<KeyValue> attributes = new ArrayList<>();
             for (Map.Entry<String, String> entry : resourceAttributes.entrySet()) {
                 if (entry.getKey() == null || entry.getValue() == null) {
@@ -0,0 +1,214 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.ring.SharedRingWriter;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+/**
+ * {@link LogSinkControlMBean} over one sink's batcher and exporter. Registered on the platform
+ * MBean server when the sink starts and unregistered when it shuts down; a second sink with the
+ * same app name gets an {@code instance} key so both stay reachable.
+ */
+final class LogSinkControl implements LogSinkControlMBean {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+    static final String DOMAIN = "io.cardinalhq.logsink";
+
+    static final int MAX_BATCH_SIZE = 100_000;
+    static final long MIN_FLUSH_INTERVAL_MILLIS = 10;
+    static final long MAX_FLUSH_INTERVAL_MILLIS = 60_000;
+    static final long MIN_REQUEST_TIMEOUT_MILLIS = 100;
+    static final long MAX_REQUEST_TIMEOUT_MILLIS = 300_000;
+    static final int MAX_QUEUE_SIZE = 1 << 24;
+
+    private final LogSinkBatcher batcher;
+    private final LogSinkExporter exporter;
+    private ObjectName name;
+
+    LogSinkControl(LogSinkBatcher batcher, LogSinkExporter exporter) {
+        this.batcher = batcher;
+        this.exporter = exporter;
+    }
+
+    /** Registers under the app name; failures are logged, the sink works without JMX. */
+    void register(String appName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        StandardMBean mbean;
+        try {
+            mbean = new StandardMBean(this, LogSinkControlMBean.class);
+        } catch (JMException e) {
+            logger.warn("LogSink: cannot expose JMX controls", e);
+            return;
+        }
+        String base = DOMAIN + ":type=LogSink,name=" + ObjectName.quote(appName);
+        for (int instance = 1; instance < 1000; instance++) {
+            try {
+                ObjectName candidate = new ObjectName(instance == 1 ? base : base + ",instance=" + instance);
+                server.registerMBean(mbean, candidate);
+                name = candidate;
+                logger.debug("LogSink controls registered as {}", candidate);
+                return;
+            } catch (InstanceAlreadyExistsException e) {
+                // another sink with this name; try the next instance
+            } catch (JMException | RuntimeException e) {
+                logger.warn("LogSink: cannot register JMX controls", e);
+                return;
+            }
+        }
+    }
+
+    void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.debug("LogSink: JMX controls already gone", e);
+        }
+        name = null;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return batcher.maxBatchSize();
+    }
+
+    @Override
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        batcher.setMaxBatchSize(maxBatchSize);
+        logger.info("LogSink maxBatchSize set to {}", maxBatchSize);
+    }
+
+    @Override
+    public long getFlushIntervalMillis() {
+        return batcher.flushIntervalMillis();
+    }
+
+    @Override
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < MIN_FLUSH_INTERVAL_MILLIS || flushIntervalMillis > MAX_FLUSH_INTERVAL_MILLIS) {
+            throw new IllegalArgumentException("flushIntervalMillis must be between " + MIN_FLUSH_INTERVAL_MILLIS
+                    + " and " + MAX_FLUSH_INTERVAL_MILLIS);
+        }
+        batcher.setFlushIntervalMillis(flushIntervalMillis);
+        logger.info("LogSink flushIntervalMillis set to {}", flushIntervalMillis);
+    }
+
+    @Override
+    public double getLingerMillis() {
+        return batcher.lingerMillis();
+    }
+
+    @Override
+    public int getAdaptiveBatchSize() {
+        return batcher.adaptiveBatchSize();
+    }
+
+    @Override
+    public long getExportRequests() {
+        return batcher.exportRequests();
+    }
+
+    @Override
+    public long getRequestTimeoutMillis() {
+        return exporter.requestTimeout().toMillis();
+    }
+
+    @Override
+    public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+        if (requestTimeoutMillis < MIN_REQUEST_TIMEOUT_MILLIS || requestTimeoutMillis > MAX_REQUEST_TIMEOUT_MILLIS) {
+            throw new IllegalArgumentException("requestTimeoutMillis must be between " + MIN_REQUEST_TIMEOUT_MILLIS
+                    + " and " + MAX_REQUEST_TIMEOUT_MILLIS);
+        }
+        exporter.setRequestTimeout(Duration.ofMillis(requestTimeoutMillis));
+        logger.info("LogSink requestTimeoutMillis set to {}", requestTimeoutMillis);
+    }
+
+    @Override
+    public int getQueueSize() {
+        return batcher.queueSize();
+    }
+
+    @Override
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 1 || queueSize > MAX_QUEUE_SIZE) {
+            throw new IllegalArgumentException("queueSize must be between 1 and " + MAX_QUEUE_SIZE);
+        }
+        if (!batcher.resize(queueSize)) throw new IllegalStateException("LogSink is shut down");
+        logger.info("LogSink queueSize set to {}", queueSize);
+    }
+
+    @Override
+    public String getMinSeverity() {
+        return batcher.severityFilter().minSeverityName();
+    }
+
+    @Override
+    public void setMinSeverity(String severity) {
+        batcher.updateSeverityFilter(f -> f.withMinSeverity(severity));
+        logger.info("LogSink minimum severity set to {}", severity);
+    }
+
+    @Override
+    public String getSampleRates() {
+        return batcher.severityFilter().describeRates();
+    }
+
+    @Override
+    public void setSampleRate(String severity, double rate) {
+        batcher.updateSeverityFilter(f -> f.withSampleRate(severity, rate));
+        logger.info("LogSink sample rate for {} set to {}", severity, rate);
+    }
+
+    @Override
+    public void resetFiltering() {
+        batcher.updateSeverityFilter(f -> SeverityFilter.KEEP_ALL);
+        logger.info("LogSink severity filtering cleared");
+    }
+
+    @Override
+    public long getDeliveredRecords() {
+        return batcher.deliveredRecords();
+    }
+
+    @Override
+    public long getFilteredRecords() {
+        return batcher.filteredRecords();
+    }
+
+    @Override
+    public long getRingFreeSlots() {
+        return batcher.ringFreeSlots();
+    }
+
+    @Override
+    public long getInFlightExportRecords() {
+        return batcher.inFlightExportRecords();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        MemoryBudget b = batcher.memoryBudget();
+        return b == null ? -1 : b.usedBytes();
+    }
+
+    @Override
+    public long getSharedRingDroppedRecords() {
+        SharedRingWriter w = batcher.sharedRing();
+        return w == null ? -1 : w.droppedRecords();
+    }
+
+    @Override
+    public long getSharedRingLagBytes() {
+        SharedRingWriter w = batcher.sharedRing();
+        return w == null ? -1 : w.lagBytes();
+    }
+}
@@ -0,0 +1,73 @@
+package io.cardinalhq.logsink;
+
+/**
+ * Live tuning of a running {@link LogSink}, registered as
+ * {@code io.cardinalhq.logsink:type=LogSink,name="<app name>"}. Setters validate their argument
+ * and throw {@link IllegalArgumentException} on a bad value; accepted changes apply between
+ * batches, without rebuilding the pipeline or losing queued records.
+ */
+public interface LogSinkControlMBean {
+
+    /** Most records per export request; a lane already holding more is flushed by its next record. */
+    int getMaxBatchSize();
+
+    void setMaxBatchSize(int maxBatchSize);
+
+    /** Latency target: the longest a record waits for its batch to fill. */
+    long getFlushIntervalMillis();
+
+    void setFlushIntervalMillis(long flushIntervalMillis);
+
+    /** How long the sink's own lane currently lets a partial batch wait, as adapted to the load. */
+    double getLingerMillis();
+
+    /** Records per request the sink currently aims for, as adapted to the load. */
+    int getAdaptiveBatchSize();
+
+    /** Export requests sent since the sink started. */
+    long getExportRequests();
+
+    /** Upper bound of one export request; applies to requests started after the change. */
+    long getRequestTimeoutMillis();
+
+    void setRequestTimeoutMillis(long requestTimeoutMillis);
+
+    /** Ring capacity in records. Resizing hands queued records over to the new ring in order. */
+    int getQueueSize();
+
+    void setQueueSize(int queueSize);
+
+    /** TRACE, DEBUG, INFO, WARN, ERROR, FATAL, or ALL; records below it are not exported. */
+    String getMinSeverity();
+
+    void setMinSeverity(String severity);
+
+    /** Sample rate per severity band, e.g. {@code TRACE=1.0,DEBUG=0.1,...}. */
+    String getSampleRates();
+
+    /** Keeps a random {@code rate} (0 to 1) of the records in {@code severity}'s band. */
+    void setSampleRate(String severity, double rate);
+
+    /** Clears the minimum severity and every sample rate. */
+    void resetFiltering();
+
+    long getDeliveredRecords();
+
+    /** Records dropped by the minimum severity or sampling since the sink started. */
+    long getFilteredRecords();
+
+    /** Free ring slots; in striped mode one slot carries a chunk of records. */
+    long getRingFreeSlots();
+
+    /** Records in exports that have not finished yet. */
+    long getInFlightExportRecords();
+
+    /** Bytes charged to the memory budget, or -1 when queued bytes are not bounded. */
+    long getQueuedBytes();
+
+    /** Records dropped because the shared ring was full, or -1 with an HTTP transport. */
+    long getSharedRingDroppedRecords();
+
+    /** Bytes in the shared ring the shipper has not read yet, or -1 with an HTTP transport. */
+    long getSharedRingLagBytes();
+}
@@ -0,0 +1,100 @@
+package io.cardinalhq.logsink;
+
+import java.util.Objects;
+
+/**
+ * A log record under construction, for bridges and hot paths that must not produce garbage:
+ * <pre>
+ *   sink.event(SeverityNumber.SEVERITY_NUMBER_INFO)
+ *       .body("order placed")
+ *       .attr("order.id", orderId)
+ *       .attr("amount", 12.5)
+ *       .attr("customer", customerName)
+ *       .emit();
+ * </pre>
+ * Each thread reuses one event per sink, and its values are written into buffers that travel
+ * through the queue with it, so after warm-up the calling thread allocates nothing per record;
+ * the OTLP record is built on the sink's consumer thread. Text and byte values are copied when
+ * they are set, so a reused {@link StringBuilder} or array may be passed and changed afterwards.
+ * Attribute keys are kept by reference and should be constants.
+ * <p>
+ * An event is valid from {@link LogSink#event} until {@link #emit()} and must not be kept or
+ * shared with another thread. Starting a second event on the same thread before emitting the
+ * first (say, while computing one of its values) gets a fresh, allocated event instead of
+ * clobbering the open one. With template mining or log metrics enabled, {@code emit()} builds the
+ * record on the calling thread, since those stages work on the finished record.
+ */
+public final class LogSinkEvent {
+    private final LogSink sink;
+    EventDraft draft = new EventDraft(); // swapped for a spent one each time the event is queued
+    boolean open;
+
+    LogSinkEvent(LogSink sink) {
+        this.sink = sink;
+    }
+
+    LogSinkEvent start(int severity, String severityText) {
+        draft.reset(severity, severityText);
+        open = true;
+        return this;
+    }
+
+    /** Event time in nanoseconds since the epoch; defaults to the time of {@link #emit()}. */
+    public LogSinkEvent time(long epochNanos) {
+        draft.timeNanos = epochNanos;
+        return this;
+    }
+
+    public LogSinkEvent body(CharSequence body) {
+        draft.setBody(body);
+        return this;
+    }
+
+    public LogSinkEvent attr(String key, long value) {
+        draft.add(Objects.requireNonNull(key, "key"), EventDraft.LONG, value);
+        return this;
+    }
+
+    public LogSinkEvent attr(String key, double value) {
+        draft.add(Objects.requireNonNull(key, "key"), EventDraft.DOUBLE, Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    public LogSinkEvent attr(String key, boolean value) {
+        draft.add(Objects.requireNonNull(key, "key"), EventDraft.BOOLEAN, value ? 1 : 0);
+        return this;
+    }
+
+    /** A string attribute; a null value leaves the attribute out. */
+    public LogSinkEvent attr(String key, CharSequence value) {
+        Objects.requireNonNull(key, "key");
+        if (value != null) draft.add(key, value);
+        return this;
+    }
+
+    /** A bytes attribute; a null value leaves the attribute out. */
+    public LogSinkEvent attr(String key, byte[] value) {
+        Objects.requireNonNull(key, "key");
+        if (value != null) draft.add(key, value);
+        return this;
+    }
+
+    /** Sends the record to another service's resource or endpoint; see {@link LogSink#log(LogSinkRoute, io.opentelemetry.proto.logs.v1.LogRecord)}. */
+    public LogSinkEvent route(LogSinkRoute route) {
+        draft.route = route;
+        return this;
+    }
+
+    /**
+     * Queues the record; same result as {@link LogSink#log(io.opentelemetry.proto.logs.v1.LogRecord)}.
+     * The event must not be used afterwards.
+     */
+    public boolean emit() {
+        if (!open) throw new IllegalStateException("event already emitted");
+        open = false;
+        long now = System.currentTimeMillis() * 1_000_000L;
+        if (draft.timeNanos == 0) draft.timeNanos = now;
+        draft.observedNanos = now;
+        return sink.emit(this);
+    }
+}
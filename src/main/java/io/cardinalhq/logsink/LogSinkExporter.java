@@ -1,9 +1,12 @@
 package io.cardinalhq.logsink;
 
+import io.cardinalhq.logsink.columnar.ColumnarEncoder;
 import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
 import io.opentelemetry.proto.logs.v1.LogRecord;
 import io.opentelemetry.proto.logs.v1.ResourceLogs;
 import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
 import org.apache.logging.log4j.status.StatusLogger;
 
 import java.io.ByteArrayOutputStream;
@@ -14,15 +17,34 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 public final class LogSinkExporter {
     private static final StatusLogger logger = StatusLogger.getLogger();
     private static final String CARDINAL_API_KEY_HEADER = "x-cardinalhq-api-key";
-    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    private static final String PROTOBUF = "application/x-protobuf";
+    private static final long RETRY_BACKOFF_MILLIS = 200;
 
     private final LogSinkConfig config;
     private final HttpClient httpClient;
+    /** Destinations whose streams sat unused this long are closed and forgotten. */
+    static final long COLUMNAR_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Idle columnar streams per destination (endpoint and API key); a stream is taken for exactly
+     * one request at a time. Null for OTLP.
+     */
+    private final ConcurrentHashMap<String, StreamPool> columnarStreams;
+    private final int maxIdleStreams;
+    private volatile long columnarIdleNanos = COLUMNAR_IDLE_NANOS;
+    private volatile long lastSweep = System.nanoTime();
+    private volatile boolean closed;
+    private volatile Duration requestTimeout = REQUEST_TIMEOUT;
 
     public LogSinkExporter(LogSinkConfig config) {
         this(config, HttpClient.newHttpClient());
@@ -33,6 +55,19 @@ public final class LogSinkExporter {
         if (httpClient == null) throw new IllegalArgumentException("httpClient is null");
         this.config = config;
         this.httpClient = httpClient;
+        this.columnarStreams = config.getTransport() == LogSinkConfig.Transport.COLUMNAR
+                ? new ConcurrentHashMap<>() : null;
+        this.maxIdleStreams = Math.max(1, config.getMaxInFlightExports());
+    }
+
+    /** Upper bound of one request; shorter timeouts passed to {@code send} still apply. */
+    Duration requestTimeout() {
+        return requestTimeout;
+    }
+
+    /** Takes effect for requests started afterwards. */
+    void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
     }
 
     /** Legacy entrypoint; delegates to the blocking implementation. */
@@ -42,49 +77,231 @@ public final class LogSinkExporter {
 
     /** Blocking send — use with the single-threaded batcher to keep at most one in-flight request. */
     public void sendBlocking(List<LogRecord> records) {
-        if (records == null || records.isEmpty()) return;
+        send(records, requestTimeout);
+    }
 
-        // Build OTLP request
-        ScopeLogs scopeLogs = ScopeLogs.newBuilder()
-                .addAllLogRecords(records)
-                .build();
+    /**
+     * Blocking send bounded by {@code timeout}; returns true only when the collector answered 2xx.
+     * Safe to call from several threads at once (used for parallel exports while draining).
+     */
+    public boolean send(List<LogRecord> records, Duration timeout) {
+        if (records == null || records.isEmpty()) return true;
+        return send(null, null, List.of(resourceLogs(config.getResource(), records)), timeout);
+    }
 
-        ResourceLogs resourceLogs = ResourceLogs.newBuilder()
-                .setResource(this.config.getResource())
-                .addScopeLogs(scopeLogs)
-                .build();
+    /**
+     * Sends one request carrying several resources' records to {@code endpoint} with
+     * {@code apiKey}; null for either means the configured one. Blocking and bounded by
+     * {@code timeout} like {@link #send(List, Duration)}.
+     */
+    public boolean send(String endpoint, String apiKey, List<ResourceLogs> resourceLogs, Duration timeout) {
+        if (resourceLogs.isEmpty()) return true;
+        return isSuccess(export(endpoint, apiKey, resourceLogs, timeout));
+    }
+
+    /**
+     * Like {@link #send(String, String, List, Duration)}, but retries a failed request up to
+     * {@code maxAttempts} in total while the failure may be transient (no response, 408, 429,
+     * 5xx), backing off between attempts. {@code timeout} bounds each attempt. Used for batches
+     * whose callers wait for an acknowledgement.
+     */
+    public boolean sendWithRetries(String endpoint, String apiKey, List<ResourceLogs> resourceLogs,
+                                   Duration timeout, int maxAttempts) {
+        if (resourceLogs.isEmpty()) return true;
+        long backoffMillis = RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            int code = export(endpoint, apiKey, resourceLogs, timeout);
+            if (isSuccess(code)) return true;
+            boolean retryable = code == -1 || code == 408 || code == 429 || code >= 500;
+            if (!retryable || attempt >= maxAttempts) return false;
+            logger.debug("Retrying acknowledged batch after {} (attempt {} of {})", code, attempt + 1, maxAttempts);
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoffMillis *= 2;
+        }
+    }
+
+    /** Returns the HTTP status of the export, or -1 when no response arrived. */
+    private int export(String endpoint, String apiKey, List<ResourceLogs> resourceLogs, Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) return -1;
+        if (endpoint == null) endpoint = config.getOTLPEndpoint();
+        if (apiKey == null) apiKey = config.getApiKey();
 
         ExportLogsServiceRequest request = ExportLogsServiceRequest.newBuilder()
-                .addResourceLogs(resourceLogs)
+                .addAllResourceLogs(resourceLogs)
                 .build();
 
-        byte[] payload = request.toByteArray();
-        byte[] gz = gzip(payload);
+        if (columnarStreams != null) return sendColumnar(endpoint, apiKey, request, timeout);
+        return post(endpoint, apiKey, request.toByteArray(), PROTOBUF, timeout, "logs");
+    }
+
+    static ResourceLogs resourceLogs(Resource resource, List<LogRecord> records) {
+        return ResourceLogs.newBuilder()
+                .setResource(resource)
+                .addScopeLogs(ScopeLogs.newBuilder().addAllLogRecords(records))
+                .build();
+    }
+
+    /**
+     * Sends on an idle stream, so concurrent senders never interleave one stream's batches. A 409
+     * means the receiver lost the stream state (restart, failover); the batch is re-sent once as
+     * the first of a fresh stream. After any other failure the receiver may or may not have
+     * applied the batch's dictionary entries, so the stream also starts over.
+     */
+    private int sendColumnar(String endpoint, String apiKey, ExportLogsServiceRequest request, Duration timeout) {
+        long now = System.nanoTime();
+        if (now - lastSweep > columnarIdleNanos) sweepIdleStreams(now);
+        StreamPool pool = columnarStreams.computeIfAbsent(endpoint + '\n' + apiKey, k -> new StreamPool());
+        pool.lastUsed = now;
+        ColumnarEncoder stream = pool.idle.poll();
+        if (stream == null) {
+            stream = new ColumnarEncoder(config.getColumnarDictionarySize());
+        } else {
+            pool.size.decrementAndGet();
+        }
+        try {
+            int code = post(endpoint, apiKey, stream.encode(request), ColumnarEncoder.CONTENT_TYPE, timeout, "logs");
+            if (code == 409) {
+                logger.debug("Collector lost columnar stream {}; starting it over", Long.toHexString(stream.streamId()));
+                stream.reset();
+                code = post(endpoint, apiKey, stream.encode(request), ColumnarEncoder.CONTENT_TYPE, timeout, "logs");
+            }
+            if (!isSuccess(code)) stream.reset();
+            return code;
+        } catch (RuntimeException e) {
+            stream.reset();
+            throw e;
+        } finally {
+            pool.release(stream, maxIdleStreams);
+            if (closed || pool.retired) pool.closeIdle();
+        }
+    }
+
+    /**
+     * Closes and forgets the streams of destinations nobody sent to for the idle time (a minute
+     * by default). Runs from the send path, so stale destinations go once traffic moves elsewhere.
+     */
+    private void sweepIdleStreams(long now) {
+        lastSweep = now;
+        long idleNanos = columnarIdleNanos;
+        columnarStreams.forEach((key, pool) -> {
+            if (now - pool.lastUsed > idleNanos && columnarStreams.remove(key, pool)) {
+                pool.retired = true;
+                pool.closeIdle();
+            }
+        });
+    }
+
+    void setColumnarIdleNanos(long nanos) {
+        this.columnarIdleNanos = nanos;
+    }
+
+    /** Idle streams kept, across destinations; for tests and monitoring. */
+    int idleColumnarStreams() {
+        if (columnarStreams == null) return 0;
+        int n = 0;
+        for (StreamPool pool : columnarStreams.values()) n += pool.size.get();
+        return n;
+    }
+
+    int columnarDestinations() {
+        return columnarStreams == null ? 0 : columnarStreams.size();
+    }
+
+    /**
+     * Releases the compression contexts of idle columnar streams. Streams still sending are
+     * released when their request returns; requests after this start and close a stream of their own.
+     */
+    public void close() {
+        closed = true;
+        if (columnarStreams == null) return;
+        columnarStreams.forEach((key, pool) -> pool.closeIdle());
+        columnarStreams.clear();
+    }
+
+    /** A destination's idle streams, at most as many as exports may run at once. */
+    private static final class StreamPool {
+        final ConcurrentLinkedQueue<ColumnarEncoder> idle = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        volatile long lastUsed;
+        volatile boolean retired; // swept out of the map; streams coming back are closed
+
+        void release(ColumnarEncoder stream, int max) {
+            if (size.incrementAndGet() > max) {
+                size.decrementAndGet();
+                stream.close();
+                return;
+            }
+            idle.offer(stream);
+        }
+
+        void closeIdle() {
+            for (ColumnarEncoder e; (e = idle.poll()) != null; ) {
+                size.decrementAndGet();
+                e.close();
+            }
+        }
+    }
+
+    /**
+     * Posts metrics to {@code endpoint} (the collector's {@code /v1/metrics}) with the same
+     * headers and compression as logs; returns true only on 2xx.
+     */
+    public boolean sendMetrics(String endpoint, ExportMetricsServiceRequest request) {
+        return sendMetrics(endpoint, config.getApiKey(), request, requestTimeout);
+    }
+
+    /** {@link #sendMetrics(String, ExportMetricsServiceRequest)} with a route's API key. */
+    public boolean sendMetrics(String endpoint, String apiKey, ExportMetricsServiceRequest request) {
+        return sendMetrics(endpoint, apiKey, request, requestTimeout);
+    }
+
+    /** Like {@link #sendMetrics(String, String, ExportMetricsServiceRequest)}, giving up after {@code timeout}, at most the request timeout. */
+    public boolean sendMetrics(String endpoint, String apiKey, ExportMetricsServiceRequest request, Duration timeout) {
+        return isSuccess(post(endpoint, apiKey, request.toByteArray(), PROTOBUF, timeout, "metrics"));
+    }
+
+    private static boolean isSuccess(int code) {
+        return code >= 200 && code < 300;
+    }
+
+    /** Returns the HTTP status, or -1 when no response arrived. */
+    private int post(String endpoint, String apiKey, byte[] payload, String contentType, Duration timeout, String what) {
+        // Columnar frames carry their own per-stream compression
+        boolean gzip = PROTOBUF.equals(contentType);
 
         // Build HTTP request (blocking)
-        HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(config.getOTLPEndpoint()))
-                .timeout(REQUEST_TIMEOUT)
-                .header(CARDINAL_API_KEY_HEADER, config.getApiKey())
-                .header("Content-Type", "application/x-protobuf")
-                .header("Content-Encoding", "gzip")
-                .POST(HttpRequest.BodyPublishers.ofByteArray(gz))
+        Duration cap = requestTimeout;
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .timeout(timeout.compareTo(cap) < 0 ? timeout : cap)
+                .header(CARDINAL_API_KEY_HEADER, apiKey)
+                .header("Content-Type", contentType);
+        if (gzip) builder.header("Content-Encoding", "gzip");
+        HttpRequest httpRequest = builder
+                .POST(HttpRequest.BodyPublishers.ofByteArray(gzip ? gzip(payload) : payload))
                 .build();
 
         try {
             HttpResponse<String> resp = this.httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
             int code = resp.statusCode();
-            if (code >= 200 && code < 300) {
-                logger.debug("Logs sent successfully");
-            } else {
-                logger.error("Failed to send logs: {}", code);
+            if (isSuccess(code)) {
+                logger.debug("Sent {} successfully", what);
+            } else if (code != 409 || PROTOBUF.equals(contentType)) {
+                logger.error("Failed to send {}: {}", what, code);
             }
+            return code;
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
-            logger.error("Interrupted while sending logs", ie);
+            logger.error("Interrupted while sending {}", what, ie);
         } catch (Exception e) {
-            logger.error("Failed to send logs", e);
+            logger.error("Failed to send {}", what, e);
         }
+        return -1;
     }
 
     private static byte[] gzip(byte[] data) {
@@ -0,0 +1,138 @@
+package io.cardinalhq.logsink;
+
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.resource.v1.Resource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Where a record goes and which resource it is reported under, for JVMs that host several
+ * logical services. Records logged with a route are batched apart from other routes and sent
+ * as their own {@code ResourceLogs}; routes that share an endpoint and API key share requests.
+ * <p>
+ * Routes are compared by value, but creating one builds a {@link Resource}; callers on a hot
+ * path should create each route once and reuse it.
+ */
+public final class LogSinkRoute {
+    private final String endpoint; // null => the sink's endpoint
+    private final String apiKey;   // null => the sink's API key
+    private final Resource resource;
+    private final int hash;
+
+    private LogSinkRoute(String endpoint, String apiKey, Resource resource) {
+        this.endpoint = endpoint;
+        this.apiKey = apiKey;
+        this.resource = resource;
+        this.hash = Objects.hash(endpoint, apiKey, resource);
+    }
+
+    /** The OTLP logs endpoint, or null for the sink's own. */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /** The API key, or null for the sink's own. */
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LogSinkRoute)) return false;
+        LogSinkRoute r = (LogSinkRoute) o;
+        return hash == r.hash && Objects.equals(endpoint, r.endpoint) && Objects.equals(apiKey, r.apiKey)
+                && resource.equals(r.resource);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "LogSinkRoute{endpoint=" + (endpoint == null ? "<default>" : endpoint) + ", resource="
+                + resource.getAttributesList().stream()
+                        .map(kv -> kv.getKey() + "=" + kv.getValue().getStringValue())
+                        .reduce((a, b) -> a + "," + b).orElse("") + "}";
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String endpoint;
+        private String apiKey;
+        private String serviceName;
+        private final Map<String, AnyValue> resourceAttributes = new LinkedHashMap<>();
+
+        /** Defaults to the sink's endpoint. */
+        public Builder setOtlpEndpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        /** Defaults to the sink's API key. */
+        public Builder setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder setServiceName(String serviceName) {
+            this.serviceName = serviceName;
+            return this;
+        }
+
+        public Builder addResourceAttribute(String key, String value) {
+            this.resourceAttributes.put(key, value == null ? null : string(value));
+            return this;
+        }
+
+        /** For attributes that are not strings, e.g. numbers or arrays read back from OTLP. */
+        public Builder addResourceAttribute(String key, AnyValue value) {
+            this.resourceAttributes.put(key, value);
+            return this;
+        }
+
+        public Builder addResourceAttributes(Map<String, String> attributes) {
+            for (Map.Entry<String, String> e : attributes.entrySet()) addResourceAttribute(e.getKey(), e.getValue());
+            return this;
+        }
+
+        public LogSinkRoute build() {
+            if (serviceName == null || serviceName.isEmpty()) {
+                throw new IllegalArgumentException("Service name must be provided.");
+            }
+            if (endpoint != null && endpoint.isEmpty()) {
+                throw new IllegalArgumentException("OTLP endpoint must not be empty; leave it unset for the default.");
+            }
+            Resource.Builder resource = Resource.newBuilder();
+            for (Map.Entry<String, AnyValue> entry : resourceAttributes.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    throw new IllegalArgumentException("Resource attributes must not contain null keys or values");
+                }
+                if (entry.getKey().equals("service.name")) continue;
+                resource.addAttributes(kv(entry.getKey(), entry.getValue()));
+            }
+            resource.addAttributes(kv("service.name", string(serviceName)));
+            return new LogSinkRoute(endpoint, apiKey, resource.build());
+        }
+
+        private static AnyValue string(String value) {
+            return AnyValue.newBuilder().setStringValue(value).build();
+        }
+
+        private static KeyValue kv(String key, AnyValue value) {
+            return KeyValue.newBuilder().setKey(key).setValue(value).build();
+        }
+    }
+}
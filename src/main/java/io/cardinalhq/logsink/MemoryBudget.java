@@ -0,0 +1,248 @@
+package io.cardinalhq.logsink;
+
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the bytes held by the pipeline (ring, pending batches, in-flight exports) rather than
+ * the number of slots. A record is charged its protobuf-serialized size plus a fixed overhead
+ * when it is admitted and released once its export finished, whether or not it succeeded.
+ * <p>
+ * Low severities are shed first: records below WARN are refused once three quarters of the
+ * budget is in use, WARN and above only when it is exhausted. With a heap pressure threshold
+ * set, the budget also watches the heap pools' post-GC usage; while it is above the threshold,
+ * records below WARN are shed and long string bodies and attributes are truncated. Thresholds
+ * are only set on pools that had none, and {@link #close()} resets them once no budget in the
+ * JVM watches the pool any more.
+ */
+final class MemoryBudget implements NotificationListener {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+
+    /** Per-record overhead beyond the serialized size: object headers, ring slot, batch entry. */
+    static final int RECORD_OVERHEAD = 96;
+    private static final long PRESSURE_RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String TRUNCATED = "...[truncated]";
+
+    /** Pools whose collection usage threshold a budget set, by pool name, with the budgets watching them. */
+    private static final Map<String, Integer> CLAIMED = new HashMap<>();
+
+    private final long maxBytes;
+    private final long softBytes;
+    private final int maxStringChars;
+    private final AtomicLong used = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    private final List<MemoryPoolMXBean> watchedPools = new ArrayList<>();
+    private final List<MemoryPoolMXBean> claimedPools = new ArrayList<>();
+    private final double pressureThreshold;
+    private volatile boolean underPressure;
+    private volatile long nextPressureCheck;
+
+    MemoryBudget(long maxBytes, double heapPressureThreshold, int maxStringChars) {
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.softBytes = maxBytes > 0 ? maxBytes - maxBytes / 4 : Long.MAX_VALUE;
+        this.maxStringChars = maxStringChars;
+        this.pressureThreshold = heapPressureThreshold;
+        if (heapPressureThreshold > 0) watchHeap();
+    }
+
+    static long weight(LogRecord r) {
+        return r.getSerializedSize() + RECORD_OVERHEAD; // memoized by protobuf; the exporter reuses it
+    }
+
+    /**
+     * Charges the record against the budget. Returns the record to enqueue (possibly truncated),
+     * or null when it was refused; a returned record must eventually be {@link #release released}.
+     */
+    LogRecord admit(LogRecord r) {
+        boolean low = r.getSeverityNumberValue() < SeverityNumber.SEVERITY_NUMBER_WARN_VALUE;
+        if (underPressure && stillUnderPressure()) {
+            if (low) {
+                shed.incrementAndGet();
+                return null;
+            }
+            r = truncate(r);
+        }
+        return charge(weight(r), low) ? r : null;
+    }
+
+    /**
+     * Charges a record that is not built yet (a {@link LogSinkEvent}) its estimated size; false
+     * when it was refused. Such records are not truncated under heap pressure, only shed.
+     */
+    boolean admit(long bytes, int severity) {
+        boolean low = severity < SeverityNumber.SEVERITY_NUMBER_WARN_VALUE;
+        if (low && underPressure && stillUnderPressure()) {
+            shed.incrementAndGet();
+            return false;
+        }
+        return charge(bytes, low);
+    }
+
+    private boolean charge(long w, boolean low) {
+        long after = used.addAndGet(w);
+        if (after > maxBytes || (low && after > softBytes)) {
+            used.addAndGet(-w);
+            (low ? shed : rejected).incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void release(LogRecord r) {
+        used.addAndGet(-weight(r));
+    }
+
+    void release(long bytes) {
+        if (bytes != 0) used.addAndGet(-bytes);
+    }
+
+    long usedBytes() {
+        return used.get();
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /** WARN-and-above records refused because the budget was exhausted. */
+    long rejectedRecords() {
+        return rejected.get();
+    }
+
+    /** Records below WARN refused by the soft limit or heap pressure. */
+    long shedRecords() {
+        return shed.get();
+    }
+
+    long truncatedRecords() {
+        return truncated.get();
+    }
+
+    boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /** Stops watching the heap: removes the listener and resets the thresholds nobody else uses. */
+    void close() {
+        if (watchedPools.isEmpty()) return;
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException ignore) {
+            // never registered
+        }
+        synchronized (CLAIMED) {
+            for (MemoryPoolMXBean pool : claimedPools) {
+                int left = CLAIMED.merge(pool.getName(), -1, Integer::sum);
+                if (left > 0) continue;
+                CLAIMED.remove(pool.getName());
+                pool.setCollectionUsageThreshold(0); // what it was before the first budget claimed it
+            }
+        }
+        claimedPools.clear();
+        watchedPools.clear();
+        underPressure = false;
+    }
+
+    // ---------- heap pressure ----------
+
+    private void watchHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            long max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+            // Only claim thresholds nobody else set; otherwise we still get their notifications
+            // and re-check usage against our own threshold. Another budget's claim is shared.
+            synchronized (CLAIMED) {
+                if (CLAIMED.containsKey(pool.getName())) {
+                    CLAIMED.merge(pool.getName(), 1, Integer::sum);
+                    claimedPools.add(pool);
+                } else if (pool.getCollectionUsageThreshold() == 0) {
+                    pool.setCollectionUsageThreshold((long) (max * pressureThreshold));
+                    CLAIMED.put(pool.getName(), 1);
+                    claimedPools.add(pool);
+                }
+            }
+            watchedPools.add(pool);
+        }
+        if (watchedPools.isEmpty()) {
+            logger.warn("LogSink: no heap pool supports collection usage thresholds; heap pressure shedding disabled");
+            return;
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    @Override
+    public void handleNotification(Notification n, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType())) return;
+        if (!underPressure && poolsAboveThreshold()) {
+            nextPressureCheck = System.nanoTime() + PRESSURE_RECHECK_NANOS;
+            underPressure = true;
+            logger.warn("LogSink: heap above {}% after GC; shedding records below WARN and truncating large fields",
+                    (int) (pressureThreshold * 100));
+        }
+    }
+
+    /** There is no "below threshold" notification, so pressure is cleared lazily by admissions. */
+    private boolean stillUnderPressure() {
+        long now = System.nanoTime();
+        if (now - nextPressureCheck < 0) return true;
+        nextPressureCheck = now + PRESSURE_RECHECK_NANOS;
+        if (poolsAboveThreshold()) return true;
+        underPressure = false;
+        logger.info("LogSink: heap pressure cleared");
+        return false;
+    }
+
+    private boolean poolsAboveThreshold() {
+        for (MemoryPoolMXBean pool : watchedPools) {
+            MemoryUsage u = pool.getCollectionUsage();
+            if (u != null && u.getMax() > 0 && u.getUsed() > u.getMax() * pressureThreshold) return true;
+        }
+        return false;
+    }
+
+    private LogRecord truncate(LogRecord r) {
+        LogRecord.Builder b = null;
+        if (r.getBody().hasStringValue() && r.getBody().getStringValue().length() > maxStringChars) {
+            b = r.toBuilder();
+            b.setBody(AnyValue.newBuilder().setStringValue(cut(r.getBody().getStringValue())));
+        }
+        for (int i = 0; i < r.getAttributesCount(); i++) {
+            KeyValue kv = r.getAttributes(i);
+            if (!kv.getValue().hasStringValue() || kv.getValue().getStringValue().length() <= maxStringChars) continue;
+            if (b == null) b = r.toBuilder();
+            b.setAttributes(i, kv.toBuilder().setValue(AnyValue.newBuilder().setStringValue(cut(kv.getValue().getStringValue()))));
+        }
+        if (b == null) return r;
+        truncated.incrementAndGet();
+        return b.build();
+    }
+
+    private String cut(String s) {
+        int end = Character.isHighSurrogate(s.charAt(maxStringChars - 1)) ? maxStringChars - 1 : maxStringChars;
+        return s.substring(0, end) + TRUNCATED;
+    }
+}
@@ -0,0 +1,148 @@
+package io.cardinalhq.logsink;
+
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps an event's routing context (endpoint, service name, resource attributes) to a
+ * {@link LogSinkRoute}. A hit allocates nothing: each thread first compares against the route it
+ * resolved last, then probes the shared map with a reusable per-thread key. Context that matches
+ * the sink's own configuration, or that arrives after {@code maxRoutes} routes exist, resolves to
+ * null, i.e. the sink's default route.
+ */
+final class RouteCache {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+    private static final Entry DEFAULT = new Entry(null);
+
+    private final String endpointKey;
+    private final String serviceKey;
+    private final String resourceKey;
+    private final String defaultEndpoint;
+    private final String defaultService;
+    private final String defaultResource;
+    private final int maxRoutes;
+
+    private final ConcurrentHashMap<Key, Entry> routes = new ConcurrentHashMap<>();
+    private final ThreadLocal<Key> probe = ThreadLocal.withInitial(Key::new);
+    private int created; // routes built, not counting contexts that matched the default
+    private boolean overflowWarned;
+
+    RouteCache(String endpointKey, String serviceKey, String resourceKey,
+               String defaultEndpoint, String defaultService, String defaultResource, int maxRoutes) {
+        this.endpointKey = endpointKey;
+        this.serviceKey = serviceKey;
+        this.resourceKey = resourceKey;
+        this.defaultEndpoint = defaultEndpoint;
+        this.defaultService = defaultService;
+        this.defaultResource = defaultResource;
+        this.maxRoutes = maxRoutes;
+    }
+
+    /** The route for this context, or null for the sink's default route. */
+    LogSinkRoute resolve(ReadOnlyStringMap ctx) {
+        if (ctx == null || ctx.isEmpty()) return null;
+        String endpoint = get(ctx, endpointKey);
+        String service = get(ctx, serviceKey);
+        String resource = get(ctx, resourceKey);
+        if (endpoint == null && service == null && resource == null) return null;
+
+        Key p = probe.get();
+        if (p.last != null && p.matches(endpoint, service, resource)) return p.last.route;
+        p.set(endpoint, service, resource);
+        Entry e = routes.get(p);
+        if (e == null) e = create(p);
+        p.last = e;
+        return e.route;
+    }
+
+    int size() {
+        return routes.size();
+    }
+
+    private synchronized Entry create(Key p) {
+        Entry e = routes.get(p);
+        if (e != null) return e;
+        if (isDefault(p)) {
+            e = DEFAULT;
+        } else if (created >= maxRoutes) {
+            if (!overflowWarned) {
+                overflowWarned = true;
+                logger.warn("LogSink: more than {} routes; further services are sent with the default resource", maxRoutes);
+            }
+            return DEFAULT; // not cached, so the table stays bounded
+        } else {
+            e = new Entry(build(p));
+            created++;
+        }
+        Key key = new Key();
+        key.set(p.endpoint, p.service, p.resource);
+        routes.put(key, e);
+        return e;
+    }
+
+    private boolean isDefault(Key p) {
+        return (p.endpoint == null || p.endpoint.equals(defaultEndpoint))
+                && (p.service == null || p.service.equals(defaultService))
+                && (p.resource == null || p.resource.equals(defaultResource));
+    }
+
+    private LogSinkRoute build(Key p) {
+        Map<String, String> attrs = LogSinkAppender.parseOtelResourceAttributes(p.resource);
+        String service = p.service != null ? p.service : attrs.getOrDefault("service.name", defaultService);
+        return LogSinkRoute.builder()
+                .setOtlpEndpoint(p.endpoint)
+                .setServiceName(service)
+                .addResourceAttributes(attrs)
+                .build();
+    }
+
+    private static String get(ReadOnlyStringMap ctx, String key) {
+        Object v = ctx.getValue(key);
+        if (v == null) return null;
+        String s = (v instanceof String ? (String) v : v.toString()).trim(); // trim() returns s itself when clean
+        return s.isEmpty() ? null : s;
+    }
+
+    private static final class Entry {
+        final LogSinkRoute route; // null => default route
+
+        Entry(LogSinkRoute route) {
+            this.route = route;
+        }
+    }
+
+    /** Routing context; per-thread probes are mutated in place, stored keys never are. */
+    private static final class Key {
+        String endpoint;
+        String service;
+        String resource;
+        int hash;
+        Entry last; // probes only: the entry this thread resolved last
+
+        void set(String endpoint, String service, String resource) {
+            this.endpoint = endpoint;
+            this.service = service;
+            this.resource = resource;
+            this.hash = 31 * (31 * Objects.hashCode(endpoint) + Objects.hashCode(service)) + Objects.hashCode(resource);
+        }
+
+        boolean matches(String endpoint, String service, String resource) {
+            return Objects.equals(this.endpoint, endpoint) && Objects.equals(this.service, service)
+                    && Objects.equals(this.resource, resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).matches(endpoint, service, resource);
+        }
+    }
+}
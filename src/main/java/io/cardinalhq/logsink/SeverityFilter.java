@@ -0,0 +1,82 @@
+package io.cardinalhq.logsink;
+
+import io.opentelemetry.proto.logs.v1.LogRecord;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which records the batcher queues: a minimum OTLP severity plus a sample rate per severity band
+ * (TRACE 1-4, DEBUG 5-8, INFO 9-12, WARN 13-16, ERROR 17-20, FATAL 21-24). Immutable; changes
+ * build a new filter that is swapped in whole, so a record never sees half of an update.
+ * Records without a severity are always kept.
+ */
+final class SeverityFilter {
+    static final String[] BANDS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    static final SeverityFilter KEEP_ALL = new SeverityFilter(0, new double[]{1, 1, 1, 1, 1, 1});
+
+    private final int minSeverity; // OTLP severity number; 0 keeps everything
+    private final double[] rates;
+    private final boolean keepsAll;
+
+    private SeverityFilter(int minSeverity, double[] rates) {
+        this.minSeverity = minSeverity;
+        this.rates = rates;
+        boolean all = minSeverity <= 1;
+        for (double r : rates) all &= r >= 1;
+        this.keepsAll = all;
+    }
+
+    boolean keep(LogRecord r) {
+        return keepsAll || keep(r.getSeverityNumberValue());
+    }
+
+    boolean keep(int s) {
+        if (keepsAll) return true;
+        if (s < 1 || s > 24) return true;
+        if (s < minSeverity) return false;
+        double rate = rates[(s - 1) / 4];
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    int minSeverity() {
+        return minSeverity;
+    }
+
+    /** The band name of the minimum severity, or ALL when nothing is cut. */
+    String minSeverityName() {
+        return minSeverity <= 1 ? "ALL" : BANDS[(minSeverity - 1) / 4];
+    }
+
+    SeverityFilter withMinSeverity(String band) {
+        if (band == null) throw new IllegalArgumentException("severity must not be null");
+        String name = band.trim().toUpperCase(Locale.ROOT);
+        return new SeverityFilter(name.equals("ALL") ? 0 : bandIndex(name) * 4 + 1, rates);
+    }
+
+    SeverityFilter withSampleRate(String band, double rate) {
+        if (band == null) throw new IllegalArgumentException("severity must not be null");
+        if (!(rate >= 0 && rate <= 1)) throw new IllegalArgumentException("sample rate must be in [0, 1], got " + rate);
+        double[] next = rates.clone();
+        next[bandIndex(band.trim().toUpperCase(Locale.ROOT))] = rate;
+        return new SeverityFilter(minSeverity, next);
+    }
+
+    /** E.g. {@code TRACE=1.0,DEBUG=0.1,INFO=1.0,WARN=1.0,ERROR=1.0,FATAL=1.0}. */
+    String describeRates() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BANDS.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(BANDS[i]).append('=').append(rates[i]);
+        }
+        return sb.toString();
+    }
+
+    private static int bandIndex(String name) {
+        if (name.equals("WARNING")) name = "WARN";
+        int i = Arrays.asList(BANDS).indexOf(name);
+        if (i < 0) throw new IllegalArgumentException("unknown severity '" + name + "'; expected one of " + Arrays.toString(BANDS));
+        return i;
+    }
+}
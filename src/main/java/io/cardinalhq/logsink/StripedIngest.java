@@ -0,0 +1,154 @@
+package io.cardinalhq.logsink;
+
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Striped staging in front of the ring. Each producer thread maps to one stripe and appends to
+ * that stripe's small buffer; a full buffer is published to the ring as a single chunk event, so
+ * the shared MULTI-producer sequence is claimed once per chunk instead of once per record.
+ * <p>
+ * Partial chunks are published by {@link #drainDue()}, which the consumer thread runs between
+ * batches and while idle, once their oldest record is older than the flush deadline. A stripe
+ * publishes under its own lock, so records from one thread reach the consumer in the order they
+ * were logged.
+ */
+final class StripedIngest {
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int chunkSize;
+    private final long deadlineNanos;
+    private final LogSinkBatcher batcher;
+    private final BooleanSupplier accepting;
+
+    private static final EventTranslatorTwoArg<LogSinkBatcher.LogEvent, Stripe, Void> CHUNK_TX =
+            (evt, seq, s, unused) -> {
+                evt.clear();
+                evt.setChunk(s.buf, s.routes, s.count);
+            };
+
+    StripedIngest(LogSinkBatcher batcher, int stripeCount, int chunkSize,
+                  long deadlineNanos, BooleanSupplier accepting) {
+        int n = 1;
+        while (n < stripeCount) n <<= 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe(chunkSize);
+        this.mask = stripes.length - 1;
+        this.chunkSize = chunkSize;
+        this.deadlineNanos = deadlineNanos;
+        this.batcher = batcher;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Stages one record. Returns false when the stripe is full and the ring has no room for its
+     * chunk, or when the batcher stopped accepting records.
+     */
+    boolean offer(LogRecord record, LogSinkRoute route) {
+        Stripe s = stripes[(int) Thread.currentThread().getId() & mask];
+        synchronized (s) {
+            if (!accepting.getAsBoolean()) return false;
+            if (s.count == chunkSize && !publish(s)) return false;
+            if (s.count == 0) s.firstNanos = System.nanoTime();
+            s.routes[s.count] = route;
+            s.buf[s.count++] = record;
+            if (s.count == chunkSize) publish(s); // if the ring is full the chunk waits for the next offer or drainDue
+        }
+        return true;
+    }
+
+    /**
+     * Publishes one event straight to the ring, after whatever this thread has staged, so it
+     * neither waits for a chunk to fill nor overtakes the thread's earlier records. Used for
+     * acknowledged records and {@link LogSinkEvent}s, which carry more than a chunk slot holds.
+     */
+    <A, B> boolean offerDirect(EventTranslatorTwoArg<LogSinkBatcher.LogEvent, A, B> tx, A a, B b) {
+        Stripe s = stripes[(int) Thread.currentThread().getId() & mask];
+        synchronized (s) {
+            if (!accepting.getAsBoolean()) return false;
+            if (s.count > 0 && !publish(s)) return false;
+            return batcher.publish(tx, a, b);
+        }
+    }
+
+    /** Publishes partial chunks whose oldest record has waited past the flush deadline. */
+    void drainDue() {
+        long now = System.nanoTime();
+        for (Stripe s : stripes) {
+            if (s.count == 0 || now - s.firstNanos < deadlineNanos) continue; // racy peek; rechecked below
+            synchronized (s) {
+                if (s.count > 0) publish(s);
+            }
+        }
+    }
+
+    /** Publishes every staged record regardless of age, e.g. on an explicit flush. */
+    void drainAll() {
+        for (Stripe s : stripes) {
+            if (s.count == 0) continue;
+            synchronized (s) {
+                if (s.count > 0) publish(s);
+            }
+        }
+    }
+
+    /**
+     * Publishes everything staged, retrying while the ring is full until {@code deadline}.
+     * Returns the number of records that could not be published in time. Waits outside the
+     * stripe lock: the consumer takes it in {@link #drainDue()}, and it must keep emptying the ring.
+     */
+    long drainAll(long deadline) {
+        long left = 0;
+        for (Stripe s : stripes) {
+            while (true) {
+                synchronized (s) {
+                    if (s.count == 0 || publish(s)) break;
+                    if (System.nanoTime() - deadline >= 0) {
+                        left += s.count;
+                        break;
+                    }
+                }
+                LockSupport.parkNanos(100_000L);
+            }
+        }
+        return left;
+    }
+
+    /** Caller holds the stripe lock. */
+    private boolean publish(Stripe s) {
+        if (!batcher.publish(CHUNK_TX, s, null)) return false;
+        Arrays.fill(s.buf, 0, s.count, null);
+        Arrays.fill(s.routes, 0, s.count, null);
+        s.count = 0;
+        return true;
+    }
+
+    // Padding on both sides keeps hot stripe fields off the cache lines of neighbouring stripes.
+    abstract static class StripePad {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    abstract static class StripeFields extends StripePad {
+        final LogRecord[] buf;
+        final LogSinkRoute[] routes;
+        int count;
+        long firstNanos;
+
+        StripeFields(int chunkSize) {
+            this.buf = new LogRecord[chunkSize];
+            this.routes = new LogSinkRoute[chunkSize];
+        }
+    }
+
+    static final class Stripe extends StripeFields {
+        long q1, q2, q3, q4, q5, q6, q7;
+
+        Stripe(int chunkSize) {
+            super(chunkSize);
+        }
+    }
+}
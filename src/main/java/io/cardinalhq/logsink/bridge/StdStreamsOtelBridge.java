@@ -1,6 +1,7 @@
 package io.cardinalhq.logsink.bridge;
 
 import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.parse.LineParser;
 import io.opentelemetry.proto.common.v1.AnyValue;
 import io.opentelemetry.proto.common.v1.KeyValue;
 import io.opentelemetry.proto.logs.v1.LogRecord;
@@ -10,7 +11,9 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public final class StdStreamsOtelBridge {
@@ -26,10 +29,10 @@ public final class StdStreamsOtelBridge {
         PrintStream origOut = System.out;
         PrintStream origErr = System.err;
 
-        // Build line->OTLP record callbacks
-        LineSink outLineSink = (line, tsNanos) -> sink.log(buildRecord(line, tsNanos,
+        // Build line->OTLP record callbacks; the stream only decides severity when the line has no level
+        LineSink outLineSink = (line, observedNanos) -> sink.log(buildRecord(line, observedNanos,
                 SeverityNumber.SEVERITY_NUMBER_INFO, "proc.stdout"));
-        LineSink errLineSink = (line, tsNanos) -> sink.log(buildRecord(line, tsNanos,
+        LineSink errLineSink = (line, observedNanos) -> sink.log(buildRecord(line, observedNanos,
                 SeverityNumber.SEVERITY_NUMBER_ERROR, "proc.stderr"));
 
         // Create tees that write to original streams AND to OTLP via sink.log(...)
@@ -45,31 +48,55 @@ public final class StdStreamsOtelBridge {
 
     // ---- plumbing ----
 
-    /** Minimal callback for completed lines. */
+    /** Minimal callback for completed, parsed lines. */
     @FunctionalInterface
-    interface LineSink { void accept(String line, long epochNanos); }
+    interface LineSink { void accept(LineParser line, long observedNanos); }
 
-    /** Converts bytes to lines, calls LineSink per line. */
+    /** Splits bytes into lines and runs each through this stream's {@link LineParser}. */
     static final class LineToSinkOutputStream extends OutputStream {
         private final LineSink sink;
-        private final Charset cs;
-        private final StringBuilder sb = new StringBuilder(256);
-        LineToSinkOutputStream(LineSink sink, Charset cs) { this.sink = sink; this.cs = cs; }
+        private final LineParser parser; // per stream, so format detection is cached per stream
+        private byte[] buf = new byte[256];
+        private int len;
+        LineToSinkOutputStream(LineSink sink, Charset cs) {
+            this.sink = sink;
+            this.parser = new LineParser(cs, ZoneId.systemDefault());
+        }
 
         @Override public void write(int b) {
             if (b == '\n') flushLine();
-            else if (b != '\r') sb.append((char)(b & 0xFF)); // quick UTF-8 ASCII fast-path
+            else append((byte) b);
+        }
+        @Override public void write(byte[] b, int off, int n) {
+            int start = off;
+            int end = off + n;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    append(b, start, i - start);
+                    flushLine();
+                    start = i + 1;
+                }
+            }
+            append(b, start, end - start);
         }
-        @Override public void write(byte[] b, int off, int len) {
-            for (int i = 0; i < len; i++) write(b[off + i]);
+        @Override public void flush() { if (len > 0) flushLine(); }
+        private void append(byte b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+            buf[len++] = b;
+        }
+        private void append(byte[] b, int off, int n) {
+            if (n <= 0) return;
+            if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+            System.arraycopy(b, off, buf, len, n);
+            len += n;
         }
-        @Override public void flush() { if (sb.length() > 0) flushLine(); }
         private void flushLine() {
-            String line = sb.toString();
-            sb.setLength(0);
-            if (!line.isEmpty()) {
-                long nowNanos = System.currentTimeMillis() * 1_000_000L;
-                sink.accept(line, nowNanos);
+            int n = len;
+            len = 0;
+            if (n == 0) return;
+            long nowNanos = System.currentTimeMillis() * 1_000_000L;
+            if (parser.parse(buf, 0, n, nowNanos)) {
+                sink.accept(parser, nowNanos);
             }
         }
     }
@@ -106,17 +133,23 @@ public final class StdStreamsOtelBridge {
         @Override public void close() { /* do not close the original System streams */ }
     }
 
-    private static LogRecord buildRecord(String line, long tsNanos, SeverityNumber sev, String logType) {
+    /** The stream's severity applies only when the line carries no level of its own. */
+    static LogRecord buildRecord(LineParser line, long observedNanos, SeverityNumber defaultSev, String logType) {
         List<KeyValue> attrs = new ArrayList<>(2);
         attrs.add(kv("log_type", logType));
         attrs.add(kv("stream", logType.endsWith("stderr") ? "stderr" : "stdout"));
 
+        SeverityNumber sev = line.severity() != null ? line.severity() : defaultSev;
+        String sevText = line.severityText() != null
+                ? line.severityText()
+                : defaultSev.name().replace("SEVERITY_NUMBER_", "");
+
         return LogRecord.newBuilder()
-                .setTimeUnixNano(tsNanos)
-                .setObservedTimeUnixNano(tsNanos)
+                .setTimeUnixNano(line.timeUnixNano())
+                .setObservedTimeUnixNano(observedNanos)
                 .setSeverityNumber(sev)
-                .setSeverityText(sev.name().replace("SEVERITY_NUMBER_", ""))
-                .setBody(AnyValue.newBuilder().setStringValue(line).build())
+                .setSeverityText(sevText)
+                .setBody(AnyValue.newBuilder().setStringValue(line.body()).build())
                 .addAllAttributes(attrs)
                 .build();
     }
@@ -0,0 +1,176 @@
+package io.cardinalhq.logsink.cli;
+
+import io.cardinalhq.logsink.DrainResult;
+import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.LogSinkConfig;
+import io.cardinalhq.logsink.file.FileTailSource;
+import io.cardinalhq.logsink.ring.SharedRingShipper;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point bundled in the shaded jar. log4j-api is not shaded, so put it on
+ * the class path next to the jar:
+ * <pre>
+ *   java -cp logsink.jar:log4j-api.jar io.cardinalhq.logsink.cli.LogSinkCli tail --endpoint URL /var/log/app/*.log
+ *   java -cp logsink.jar:log4j-api.jar io.cardinalhq.logsink.cli.LogSinkCli replay --endpoint URL --loops 10 kafka-broker-0.txt
+ *   java -cp logsink.jar:log4j-api.jar io.cardinalhq.logsink.cli.LogSinkCli ship --endpoint URL --ring /dev/shm/app.ring
+ * </pre>
+ * {@code tail} ships files as a sidecar with a checkpoint; {@code replay} pushes files through
+ * the pipeline as fast as it accepts them and prints the achieved rate, doubling as a load generator;
+ * {@code ship} exports what an application using the shared ring transport writes to its ring.
+ */
+public final class LogSinkCli {
+    private LogSinkCli() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            System.exit(2);
+        }
+        Options o = Options.parse(args, 1);
+        switch (args[0]) {
+            case "tail":
+                tail(o);
+                break;
+            case "replay":
+                replay(o);
+                break;
+            case "ship":
+                ship(o);
+                break;
+            default:
+                usage();
+                System.exit(2);
+        }
+    }
+
+    private static void tail(Options o) throws Exception {
+        LogSink sink = new LogSink(o.config());
+        FileTailSource.Builder b = FileTailSource.builder()
+                .setSink(sink)
+                .setStartAtEnd(o.startAtEnd);
+        if (o.checkpoint != null) b.setCheckpointFile(Paths.get(o.checkpoint));
+        o.paths.forEach(b::addPath);
+        FileTailSource source = b.build();
+
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            source.close();
+            sink.shutdown();
+            done.countDown();
+        }, "logsink-cli-shutdown"));
+        source.start();
+        done.await();
+    }
+
+    private static void replay(Options o) throws Exception {
+        LogSink sink = new LogSink(o.config());
+        long lines = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < o.loops; i++) {
+            FileTailSource.Builder b = FileTailSource.builder()
+                    .setSink(sink)
+                    .setMemoryMapped(o.mmap)
+                    .setReadBufferBytes(8 << 20);
+            o.paths.forEach(b::addPath);
+            try (FileTailSource source = b.build()) {
+                lines += source.readToEnd();
+                bytes += source.getBytesEmitted();
+            }
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        DrainResult drained = sink.shutdown(30, TimeUnit.SECONDS);
+        System.out.printf("replayed %d lines (%.1f MiB) in %.2fs: %.0f lines/s, %.1f MiB/s%n",
+                lines, bytes / 1048576.0, secs, lines / secs, bytes / 1048576.0 / secs);
+        System.out.println("shutdown drain: " + drained);
+    }
+
+    private static void ship(Options o) throws Exception {
+        LogSink sink = new LogSink(o.config());
+        SharedRingShipper shipper = SharedRingShipper.open(Paths.get(o.ring), sink,
+                o.service == null || o.service.isBlank() ? "unknown_service" : o.service);
+        Thread reader = new Thread(shipper, "logsink-shipper");
+
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            shipper.close();
+            try {
+                reader.join(5000);
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("shutdown drain: " + sink.shutdown(30, TimeUnit.SECONDS));
+            done.countDown();
+        }, "logsink-cli-shutdown"));
+        reader.start();
+        while (!done.await(o.statsSeconds, TimeUnit.SECONDS)) {
+            System.out.printf("ring %s: lag %d bytes, producer wrote %d dropped %d, shipped %d, stalls %d, corrupt %d%n",
+                    o.ring, shipper.lagBytes(), shipper.producerWrittenRecords(), shipper.producerDroppedRecords(),
+                    shipper.shippedRecords(), shipper.stalls(), shipper.corruptFrames());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: LogSinkCli tail   [options] [--checkpoint FILE] [--start-at-end] GLOB...");
+        System.err.println("       LogSinkCli replay [options] [--loops N] [--mmap] FILE...");
+        System.err.println("       LogSinkCli ship   [options] --ring FILE [--stats-seconds N]");
+        System.err.println("options: --endpoint URL (default $OTEL_EXPORTER_OTLP_ENDPOINT) --service NAME");
+        System.err.println("         --api-key KEY --queue N --batch N");
+    }
+
+    static final class Options {
+        String endpoint = System.getenv("OTEL_EXPORTER_OTLP_ENDPOINT");
+        String service = System.getenv("OTEL_SERVICE_NAME");
+        String apiKey = "";
+        int queueSize = 8192;
+        int batchSize = 1000;
+        String checkpoint;
+        boolean startAtEnd;
+        boolean mmap;
+        int loops = 1;
+        String ring;
+        int statsSeconds = 10;
+        final List<String> paths = new ArrayList<>();
+
+        static Options parse(String[] args, int from) {
+            Options o = new Options();
+            for (int i = from; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--endpoint": o.endpoint = args[++i]; break;
+                    case "--service": o.service = args[++i]; break;
+                    case "--api-key": o.apiKey = args[++i]; break;
+                    case "--queue": o.queueSize = Integer.parseInt(args[++i]); break;
+                    case "--batch": o.batchSize = Integer.parseInt(args[++i]); break;
+                    case "--checkpoint": o.checkpoint = args[++i]; break;
+                    case "--start-at-end": o.startAtEnd = true; break;
+                    case "--mmap": o.mmap = true; break;
+                    case "--loops": o.loops = Integer.parseInt(args[++i]); break;
+                    case "--ring": o.ring = args[++i]; break;
+                    case "--stats-seconds": o.statsSeconds = Integer.parseInt(args[++i]); break;
+                    default:
+                        if (a.startsWith("--")) throw new IllegalArgumentException("Unknown option " + a);
+                        o.paths.add(a);
+                }
+            }
+            if (o.ring == null && o.paths.isEmpty()) throw new IllegalArgumentException("No files given");
+            return o;
+        }
+
+        LogSinkConfig config() {
+            return LogSinkConfig.builder()
+                    .setOtlpEndpoint(endpoint)
+                    .setApiKey(apiKey)
+                    .setAppName(service == null || service.isBlank() ? "logsink-cli" : service)
+                    .setQueueSize(queueSize)
+                    .setMaxBatchSize(batchSize)
+                    .build();
+        }
+    }
+}
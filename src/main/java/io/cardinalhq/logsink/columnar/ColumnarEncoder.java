@@ -0,0 +1,279 @@
+package io.cardinalhq.logsink.columnar;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes OTLP log requests column by column, in the spirit of the OTel Arrow protocol, for a
+ * receiver that keeps per-stream state. One encoder is one stream: batches must be sent in order
+ * and one at a time, and any batch the receiver did not acknowledge must be followed by
+ * {@link #reset()}, since the receiver's dictionaries may no longer match ours.
+ * <p>
+ * Compared with row-oriented protobuf, attribute keys, string values, severity texts, bodies,
+ * resources and scopes are sent once per stream and then referenced by a small dictionary id.
+ * Timestamps are zigzag deltas from the previous record, which also spans batches. Each field is
+ * written as its own column, so similar bytes sit together, and the columns are compressed with
+ * one deflate context per stream: a frame is flushed with {@code SYNC_FLUSH}, not finished, so
+ * repeated text refers back into earlier batches instead of being compressed afresh each time.
+ * <p>
+ * Frame layout (varints are unsigned LEB128, zigzag where signed):
+ * <pre>
+ *   "LSC" version:u8  streamId:fixed64  seq:varint          seq 0 = fresh stream state
+ *   rest of the frame: raw deflate (RFC 1951) continuing the stream's compression context
+ *   resourceLogsCount
+ *     resource:msgRef  schemaUrl:strRef(values)  scopeLogsCount
+ *       scope:msgRef   schemaUrl:strRef(values)  n
+ *         columns, each n entries: time:zigzag(delta) observed:zigzag(observed - time)
+ *           severityNumber severityText:strRef(values) flags droppedAttributesCount
+ *           traceId:bytes spanId:bytes body:value(bodies) attributeCount
+ *         then one entry per attribute: key:strRef(keys), then value:value(values)
+ *
+ *   strRef  0 = literal, 1 = literal added to the dictionary, k = entry k - 2
+ *   msgRef  0 = absent, 1 = literal, 2 = literal added, k = entry k - 3  (serialized protobuf)
+ *   value   tag:u8 then ABSENT | EMPTY | STRING strRef | BOOL u8 | INT zigzag | DOUBLE fixed64
+ *           | PROTO bytes (serialized AnyValue, for bytes, arrays and key-value lists)
+ * </pre>
+ * A dictionary stops growing at its size limit; the next batch then starts a fresh stream state
+ * so that dictionaries follow the current traffic instead of the earliest one.
+ */
+public final class ColumnarEncoder {
+    public static final String CONTENT_TYPE = "application/x-logsink-columnar";
+    public static final byte[] MAGIC = {'L', 'S', 'C'};
+    public static final int VERSION = 1;
+
+    public static final int TAG_ABSENT = 0;
+    public static final int TAG_EMPTY = 1;
+    public static final int TAG_STRING = 2;
+    public static final int TAG_BOOL = 3;
+    public static final int TAG_INT = 4;
+    public static final int TAG_DOUBLE = 5;
+    public static final int TAG_PROTO = 6;
+
+    /** Longer strings are always sent as literals; they rarely repeat and would crowd the dictionary. */
+    public static final int MAX_DICTIONARY_STRING_BYTES = 4096;
+
+    private final int maxEntries;
+    private final long streamId = ThreadLocalRandom.current().nextLong();
+    private long seq;
+    private long lastTime;
+
+    private final HashMap<String, Integer> keys = new HashMap<>();
+    private final HashMap<String, Integer> values = new HashMap<>();
+    private final HashMap<String, Integer> bodies = new HashMap<>();
+    private final HashMap<MessageLite, Integer> messages = new HashMap<>();
+    private boolean full;
+
+    private final Buf out = new Buf();
+    private final Buf frame = new Buf();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    public ColumnarEncoder(int maxDictionaryEntries) {
+        if (maxDictionaryEntries < 1) throw new IllegalArgumentException("maxDictionaryEntries must be >= 1");
+        this.maxEntries = maxDictionaryEntries;
+    }
+
+    public long streamId() {
+        return streamId;
+    }
+
+    /** Drops the stream state; the next batch is self-contained and re-seeds the receiver. */
+    public void reset() {
+        seq = 0;
+        lastTime = 0;
+        keys.clear();
+        values.clear();
+        bodies.clear();
+        messages.clear();
+        full = false;
+        deflater.reset();
+    }
+
+    /** Releases the compression context; the encoder must not be used afterwards. */
+    public void close() {
+        deflater.end();
+    }
+
+    public byte[] encode(ExportLogsServiceRequest request) {
+        if (full) reset();
+        frame.n = 0;
+        frame.raw(MAGIC);
+        frame.u8(VERSION);
+        frame.fixed64(streamId);
+        frame.varint(seq++);
+
+        out.n = 0;
+        out.varint(request.getResourceLogsCount());
+        for (ResourceLogs rl : request.getResourceLogsList()) {
+            msgRef(rl.hasResource() ? rl.getResource() : null);
+            strRef(rl.getSchemaUrl(), values);
+            out.varint(rl.getScopeLogsCount());
+            for (ScopeLogs sl : rl.getScopeLogsList()) {
+                msgRef(sl.hasScope() ? sl.getScope() : null);
+                strRef(sl.getSchemaUrl(), values);
+                records(sl.getLogRecordsList());
+            }
+        }
+        deflater.setInput(out.a, 0, out.n);
+        int written;
+        do {
+            frame.ensure(Math.max(4096, out.n / 4));
+            written = deflater.deflate(frame.a, frame.n, frame.a.length - frame.n, Deflater.SYNC_FLUSH);
+            frame.n += written;
+        } while (frame.n == frame.a.length); // a full buffer may hide more pending output
+        return Arrays.copyOf(frame.a, frame.n);
+    }
+
+    private void records(List<LogRecord> rs) {
+        int n = rs.size();
+        out.varint(n);
+        for (int i = 0; i < n; i++) {
+            long t = rs.get(i).getTimeUnixNano();
+            out.zigzag(t - lastTime);
+            lastTime = t;
+        }
+        for (int i = 0; i < n; i++) out.zigzag(rs.get(i).getObservedTimeUnixNano() - rs.get(i).getTimeUnixNano());
+        for (int i = 0; i < n; i++) out.varint(rs.get(i).getSeverityNumberValue() & 0xFFFFFFFFL);
+        for (int i = 0; i < n; i++) strRef(rs.get(i).getSeverityText(), values);
+        for (int i = 0; i < n; i++) out.varint(rs.get(i).getFlags() & 0xFFFFFFFFL);
+        for (int i = 0; i < n; i++) out.varint(rs.get(i).getDroppedAttributesCount() & 0xFFFFFFFFL);
+        for (int i = 0; i < n; i++) out.bytes(rs.get(i).getTraceId());
+        for (int i = 0; i < n; i++) out.bytes(rs.get(i).getSpanId());
+        for (int i = 0; i < n; i++) {
+            LogRecord r = rs.get(i);
+            value(r.hasBody() ? r.getBody() : null, bodies);
+        }
+        for (int i = 0; i < n; i++) out.varint(rs.get(i).getAttributesCount());
+        for (int i = 0; i < n; i++) {
+            for (KeyValue kv : rs.get(i).getAttributesList()) strRef(kv.getKey(), keys);
+        }
+        for (int i = 0; i < n; i++) {
+            for (KeyValue kv : rs.get(i).getAttributesList()) value(kv.hasValue() ? kv.getValue() : null, values);
+        }
+    }
+
+    private void value(AnyValue v, HashMap<String, Integer> dict) {
+        if (v == null) {
+            out.u8(TAG_ABSENT);
+            return;
+        }
+        switch (v.getValueCase()) {
+            case VALUE_NOT_SET:
+                out.u8(TAG_EMPTY);
+                break;
+            case STRING_VALUE:
+                out.u8(TAG_STRING);
+                strRef(v.getStringValue(), dict);
+                break;
+            case BOOL_VALUE:
+                out.u8(TAG_BOOL);
+                out.u8(v.getBoolValue() ? 1 : 0);
+                break;
+            case INT_VALUE:
+                out.u8(TAG_INT);
+                out.zigzag(v.getIntValue());
+                break;
+            case DOUBLE_VALUE:
+                out.u8(TAG_DOUBLE);
+                out.fixed64(Double.doubleToRawLongBits(v.getDoubleValue()));
+                break;
+            default:
+                out.u8(TAG_PROTO);
+                out.bytes(v.toByteString());
+        }
+    }
+
+    private void strRef(String s, HashMap<String, Integer> dict) {
+        Integer id = dict.get(s);
+        if (id != null) {
+            out.varint(id + 2L);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        boolean add = utf8.length <= MAX_DICTIONARY_STRING_BYTES && admit(dict);
+        if (add) dict.put(s, dict.size());
+        out.varint(add ? 1 : 0);
+        out.varint(utf8.length);
+        out.raw(utf8);
+    }
+
+    private void msgRef(MessageLite m) {
+        if (m == null) {
+            out.varint(0);
+            return;
+        }
+        Integer id = messages.get(m);
+        if (id != null) {
+            out.varint(id + 3L);
+            return;
+        }
+        boolean add = admit(messages);
+        if (add) messages.put(m, messages.size());
+        out.varint(add ? 2 : 1);
+        out.bytes(m.toByteString());
+    }
+
+    private boolean admit(HashMap<?, Integer> dict) {
+        if (dict.size() < maxEntries) return true;
+        full = true;
+        return false;
+    }
+
+    /** Growable byte buffer, reused across batches. */
+    private static final class Buf {
+        byte[] a = new byte[8192];
+        int n;
+
+        void ensure(int extra) {
+            if (n + extra > a.length) a = Arrays.copyOf(a, Math.max(a.length * 2, n + extra));
+        }
+
+        void u8(int b) {
+            ensure(1);
+            a[n++] = (byte) b;
+        }
+
+        void raw(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, a, n, b.length);
+            n += b.length;
+        }
+
+        void bytes(ByteString b) {
+            varint(b.size());
+            ensure(b.size());
+            b.copyTo(a, n);
+            n += b.size();
+        }
+
+        void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                a[n++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            a[n++] = (byte) v;
+        }
+
+        void zigzag(long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        void fixed64(long v) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) a[n++] = (byte) (v >>> i);
+        }
+    }
+}
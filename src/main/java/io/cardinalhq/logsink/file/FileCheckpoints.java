@@ -0,0 +1,74 @@
+package io.cardinalhq.logsink.file;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read offsets persisted as one tab-separated {@code offset, fileKey, path} line per file.
+ * Writes go to a sibling temp file that is atomically moved over the old checkpoint, so a
+ * crash mid-write leaves the previous checkpoint intact.
+ */
+final class FileCheckpoints {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+
+    private FileCheckpoints() {}
+
+    static final class Entry {
+        final String path;
+        final String fileKey;
+        final long offset;
+
+        Entry(String path, String fileKey, long offset) {
+            this.path = path;
+            this.fileKey = fileKey;
+            this.offset = offset;
+        }
+    }
+
+    static Map<String, Entry> load(Path file) {
+        Map<String, Entry> out = new HashMap<>();
+        if (!Files.exists(file)) return out;
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) continue;
+                try {
+                    out.put(parts[2], new Entry(parts[2], parts[1], Long.parseLong(parts[0])));
+                } catch (NumberFormatException ignore) {
+                    // skip corrupt line; that file restarts from its default position
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read checkpoint {}: {}", file, e.toString());
+        }
+        return out;
+    }
+
+    static void save(Path file, List<Entry> entries) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Entry e : entries) {
+                w.write(Long.toString(e.offset));
+                w.write('\t');
+                w.write(e.fileKey);
+                w.write('\t');
+                w.write(e.path);
+                w.write('\n');
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
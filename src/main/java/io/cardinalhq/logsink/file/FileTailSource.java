@@ -0,0 +1,639 @@
+package io.cardinalhq.logsink.file;
+
+import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.parse.LineParser;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Tails files matching one or more globs and feeds each line to {@link LogSink#log(LogRecord)}.
+ * Lines go through a per-file {@link LineParser}, so escape codes are stripped and the line's
+ * own timestamp and level are used when present.
+ * <p>
+ * Files are tracked by their file-system identity (inode) rather than by name, so a
+ * rename-style rotation keeps reading the old file to its end before the new one is picked
+ * up, and a copy-truncate rotation is detected when the size drops below the read offset.
+ * Read offsets only advance past lines the sink accepted; when the ring is full the source
+ * backs off and retries instead of dropping.
+ * <p>
+ * With a checkpoint file, lines are logged with {@link LogSink#logAcknowledged(LogRecord)} and
+ * the persisted offset of a file only moves past lines the collector acknowledged, in file
+ * order, so a restart resumes after the last delivered line. A line whose batch was refused is
+ * read again from there after a pause, along with the lines behind it: delivery is at least
+ * once, and a restart or a refused batch can ship some lines twice. Where the sink cannot
+ * acknowledge (the shared ring transport) the checkpoint falls back to the read offset, and lines
+ * still queued in the sink at a crash are lost.
+ * <p>
+ * Live files are read through a reusable direct buffer. Memory mapping is reserved for
+ * {@link Builder#setMemoryMapped(boolean) opt-in} use on files that will not be truncated
+ * underneath the reader (e.g. replays), since touching a truncated mapping faults the JVM.
+ */
+public final class FileTailSource implements AutoCloseable {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+
+    /** How long a file whose lines were refused waits before it is read again from its checkpoint. */
+    private static final long REREAD_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** How long {@link #close()} waits for outstanding acknowledgements before the last checkpoint. */
+    private static final long CLOSE_ACK_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    /** {@code Unsafe.invokeCleaner}, to unmap a window as soon as it is read; null where unavailable. */
+    private static final MethodHandle UNMAP = unmapper();
+
+    private final LogSink sink;
+    private final List<String> globs;
+    private final Path checkpointFile;
+    private final Duration pollInterval;
+    private final Duration checkpointInterval;
+    private final int readBufferBytes;
+    private final boolean memoryMapped;
+    private final boolean startAtEnd;
+    private final ZoneId zone;
+
+    private final Map<Object, TailedFile> files = new LinkedHashMap<>();
+    private final Map<String, FileCheckpoints.Entry> restored;
+    private final ByteBuffer direct;
+    private byte[] lineBuf = new byte[1024];
+    private boolean acknowledge; // checkpoint only what the collector acknowledged
+    private boolean refused;     // the sink turned down a line of the current window
+
+    private volatile boolean running;
+    private Thread thread;
+    private long linesEmitted;
+    private long bytesEmitted;
+
+    private FileTailSource(Builder b) {
+        this.sink = b.sink;
+        this.globs = List.copyOf(b.globs);
+        this.checkpointFile = b.checkpointFile;
+        this.pollInterval = b.pollInterval;
+        this.checkpointInterval = b.checkpointInterval;
+        this.readBufferBytes = b.readBufferBytes;
+        if (b.memoryMapped && UNMAP == null) {
+            logger.warn("This JVM cannot unmap files on demand; reading through a buffer instead of mapping");
+        }
+        this.memoryMapped = b.memoryMapped && UNMAP != null;
+        this.startAtEnd = b.startAtEnd;
+        this.zone = b.zone;
+        this.direct = memoryMapped ? null : ByteBuffer.allocateDirect(readBufferBytes);
+        this.restored = checkpointFile == null ? Map.of() : FileCheckpoints.load(checkpointFile);
+        this.acknowledge = checkpointFile != null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Starts following the matched files on a daemon thread until {@link #close()}. */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::followLoop, "logsink-file-tail");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads every matched file from its current offset to the end once, on the calling thread.
+     * Used for replays; returns the number of lines handed to the sink.
+     */
+    public long readToEnd() throws IOException {
+        running = true;
+        long before = linesEmitted;
+        discover();
+        for (TailedFile f : files.values()) {
+            readAvailable(f, true);
+        }
+        saveCheckpoint();
+        return linesEmitted - before;
+    }
+
+    public long getLinesEmitted() {
+        return linesEmitted;
+    }
+
+    public long getBytesEmitted() {
+        return bytesEmitted;
+    }
+
+    private void followLoop() {
+        long nextCheckpoint = System.nanoTime() + checkpointInterval.toNanos();
+        while (running) {
+            boolean progressed = false;
+            try {
+                discover();
+                for (TailedFile f : files.values()) {
+                    progressed |= readAvailable(f, false);
+                    commit(f);
+                }
+                retireVanished();
+            } catch (Throwable t) {
+                logger.error("File tail iteration failed", t);
+            }
+            long now = System.nanoTime();
+            if (now - nextCheckpoint >= 0) {
+                saveCheckpoint();
+                nextCheckpoint = now + checkpointInterval.toNanos();
+            }
+            if (!progressed) {
+                LockSupport.parkNanos(pollInterval.toNanos());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(Math.max(1000, pollInterval.toMillis() * 2));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long deadline = System.nanoTime() + CLOSE_ACK_WAIT_NANOS;
+        for (TailedFile f : files.values()) awaitAcknowledged(f, deadline);
+        saveCheckpoint();
+        for (TailedFile f : files.values()) f.closeQuietly();
+        files.clear();
+    }
+
+    // ---- discovery / rotation ----
+
+    private void discover() throws IOException {
+        for (TailedFile f : files.values()) f.seen = false;
+        for (String glob : globs) {
+            for (Path p : expand(glob)) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                } catch (NoSuchFileException gone) {
+                    continue;
+                }
+                if (!attrs.isRegularFile()) continue;
+                Object key = attrs.fileKey() != null ? attrs.fileKey() : p.toAbsolutePath();
+
+                TailedFile f = files.get(key);
+                if (f == null) {
+                    f = open(p, key, attrs.size());
+                    if (f == null) continue;
+                    files.put(key, f);
+                } else if (!f.path.equals(p)) {
+                    // Renamed but still matched by a glob: keep reading through the same handle.
+                    f.path = p;
+                    f.pathAttr = kv("log.file.path", p.toString());
+                }
+                f.seen = true;
+            }
+        }
+    }
+
+    private TailedFile open(Path p, Object key, long size) {
+        try {
+            long offset = startAtEnd ? size : 0;
+            FileCheckpoints.Entry cp = restored.get(p.toAbsolutePath().toString());
+            if (cp != null) {
+                // Same inode as before the restart resumes; anything else is a new file.
+                offset = cp.fileKey.equals(String.valueOf(key)) && cp.offset <= size ? cp.offset : 0;
+            }
+            FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+            return new TailedFile(p, key, ch, offset, new LineParser(StandardCharsets.UTF_8, zone));
+        } catch (IOException e) {
+            logger.warn("Cannot open {} for tailing: {}", p, e.toString());
+            return null;
+        }
+    }
+
+    /** Files no longer matched under any name were rotated away or deleted: finish them, then let go. */
+    private void retireVanished() {
+        Iterator<TailedFile> it = files.values().iterator();
+        while (it.hasNext()) {
+            TailedFile f = it.next();
+            if (f.seen) continue;
+            try {
+                readAvailable(f, true);
+            } catch (IOException e) {
+                logger.warn("Failed draining rotated file {}: {}", f.path, e.toString());
+            }
+            if (!running) return; // keep the handle; a restart resumes from the checkpoint
+            commit(f);
+            if (!f.pending.isEmpty() || f.offset < f.size()) continue; // not delivered yet, or being read again
+            f.closeQuietly();
+            it.remove();
+        }
+    }
+
+    // ---- reading ----
+
+    /**
+     * Emits every complete line available in {@code f}. A trailing line without a newline is
+     * held back until it completes, unless {@code final} is set (file retired or replayed).
+     */
+    private boolean readAvailable(TailedFile f, boolean finalRead) throws IOException {
+        if (f.rereadAt != 0) {
+            if (System.nanoTime() - f.rereadAt < 0) return false;
+            f.rereadAt = 0;
+        }
+        long size = f.channel.size();
+        if (size < f.offset) {
+            logger.info("{} was truncated; restarting from the beginning", f.path);
+            f.offset = 0;
+            f.committed = 0;
+            f.pending.clear();
+        }
+        boolean progressed = false;
+        while (running && f.offset < size) {
+            long window = Math.min(readBufferBytes, size - f.offset);
+            ByteBuffer buf;
+            if (memoryMapped) {
+                buf = f.channel.map(FileChannel.MapMode.READ_ONLY, f.offset, window);
+            } else {
+                direct.clear();
+                direct.limit((int) window);
+                while (direct.hasRemaining()) {
+                    if (f.channel.read(direct, f.offset + direct.position()) < 0) break;
+                }
+                direct.flip();
+                buf = direct;
+            }
+            int consumed;
+            try {
+                consumed = emitLines(f, buf, finalRead && f.offset + buf.limit() >= size);
+                if (consumed == 0 && !refused) {
+                    // No newline anywhere in the window
+                    if (buf.limit() < readBufferBytes) break; // partial line waiting for its newline
+                    int n = buf.limit();                      // line longer than the buffer: split it
+                    if (emitLine(f, buf, 0, n, f.offset + n)) consumed = n;
+                }
+            } finally {
+                if (memoryMapped) unmap(buf); // lines were copied out; nothing refers to the window
+            }
+            f.offset += consumed;
+            if (consumed > 0) progressed = true;
+            if (refused) break; // resume from the first line the sink did not take
+        }
+        return progressed;
+    }
+
+    /**
+     * Returns how many bytes of {@code buf} were consumed by accepted lines, stopping at the
+     * first line the sink refused ({@link #refused} is then set).
+     */
+    private int emitLines(TailedFile f, ByteBuffer buf, boolean flushTail) {
+        refused = false;
+        int limit = buf.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buf.get(i) != '\n') continue;
+            if (!emitLine(f, buf, lineStart, i, f.offset + i + 1)) return lineStart;
+            lineStart = i + 1;
+        }
+        if (flushTail && lineStart < limit) {
+            if (!emitLine(f, buf, lineStart, limit, f.offset + limit)) return lineStart;
+            lineStart = limit;
+        }
+        return lineStart;
+    }
+
+    /** {@code next} is the file offset just past the line and its newline. */
+    private boolean emitLine(TailedFile f, ByteBuffer buf, int from, int to, long next) {
+        int end = to;
+        if (end > from && buf.get(end - 1) == '\r') end--;
+        int len = end - from;
+        if (len == 0) return true;
+        if (lineBuf.length < len) lineBuf = new byte[Math.max(len, lineBuf.length * 2)];
+        buf.get(from, lineBuf, 0, len);
+
+        long nowNanos = System.currentTimeMillis() * 1_000_000L;
+        LineParser line = f.parser;
+        if (!line.parse(lineBuf, 0, len, nowNanos)) return true;
+
+        LogRecord.Builder rb = LogRecord.newBuilder()
+                .setTimeUnixNano(line.timeUnixNano())
+                .setObservedTimeUnixNano(nowNanos)
+                .setBody(AnyValue.newBuilder().setStringValue(line.body()).build())
+                .addAttributes(STREAM_FILE)
+                .addAttributes(f.pathAttr);
+        if (line.severity() != null) {
+            rb.setSeverityNumber(line.severity()).setSeverityText(line.severityText());
+        }
+        LogRecord rec = rb.build();
+
+        if (!send(f, rec, next)) {
+            refused = true;
+            return false;
+        }
+        linesEmitted++;
+        bytesEmitted += (to - from) + 1;
+        return true;
+    }
+
+    /**
+     * Hands one line to the sink, waiting for ring space rather than dropping; false only once
+     * the source or the sink is closing.
+     */
+    private boolean send(TailedFile f, LogRecord rec, long end) {
+        long backoffNanos = 50_000L;
+        while (true) {
+            if (acknowledge) {
+                CompletableFuture<Void> ack = sink.logAcknowledged(rec);
+                Throwable failure = failedAlready(ack);
+                if (failure == null) {
+                    f.pending.add(new Pending(end, ack));
+                    return true;
+                }
+                if (failure instanceof UnsupportedOperationException) {
+                    logger.warn("Checkpoints record read offsets, not delivered ones: {}", failure.getMessage());
+                    acknowledge = false;
+                    continue;
+                }
+                if (!(failure instanceof RejectedExecutionException)) return false; // shut down
+            } else if (sink.log(rec)) {
+                return true;
+            }
+            if (!running) return false;
+            LockSupport.parkNanos(backoffNanos);
+            backoffNanos = Math.min(backoffNanos * 2, 10_000_000L);
+        }
+    }
+
+    /** The cause if {@code f} already failed, i.e. the sink refused the record outright. */
+    private static Throwable failedAlready(CompletableFuture<Void> f) {
+        if (!f.isCompletedExceptionally()) return null;
+        try {
+            f.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Moves {@code f}'s checkpointable offset past the lines acknowledged so far, in file order.
+     * At the first refused line the file is read again from the last acknowledged offset, after
+     * {@link #REREAD_DELAY_NANOS}.
+     */
+    private void commit(TailedFile f) {
+        Pending p;
+        while ((p = f.pending.peek()) != null && p.ack.isDone()) {
+            f.pending.poll();
+            if (p.ack.isCompletedExceptionally()) {
+                f.pending.clear();
+                if (!running) return; // the sink is shutting down; the checkpoint keeps the lines
+                logger.warn("Lines of {} were not delivered; reading them again from offset {}", f.path, f.committed);
+                f.offset = f.committed;
+                f.rereadAt = System.nanoTime() + REREAD_DELAY_NANOS;
+                return;
+            }
+            f.committed = p.end;
+        }
+        if (f.pending.isEmpty()) f.committed = f.offset; // lines skipped since, e.g. blank ones
+    }
+
+    private static void awaitAcknowledged(TailedFile f, long deadline) {
+        for (Pending p : f.pending) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            try {
+                p.ack.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception settledOrLate) {
+                // failed lines stay behind the checkpoint; unanswered ones too
+            }
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (checkpointFile == null) return;
+        List<FileCheckpoints.Entry> entries = new ArrayList<>(files.size());
+        for (TailedFile f : files.values()) {
+            commit(f);
+            entries.add(new FileCheckpoints.Entry(f.path.toAbsolutePath().toString(), String.valueOf(f.key), f.committed));
+        }
+        try {
+            FileCheckpoints.save(checkpointFile, entries);
+        } catch (IOException e) {
+            logger.warn("Failed to write checkpoint {}: {}", checkpointFile, e.toString());
+        }
+    }
+
+    // ---- glob expansion ----
+
+    static List<Path> expand(String glob) throws IOException {
+        Path pattern = Paths.get(glob).toAbsolutePath().normalize();
+        Path base = pattern.getRoot();
+        int depth = 0;
+        boolean recursive = false;
+        boolean inGlob = false;
+        for (Path part : pattern) {
+            String s = part.toString();
+            if (!inGlob && !isGlob(s)) {
+                base = base.resolve(s);
+            } else {
+                inGlob = true;
+                depth++;
+                if (s.contains("**")) recursive = true;
+            }
+        }
+        if (!inGlob) return Files.isRegularFile(base) ? List.of(base) : List.of();
+        if (!Files.isDirectory(base)) return List.of();
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> s = Files.walk(base, recursive ? Integer.MAX_VALUE : depth)) {
+            List<Path> out = new ArrayList<>();
+            s.filter(matcher::matches).sorted().forEach(out::add);
+            return out;
+        }
+    }
+
+    private static boolean isGlob(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return true;
+        }
+        return false;
+    }
+
+    private static void unmap(ByteBuffer mapped) {
+        try {
+            UNMAP.invokeExact(mapped);
+        } catch (Throwable t) {
+            logger.debug("Cannot unmap a read window: {}", t.toString()); // released when collected instead
+        }
+    }
+
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final KeyValue STREAM_FILE = kv("stream", "file");
+
+    private static KeyValue kv(String k, String v) {
+        return KeyValue.newBuilder()
+                .setKey(k)
+                .setValue(AnyValue.newBuilder().setStringValue(v == null ? "" : v).build())
+                .build();
+    }
+
+    private static final class TailedFile {
+        final Object key;
+        final FileChannel channel;
+        final LineParser parser; // per file, so timestamp format detection is cached per stream
+        final ArrayDeque<Pending> pending = new ArrayDeque<>(); // lines awaiting acknowledgement, in file order
+        Path path;
+        KeyValue pathAttr;
+        long offset;    // next byte to read
+        long committed; // all lines before it were delivered; what the checkpoint records
+        long rereadAt;  // nanoTime before which a file whose lines were refused is not read; 0 if none
+        boolean seen;
+
+        TailedFile(Path path, Object key, FileChannel channel, long offset, LineParser parser) {
+            this.path = path;
+            this.key = key;
+            this.channel = channel;
+            this.offset = offset;
+            this.committed = offset;
+            this.parser = parser;
+            this.pathAttr = kv("log.file.path", path.toString());
+        }
+
+        long size() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return offset;
+            }
+        }
+
+        void closeQuietly() {
+            try { channel.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    private static final class Pending {
+        final long end;
+        final CompletableFuture<Void> ack;
+
+        Pending(long end, CompletableFuture<Void> ack) {
+            this.end = end;
+            this.ack = ack;
+        }
+    }
+
+    public static final class Builder {
+        private LogSink sink;
+        private final List<String> globs = new ArrayList<>();
+        private Path checkpointFile;
+        private Duration pollInterval = Duration.ofMillis(250);
+        private Duration checkpointInterval = Duration.ofSeconds(1);
+        private int readBufferBytes = 1 << 20;
+        private boolean memoryMapped = false;
+        private boolean startAtEnd = false;
+        private ZoneId zone = ZoneId.systemDefault();
+
+        public Builder setSink(LogSink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        /** Absolute or relative glob, e.g. {@code /var/log/app/*.log} or {@code logs/**}{@code /*.txt}. */
+        public Builder addPath(String glob) {
+            this.globs.add(glob);
+            return this;
+        }
+
+        /** Persist delivered offsets here; lines are then logged with acknowledgements (see the class comment). */
+        public Builder setCheckpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        public Builder setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        public Builder setCheckpointInterval(Duration checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /** Read window; also the longest line emitted before it is split. */
+        public Builder setReadBufferBytes(int readBufferBytes) {
+            this.readBufferBytes = readBufferBytes;
+            return this;
+        }
+
+        /**
+         * Map each read window instead of copying it into a buffer; the window is unmapped as soon as
+         * its lines are emitted. Where the JVM offers no way to unmap on demand, files are read
+         * through the buffer regardless.
+         */
+        public Builder setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
+        /** For files without a checkpoint, skip existing content and only ship new lines. */
+        public Builder setStartAtEnd(boolean startAtEnd) {
+            this.startAtEnd = startAtEnd;
+            return this;
+        }
+
+        /** Zone for timestamps in the files that carry no offset of their own. */
+        public Builder setZone(ZoneId zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        public FileTailSource build() {
+            if (sink == null) throw new IllegalArgumentException("sink must be provided.");
+            if (zone == null) throw new IllegalArgumentException("zone must be provided.");
+            if (globs.isEmpty()) throw new IllegalArgumentException("At least one path must be provided.");
+            if (readBufferBytes < 4096) throw new IllegalArgumentException("readBufferBytes must be >= 4096");
+            if (pollInterval == null || pollInterval.isNegative() || pollInterval.isZero()) {
+                throw new IllegalArgumentException("pollInterval must be positive");
+            }
+            if (checkpointInterval == null || checkpointInterval.isNegative()) {
+                throw new IllegalArgumentException("checkpointInterval must not be negative");
+            }
+            return new FileTailSource(this);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package io.cardinalhq.logsink.metrics;
+
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.metrics.v1.ScopeMetrics;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import io.opentelemetry.proto.resource.v1.Resource;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts log records by a fixed list of dimensions and renders the counts as OTLP metrics.
+ * <p>
+ * A dimension is either {@link #SEVERITY} (the record's severity text, or the severity number's
+ * name) or the key of a record attribute such as {@code log4j.logger}, {@code exception.type} or
+ * {@code log.template_id}. Attribute values that are not strings count by their text (numbers and
+ * booleans as written, bytes in hex, arrays and maps as JSON-like lists); a missing attribute
+ * counts as the empty string. Records of a routed service are counted apart, under that
+ * route's resource, and exported in its own {@code ResourceMetrics}.
+ * <p>
+ * Counting is lock-free: the series map is looked up with a reusable per-thread probe key, and
+ * each series is a {@link LongAdder}, so a record with string dimensions for an existing series
+ * allocates nothing.
+ * <p>
+ * At most {@code maxSeries} distinct series are kept across all resources, and across every
+ * aggregator sharing the same series count (one per destination in {@link LogMetricsStage}). Records that would
+ * create more are counted in their resource's overflow series carrying
+ * {@code otel.metric.overflow=true} instead, so totals stay exact while cardinality stays bounded.
+ * Counts are cumulative from construction and exported as a monotonic {@code Sum} named
+ * {@value #METRIC_NAME}.
+ */
+public final class LogMetricsAggregator {
+    public static final String SEVERITY = "severity";
+    public static final String METRIC_NAME = "log.records";
+    static final String OVERFLOW_ATTRIBUTE = "otel.metric.overflow";
+    private static final String SCOPE_NAME = "io.cardinalhq.logsink";
+
+    private final String[] dimensions;
+    private final int maxSeries;
+    private final long startUnixNano;
+    private final AtomicInteger seriesUsed; // may be shared with other aggregators
+    private final ConcurrentHashMap<SeriesKey, LongAdder> series = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Resource, LongAdder> routedOverflow = new ConcurrentHashMap<>();
+    private final LongAdder overflow = new LongAdder(); // the sink's own resource
+    private final ThreadLocal<SeriesKey> probe;
+
+    public LogMetricsAggregator(List<String> dimensions, int maxSeries) {
+        this(dimensions, maxSeries, new AtomicInteger());
+    }
+
+    /** An aggregator whose series count against {@code seriesUsed} along with other aggregators'. */
+    LogMetricsAggregator(List<String> dimensions, int maxSeries, AtomicInteger seriesUsed) {
+        if (dimensions.isEmpty()) throw new IllegalArgumentException("At least one metric dimension is required");
+        if (maxSeries < 1) throw new IllegalArgumentException("maxSeries must be >= 1");
+        this.dimensions = dimensions.toArray(new String[0]);
+        this.maxSeries = maxSeries;
+        this.seriesUsed = seriesUsed;
+        this.startUnixNano = System.currentTimeMillis() * 1_000_000L;
+        int n = this.dimensions.length;
+        this.probe = ThreadLocal.withInitial(() -> new SeriesKey(null, new String[n]));
+    }
+
+    public void record(LogRecord r) {
+        record(null, r);
+    }
+
+    /** Counts a record of the service {@code resource} describes; null means the sink's own. */
+    public void record(Resource resource, LogRecord r) {
+        SeriesKey p = probe.get();
+        p.resource = resource;
+        for (int i = 0; i < dimensions.length; i++) {
+            p.values[i] = valueOf(r, dimensions[i]);
+        }
+        p.rehash();
+        LongAdder counter = series.get(p);
+        if (counter == null) {
+            counter = newSeries(p);
+        }
+        p.resource = null;
+        Arrays.fill(p.values, null); // do not pin record strings in the thread-local
+        counter.increment();
+    }
+
+    private LongAdder newSeries(SeriesKey p) {
+        if (seriesUsed.get() >= maxSeries) {
+            return p.resource == null ? overflow : routedOverflow.computeIfAbsent(p.resource, k -> new LongAdder());
+        }
+        SeriesKey key = new SeriesKey(p.resource, p.values.clone());
+        key.rehash();
+        LongAdder fresh = new LongAdder();
+        LongAdder prior = series.putIfAbsent(key, fresh);
+        if (prior != null) return prior;
+        seriesUsed.incrementAndGet();
+        return fresh;
+    }
+
+    public int seriesCount() {
+        return series.size();
+    }
+
+    public long overflowCount() {
+        long n = overflow.sum();
+        for (LongAdder a : routedOverflow.values()) n += a.sum();
+        return n;
+    }
+
+    /**
+     * Cumulative counts since construction as one OTLP request, with one {@code ResourceMetrics}
+     * per resource; records counted without one are reported under {@code resource}.
+     */
+    public ExportMetricsServiceRequest snapshot(Resource resource) {
+        long now = System.currentTimeMillis() * 1_000_000L;
+        Map<Resource, Sum.Builder> sums = new LinkedHashMap<>();
+        sums.put(resource, newSum());
+        for (Map.Entry<SeriesKey, LongAdder> e : series.entrySet()) {
+            NumberDataPoint.Builder dp = point(now, e.getValue().sum());
+            String[] values = e.getKey().values;
+            for (int i = 0; i < dimensions.length; i++) {
+                dp.addAttributes(kv(dimensions[i], values[i]));
+            }
+            Resource owner = e.getKey().resource != null ? e.getKey().resource : resource;
+            sums.computeIfAbsent(owner, k -> newSum()).addDataPoints(dp);
+        }
+        addOverflow(sums.get(resource), now, overflow.sum());
+        for (Map.Entry<Resource, LongAdder> e : routedOverflow.entrySet()) {
+            addOverflow(sums.computeIfAbsent(e.getKey(), k -> newSum()), now, e.getValue().sum());
+        }
+
+        ExportMetricsServiceRequest.Builder request = ExportMetricsServiceRequest.newBuilder();
+        for (Map.Entry<Resource, Sum.Builder> e : sums.entrySet()) {
+            if (e.getValue().getDataPointsCount() == 0) continue;
+            Metric metric = Metric.newBuilder()
+                    .setName(METRIC_NAME)
+                    .setDescription("Log records seen by logsink, by " + String.join(", ", dimensions))
+                    .setUnit("{record}")
+                    .setSum(e.getValue())
+                    .build();
+            request.addResourceMetrics(ResourceMetrics.newBuilder()
+                    .setResource(e.getKey())
+                    .addScopeMetrics(ScopeMetrics.newBuilder()
+                            .setScope(InstrumentationScope.newBuilder().setName(SCOPE_NAME))
+                            .addMetrics(metric)));
+        }
+        return request.build();
+    }
+
+    private static Sum.Builder newSum() {
+        return Sum.newBuilder()
+                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                .setIsMonotonic(true);
+    }
+
+    private void addOverflow(Sum.Builder sum, long now, long overflowed) {
+        if (overflowed <= 0) return;
+        sum.addDataPoints(point(now, overflowed).addAttributes(KeyValue.newBuilder()
+                .setKey(OVERFLOW_ATTRIBUTE)
+                .setValue(AnyValue.newBuilder().setBoolValue(true))));
+    }
+
+    private NumberDataPoint.Builder point(long now, long value) {
+        return NumberDataPoint.newBuilder()
+                .setStartTimeUnixNano(startUnixNano)
+                .setTimeUnixNano(now)
+                .setAsInt(value);
+    }
+
+    private static String valueOf(LogRecord r, String dimension) {
+        if (SEVERITY.equals(dimension)) {
+            if (!r.getSeverityText().isEmpty()) return r.getSeverityText();
+            SeverityNumber n = r.getSeverityNumber();
+            return n == SeverityNumber.UNRECOGNIZED ? "" : n.name().substring("SEVERITY_NUMBER_".length());
+        }
+        for (int i = 0, n = r.getAttributesCount(); i < n; i++) {
+            KeyValue kv = r.getAttributes(i);
+            if (kv.getKey().equals(dimension)) return text(kv.getValue());
+        }
+        return "";
+    }
+
+    /** A dimension value's text: strings as they are, other values by their kind. */
+    static String text(AnyValue v) {
+        switch (v.getValueCase()) {
+            case STRING_VALUE:
+                return v.getStringValue();
+            case BOOL_VALUE:
+                return v.getBoolValue() ? "true" : "false";
+            case INT_VALUE:
+                return Long.toString(v.getIntValue());
+            case DOUBLE_VALUE:
+                return Double.toString(v.getDoubleValue());
+            case BYTES_VALUE:
+                return HexFormat.of().formatHex(v.getBytesValue().toByteArray());
+            case ARRAY_VALUE: {
+                StringBuilder sb = new StringBuilder("[");
+                for (int i = 0; i < v.getArrayValue().getValuesCount(); i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(text(v.getArrayValue().getValues(i)));
+                }
+                return sb.append(']').toString();
+            }
+            case KVLIST_VALUE: {
+                StringBuilder sb = new StringBuilder("{");
+                for (int i = 0; i < v.getKvlistValue().getValuesCount(); i++) {
+                    KeyValue kv = v.getKvlistValue().getValues(i);
+                    if (i > 0) sb.append(',');
+                    sb.append(kv.getKey()).append('=').append(text(kv.getValue()));
+                }
+                return sb.append('}').toString();
+            }
+            default:
+                return "";
+        }
+    }
+
+    private static KeyValue kv(String k, String v) {
+        return KeyValue.newBuilder().setKey(k).setValue(AnyValue.newBuilder().setStringValue(v)).build();
+    }
+
+    /** Resource and dimension values of one series; probes are mutated in place, stored keys never are. */
+    private static final class SeriesKey {
+        Resource resource; // null => the sink's own
+        final String[] values;
+        int hash;
+
+        SeriesKey(Resource resource, String[] values) {
+            this.resource = resource;
+            this.values = values;
+        }
+
+        void rehash() {
+            this.hash = 31 * Objects.hashCode(resource) + Arrays.hashCode(values); // protobuf memoizes the resource's hash
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SeriesKey)) return false;
+            SeriesKey k = (SeriesKey) o;
+            return Objects.equals(resource, k.resource) && Arrays.equals(values, k.values);
+        }
+    }
+}
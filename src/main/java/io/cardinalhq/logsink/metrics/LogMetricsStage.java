@@ -0,0 +1,156 @@
+package io.cardinalhq.logsink.metrics;
+
+import io.cardinalhq.logsink.LogSinkConfig;
+import io.cardinalhq.logsink.LogSinkExporter;
+import io.cardinalhq.logsink.LogSinkRoute;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline stage in front of the batcher: counts every record in a {@link LogMetricsAggregator}
+ * and posts the cumulative counts to the collector's metrics endpoint on a fixed interval.
+ * Records below the configured metrics-only severity are counted but not shipped as logs.
+ * <p>
+ * Counts are kept per destination, like the logs they describe: records of a route with its own
+ * endpoint or API key are counted apart and posted to that endpoint's {@code /v1/metrics} with
+ * the route's key, so one tenant's counts never reach another's collector. All destinations
+ * share the {@code maxSeries} budget.
+ */
+public final class LogMetricsStage {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+    /** Routes remembered with their destination; past this, a new route's is looked up per record. */
+    private static final int MAX_CACHED_ROUTES = 1024;
+
+    private final LogSinkConfig config;
+    private final LogSinkExporter exporter;
+    private final int metricsOnlyBelow;
+    private final AtomicInteger seriesUsed = new AtomicInteger();
+    private final Destination own;
+    private final ConcurrentHashMap<List<String>, Destination> destinations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<LogSinkRoute, Destination> byRoute = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public LogMetricsStage(LogSinkConfig config, LogSinkExporter exporter) {
+        this.config = config;
+        this.exporter = exporter;
+        this.metricsOnlyBelow = config.getMetricsOnlyBelow();
+        this.own = destination(config.getMetricsEndpoint(), config.getApiKey());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "logsink-metrics-export");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = config.getMetricsIntervalMillis();
+        scheduler.scheduleAtFixedRate(() -> export(false, 0), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** Counts the record; returns whether it should still be shipped as a log record. */
+    public boolean accept(LogRecord record) {
+        return accept(null, record);
+    }
+
+    /** {@link #accept(LogRecord)} for a record logged with {@code route}; null means the sink's own. */
+    public boolean accept(LogSinkRoute route, LogRecord record) {
+        if (route == null) {
+            own.aggregator.record(record);
+        } else {
+            destinationOf(route).aggregator.record(route.getResource(), record);
+        }
+        return record.getSeverityNumberValue() >= metricsOnlyBelow;
+    }
+
+    /** The counts bound for the sink's own endpoint. */
+    public LogMetricsAggregator aggregator() {
+        return own.aggregator;
+    }
+
+    private Destination destinationOf(LogSinkRoute route) {
+        Destination d = byRoute.get(route);
+        if (d != null) return d;
+        d = destination(config.getMetricsEndpoint(route), route.getApiKey() != null ? route.getApiKey() : config.getApiKey());
+        if (byRoute.size() < MAX_CACHED_ROUTES) byRoute.putIfAbsent(route, d);
+        return d;
+    }
+
+    private Destination destination(String endpoint, String apiKey) {
+        return destinations.computeIfAbsent(Arrays.asList(endpoint, apiKey), k -> new Destination(endpoint, apiKey,
+                new LogMetricsAggregator(config.getMetricDimensions(), config.getMetricsMaxSeries(), seriesUsed)));
+    }
+
+    /** Posts every destination's counts; {@code bounded} posts get only what is left until the deadline. */
+    private void export(boolean bounded, long deadlineNanos) {
+        for (Destination d : destinations.values()) {
+            Duration timeout = null;
+            if (bounded) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    logger.warn("Skipped the final log metrics export to {}: the shutdown deadline has passed", d.endpoint);
+                    continue;
+                }
+                timeout = Duration.ofNanos(remaining);
+            }
+            export(d, timeout);
+        }
+    }
+
+    /** Posts one destination's counts; a null {@code timeout} means the exporter's request timeout. */
+    private void export(Destination d, Duration timeout) {
+        try {
+            LogMetricsAggregator aggregator = d.aggregator;
+            if (aggregator.seriesCount() == 0 && aggregator.overflowCount() == 0) return;
+            ExportMetricsServiceRequest request = aggregator.snapshot(config.getResource());
+            if (timeout == null) {
+                exporter.sendMetrics(d.endpoint, d.apiKey, request);
+            } else {
+                exporter.sendMetrics(d.endpoint, d.apiKey, request, timeout);
+            }
+            if (aggregator.overflowCount() > 0) {
+                logger.debug("Log metrics over {} series; extra series counted as overflow", config.getMetricsMaxSeries());
+            }
+        } catch (Throwable t) {
+            logger.error("Failed to export log metrics", t);
+        }
+    }
+
+    /** Stops the interval and exports the final counts. */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        scheduler.shutdownNow();
+        export(false, 0);
+    }
+
+    /**
+     * {@link #close()} within a shutdown deadline ({@link System#nanoTime()} based): the final
+     * exports get only the time left, and are skipped once the deadline has passed.
+     */
+    public void close(long deadlineNanos) {
+        if (!closed.compareAndSet(false, true)) return;
+        scheduler.shutdownNow();
+        export(true, deadlineNanos);
+    }
+
+    /** A metrics endpoint and API key, and the counts posted there. */
+    private static final class Destination {
+        final String endpoint;
+        final String apiKey;
+        final LogMetricsAggregator aggregator;
+
+        Destination(String endpoint, String apiKey, LogMetricsAggregator aggregator) {
+            this.endpoint = endpoint;
+            this.apiKey = apiKey;
+            this.aggregator = aggregator;
+        }
+    }
+}
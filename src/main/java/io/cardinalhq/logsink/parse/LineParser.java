@@ -0,0 +1,380 @@
+package io.cardinalhq.logsink.parse;
+
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Byte-level parser for raw text lines (captured stdout/stderr, tailed files).
+ * <p>
+ * A single pass over the line copies it into a reusable buffer while dropping ANSI escape
+ * sequences and carriage returns, and spots an upper-case level token ({@code INFO},
+ * {@code WARN}, {@code ERROR}, ...) as a whole word near the start of the line. The stripped
+ * prefix is then probed for a timestamp:
+ * <ul>
+ *   <li>{@code yyyy-MM-dd HH:mm:ss[.,fraction]} and ISO-8601 {@code yyyy-MM-ddTHH:mm:ss[.fraction][Z|+hh:mm]}</li>
+ *   <li>{@code HH:mm:ss[.,fraction]} (time only; the date comes from the capture time)</li>
+ * </ul>
+ * The format and position that matched last are tried first on the next line, so steady-state
+ * detection costs one probe. Timestamps without an offset are read in the parser's zone.
+ * <p>
+ * Not thread-safe: keep one instance per stream. The only allocation per line is the body.
+ */
+public final class LineParser {
+    /** Levels and timestamps live in the line prefix; don't scan message text for them. */
+    static final int SCAN_LIMIT = 96;
+
+    private static final int F_NONE = 0;
+    private static final int F_DATETIME = 1;
+    private static final int F_TIME = 2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Charset charset;
+    private final ZoneRules rules;
+
+    private byte[] out = new byte[256];
+    private int length;
+
+    private long timeUnixNano;
+    private boolean timestampFound;
+    private SeverityNumber severity;
+    private String severityText;
+
+    // detection cache
+    private int cachedFormat = F_NONE;
+    private int cachedPos;
+
+    // zone offset cache, valid for UTC instants in [offsetFrom, offsetTo)
+    private int offsetSeconds;
+    private long offsetFrom = Long.MAX_VALUE;
+    private long offsetTo = Long.MIN_VALUE;
+
+    public LineParser() {
+        this(StandardCharsets.UTF_8, ZoneId.systemDefault());
+    }
+
+    public LineParser(Charset charset, ZoneId zone) {
+        this.charset = charset;
+        this.rules = zone.getRules();
+    }
+
+    /**
+     * Parses {@code len} bytes at {@code off}. Returns false when nothing but whitespace or
+     * escape codes remains, in which case the line should be skipped.
+     *
+     * @param observedUnixNano capture time; used as the timestamp when none is found and to
+     *                         date time-only timestamps
+     */
+    public boolean parse(byte[] buf, int off, int len, long observedUnixNano) {
+        if (out.length < len) out = new byte[Math.max(len, out.length * 2)];
+        severity = null;
+        severityText = null;
+
+        byte[] o = out;
+        int j = 0;
+        int wordStart = -1; // -1 between words, >= 0 start of an all-caps word, -2 inside another word
+        boolean nonBlank = false;
+        int end = off + len;
+        int i = off;
+        for (; i < end && j <= SCAN_LIMIT; i++) {
+            byte b = buf[i];
+            if (b == 0x1B) {
+                i = skipEscape(buf, i, end);
+                continue;
+            }
+            if (b == '\r') continue;
+
+            o[j] = b;
+            if (b >= 'A' && b <= 'Z') {
+                if (wordStart == -1) wordStart = j;
+            } else if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_') {
+                wordStart = -2;
+            } else {
+                if (wordStart >= 0 && severity == null) matchLevel(o, wordStart, j);
+                wordStart = -1;
+            }
+            if (b != ' ' && b != '\t') nonBlank = true;
+            j++;
+        }
+        if (wordStart >= 0 && severity == null && j <= SCAN_LIMIT) matchLevel(o, wordStart, j);
+
+        // Past the prefix only escapes and carriage returns matter: copy the runs between them in bulk.
+        while (i < end) {
+            int run = i;
+            while (run < end && buf[run] != 0x1B && buf[run] != '\r') run++;
+            if (run > i) {
+                System.arraycopy(buf, i, o, j, run - i);
+                if (!nonBlank) nonBlank = hasNonBlank(buf, i, run);
+                j += run - i;
+            }
+            if (run < end) {
+                i = buf[run] == 0x1B ? skipEscape(buf, run, end) + 1 : run + 1;
+            } else {
+                i = end;
+            }
+        }
+        length = j;
+        if (!nonBlank) return false;
+
+        long ts = detectTimestamp(observedUnixNano);
+        timestampFound = ts != NO_TIME;
+        timeUnixNano = timestampFound ? ts : observedUnixNano;
+        return true;
+    }
+
+    /** The line without escape codes, decoded with the parser's charset. */
+    public String body() {
+        return new String(out, 0, length, charset);
+    }
+
+    public long timeUnixNano() {
+        return timeUnixNano;
+    }
+
+    public boolean hasTimestamp() {
+        return timestampFound;
+    }
+
+    /** Detected severity, or {@code null} when the line carries no level token. */
+    public SeverityNumber severity() {
+        return severity;
+    }
+
+    /** Canonical text of the detected level ({@code WARN} for {@code WARNING}), or {@code null}. */
+    public String severityText() {
+        return severityText;
+    }
+
+    private static boolean hasNonBlank(byte[] buf, int from, int to) {
+        for (int k = from; k < to; k++) {
+            if (buf[k] != ' ' && buf[k] != '\t') return true;
+        }
+        return false;
+    }
+
+    // ---- escapes ----
+
+    /** Returns the index of the last byte of the escape sequence starting at {@code i}. */
+    private static int skipEscape(byte[] buf, int i, int end) {
+        if (i + 1 >= end) return i;
+        byte kind = buf[i + 1];
+        if (kind == '[') {
+            // CSI: parameters and intermediates, then one final byte in 0x40..0x7E
+            int k = i + 2;
+            while (k < end && (buf[k] < 0x40 || buf[k] > 0x7E)) k++;
+            return Math.min(k, end - 1);
+        }
+        if (kind == ']') {
+            // OSC: terminated by BEL or ESC '\'
+            int k = i + 2;
+            while (k < end) {
+                if (buf[k] == 0x07) return k;
+                if (buf[k] == 0x1B && k + 1 < end && buf[k + 1] == '\\') return k + 1;
+                k++;
+            }
+            return end - 1;
+        }
+        return i + 1; // two-byte escape
+    }
+
+    // ---- levels ----
+
+    private void matchLevel(byte[] o, int from, int to) {
+        switch (to - from) {
+            case 4:
+                if (eq(o, from, "INFO")) set(SeverityNumber.SEVERITY_NUMBER_INFO, "INFO");
+                else if (eq(o, from, "WARN")) set(SeverityNumber.SEVERITY_NUMBER_WARN, "WARN");
+                else if (eq(o, from, "FINE")) set(SeverityNumber.SEVERITY_NUMBER_DEBUG, "DEBUG");
+                break;
+            case 5:
+                if (eq(o, from, "ERROR")) set(SeverityNumber.SEVERITY_NUMBER_ERROR, "ERROR");
+                else if (eq(o, from, "DEBUG")) set(SeverityNumber.SEVERITY_NUMBER_DEBUG, "DEBUG");
+                else if (eq(o, from, "TRACE")) set(SeverityNumber.SEVERITY_NUMBER_TRACE, "TRACE");
+                else if (eq(o, from, "FATAL")) set(SeverityNumber.SEVERITY_NUMBER_FATAL, "FATAL");
+                else if (eq(o, from, "PANIC")) set(SeverityNumber.SEVERITY_NUMBER_FATAL, "FATAL");
+                break;
+            case 6:
+                if (eq(o, from, "SEVERE")) set(SeverityNumber.SEVERITY_NUMBER_ERROR, "ERROR");
+                else if (eq(o, from, "NOTICE")) set(SeverityNumber.SEVERITY_NUMBER_INFO2, "INFO");
+                break;
+            case 7:
+                if (eq(o, from, "WARNING")) set(SeverityNumber.SEVERITY_NUMBER_WARN, "WARN");
+                break;
+            case 8:
+                if (eq(o, from, "CRITICAL")) set(SeverityNumber.SEVERITY_NUMBER_FATAL, "FATAL");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void set(SeverityNumber sev, String text) {
+        this.severity = sev;
+        this.severityText = text;
+    }
+
+    private static boolean eq(byte[] o, int from, String token) {
+        for (int k = 0; k < token.length(); k++) {
+            if (o[from + k] != token.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // ---- timestamps ----
+
+    private long detectTimestamp(long observedUnixNano) {
+        if (cachedFormat != F_NONE) {
+            long ts = tryFormat(cachedFormat, cachedPos, observedUnixNano);
+            if (ts != NO_TIME) return ts;
+        }
+        int limit = Math.min(length, SCAN_LIMIT);
+        for (int p = 0; p < limit; p++) {
+            if (!digit(out[p]) || (p > 0 && digit(out[p - 1]))) continue;
+            for (int f = F_DATETIME; f <= F_TIME; f++) {
+                if (f == cachedFormat && p == cachedPos) continue;
+                long ts = tryFormat(f, p, observedUnixNano);
+                if (ts != NO_TIME) {
+                    cachedFormat = f;
+                    cachedPos = p;
+                    return ts;
+                }
+            }
+        }
+        return NO_TIME;
+    }
+
+    private long tryFormat(int format, int p, long observedUnixNano) {
+        if (p > 0 && digit(out[p - 1])) return NO_TIME;
+        return format == F_DATETIME ? parseDateTime(p) : parseTime(p, observedUnixNano);
+    }
+
+    /** {@code yyyy-MM-dd[ T]HH:mm:ss[.,fraction][Z|+hh:mm|+hhmm]} */
+    private long parseDateTime(int p) {
+        byte[] o = out;
+        if (p + 19 > length) return NO_TIME;
+        if (o[p + 4] != '-' || o[p + 7] != '-') return NO_TIME;
+        if (o[p + 10] != ' ' && o[p + 10] != 'T') return NO_TIME;
+        int year = num(o, p, 4);
+        int month = num(o, p + 5, 2);
+        int day = num(o, p + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) return NO_TIME;
+        long secOfDay = hms(p + 11);
+        if (secOfDay < 0) return NO_TIME;
+        int q = p + 19;
+        long nanos = 0;
+        if (q < length && (o[q] == '.' || o[q] == ',')) {
+            int fracEnd = q + 1;
+            while (fracEnd < length && digit(o[fracEnd])) fracEnd++;
+            nanos = fraction(o, q + 1, fracEnd);
+            q = fracEnd;
+        }
+        long local = daysFromCivil(year, month, day) * 86_400L + secOfDay;
+
+        long epochSec;
+        if (q < length && o[q] == 'Z') {
+            epochSec = local;
+            q++;
+        } else if (q + 3 <= length && (o[q] == '+' || o[q] == '-') && digit(o[q + 1]) && digit(o[q + 2])) {
+            int hh = num(o, q + 1, 2);
+            int r = (q + 3 < length && o[q + 3] == ':') ? q + 4 : q + 3;
+            int mm = (r + 2 <= length && digit(o[r]) && digit(o[r + 1])) ? num(o, r, 2) : 0;
+            int sign = o[q] == '-' ? -1 : 1;
+            epochSec = local - sign * (hh * 3600L + mm * 60L);
+        } else {
+            epochSec = local - offsetFor(local);
+        }
+        return epochSec * 1_000_000_000L + nanos;
+    }
+
+    /** {@code HH:mm:ss[.,fraction]}, dated by the capture time in the parser's zone. */
+    private long parseTime(int p, long observedUnixNano) {
+        byte[] o = out;
+        if (p + 8 > length) return NO_TIME;
+        long secOfDay = hms(p);
+        if (secOfDay < 0) return NO_TIME;
+        int q = p + 8;
+        if (q < length && (digit(o[q]) || o[q] == ':')) return NO_TIME;
+        long nanos = 0;
+        if (q < length && (o[q] == '.' || o[q] == ',')) {
+            int fracEnd = q + 1;
+            while (fracEnd < length && digit(o[fracEnd])) fracEnd++;
+            if (fracEnd == q + 1) return NO_TIME;
+            nanos = fraction(o, q + 1, fracEnd);
+            q = fracEnd;
+        }
+        long observedSec = Math.floorDiv(observedUnixNano, 1_000_000_000L);
+        long observedLocal = observedSec + offsetFor(observedSec + offsetSeconds);
+        long local = Math.floorDiv(observedLocal, 86_400L) * 86_400L + secOfDay;
+        long epochSec = local - offsetFor(local);
+        // A line stamped just before midnight but captured just after belongs to the previous day.
+        if (epochSec > observedSec + 3600) epochSec -= 86_400L;
+        return epochSec * 1_000_000_000L + nanos;
+    }
+
+    /** Parses {@code HH:mm:ss} at {@code p} into seconds of day, or -1. */
+    private long hms(int p) {
+        byte[] o = out;
+        if (o[p + 2] != ':' || o[p + 5] != ':') return -1;
+        int h = num(o, p, 2);
+        int m = num(o, p + 3, 2);
+        int s = num(o, p + 6, 2);
+        if (h < 0 || h > 23 || m < 0 || m > 59 || s < 0 || s > 60) return -1;
+        return h * 3600L + m * 60L + Math.min(s, 59);
+    }
+
+    /** Offset in seconds to subtract from a local date-time (given as local epoch seconds). */
+    private int offsetFor(long localEpochSec) {
+        long guess = localEpochSec - offsetSeconds;
+        if (guess >= offsetFrom && guess < offsetTo) return offsetSeconds;
+        if (rules.isFixedOffset()) {
+            offsetSeconds = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+            offsetFrom = Long.MIN_VALUE;
+            offsetTo = Long.MAX_VALUE;
+            return offsetSeconds;
+        }
+        Instant at = Instant.ofEpochSecond(guess);
+        offsetSeconds = rules.getOffset(at).getTotalSeconds();
+        ZoneOffsetTransition prev = rules.previousTransition(at.plusSeconds(1));
+        ZoneOffsetTransition next = rules.nextTransition(at);
+        offsetFrom = prev == null ? Long.MIN_VALUE : prev.toEpochSecond();
+        offsetTo = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+        return offsetSeconds;
+    }
+
+    private static boolean digit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int num(byte[] o, int p, int n) {
+        int v = 0;
+        for (int k = 0; k < n; k++) {
+            byte b = o[p + k];
+            if (!digit(b)) return -1;
+            v = v * 10 + (b - '0');
+        }
+        return v;
+    }
+
+    private static long fraction(byte[] o, int from, int to) {
+        long v = 0;
+        int n = Math.min(to - from, 9);
+        for (int k = 0; k < n; k++) v = v * 10 + (o[from + k] - '0');
+        for (int k = n; k < 9; k++) v *= 10;
+        return v;
+    }
+
+    /** Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's algorithm). */
+    static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146_097 + doe - 719_468;
+    }
+}
@@ -0,0 +1,174 @@
+package io.cardinalhq.logsink.ring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Layout of the memory-mapped ring shared by one producing JVM and one shipper process.
+ * <pre>
+ *   0     magic, version, data capacity
+ *   64    producer line: write position (published), records written, records dropped
+ *   128   shipper line: read position, records shipped, backpressure stalls
+ *   4096  data: frames, 8-byte aligned
+ * </pre>
+ * Positions are byte offsets that only grow; a frame starts at {@code position % capacity}.
+ * A frame is {@code [int length][int type][int routeLength][int recordLength][route][record]},
+ * its length rounded up to 8. A frame never wraps: when one does not fit before the end of the
+ * data area, the remainder is covered by a padding frame and the frame starts at offset 0.
+ * Each side writes only its own line and publishes it with release semantics, so the other
+ * side, reading with acquire, sees complete frames and never a half-written counter.
+ */
+final class SharedRingFile implements Closeable {
+    static final int MAGIC = 0x4C53524E; // "LSRN"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4096;
+
+    static final int CAPACITY = 8;
+    static final int WRITE_POSITION = 64;
+    static final int WRITTEN = 72;
+    static final int DROPPED = 80;
+    static final int READ_POSITION = 128;
+    static final int SHIPPED = 136;
+    static final int STALLS = 144;
+
+    static final int FRAME_HEADER = 16;
+    static final int RECORD = 1;
+    static final int PADDING = 2;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    final Path path;
+    final Object fileKey;
+    final FileChannel channel;
+    final ByteBuffer header;
+    final ByteBuffer data;
+    final int capacity;
+
+    private SharedRingFile(Path path, FileChannel channel, int capacity) throws IOException {
+        this.path = path;
+        this.fileKey = fileKey(path);
+        this.channel = channel;
+        this.capacity = capacity;
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER_BYTES + capacity);
+        this.header = map.slice(0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.data = map.slice(HEADER_BYTES, capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens the ring for writing, holding a lock on its header for as long as it is open. An
+     * existing ring of the same capacity is continued, so a restarted application does not lose
+     * what the shipper has not read yet; otherwise the file is replaced by a new one (a shipper
+     * still mapping the old file notices and reopens).
+     */
+    static SharedRingFile create(Path path, int capacity) throws IOException {
+        if (Files.exists(path)) {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (!lock(ch)) throw new IOException(path + " is already written by another sink");
+                try {
+                    SharedRingFile existing = map(path, ch);
+                    if (existing.capacity == capacity && existing.consistent()) return existing;
+                } catch (IOException e) {
+                    // not a ring, or a damaged one; replaced below
+                }
+                Files.delete(path); // still under our lock, so no other producer is using it
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+            ch.close();
+        }
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!lock(ch)) throw new IOException(path + " is already written by another sink");
+            SharedRingFile ring = new SharedRingFile(path, ch, capacity); // mapping extends the file with zeros
+            ring.header.putInt(4, VERSION);
+            ring.header.putLong(CAPACITY, capacity);
+            ring.header.putInt(0, MAGIC);
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Opens an existing ring, as the shipper does. */
+    static SharedRingFile open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return map(path, ch);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private static SharedRingFile map(Path path, FileChannel ch) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        if (ch.read(h, 0) < 16 || h.getInt(0) != MAGIC) throw new IOException(path + " is not a LogSink ring");
+        if (h.getInt(4) != VERSION) throw new IOException(path + " has ring version " + h.getInt(4) + ", expected " + VERSION);
+        long capacity = h.getLong(CAPACITY);
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE - HEADER_BYTES || ch.size() < HEADER_BYTES + capacity) {
+            throw new IOException(path + " is truncated or has a bad capacity");
+        }
+        return new SharedRingFile(path, ch, (int) capacity);
+    }
+
+    /** Takes the producer lock; it is held by the channel and released when the channel closes. */
+    private static boolean lock(FileChannel ch) throws IOException {
+        try {
+            return ch.tryLock(0, HEADER_BYTES, false) != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    private boolean consistent() {
+        long write = get(WRITE_POSITION);
+        long read = get(READ_POSITION);
+        return read >= 0 && read <= write && write - read <= capacity;
+    }
+
+    long get(int at) {
+        return (long) LONGS.getAcquire(header, at);
+    }
+
+    void put(int at, long value) {
+        LONGS.setRelease(header, at, value);
+    }
+
+    int offset(long position) {
+        return (int) (position % capacity);
+    }
+
+    /** True when the path now names another file than the one mapped, e.g. after the producer replaced it. */
+    boolean replaced() {
+        try {
+            Object key = fileKey(path);
+            return key == null ? !Files.exists(path) : !key.equals(fileKey);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class).fileKey();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // the mapping stays valid until collected
+    }
+}
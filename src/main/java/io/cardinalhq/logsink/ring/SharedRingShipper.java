@@ -0,0 +1,221 @@
+package io.cardinalhq.logsink.ring;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.LogSinkRoute;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shipper side of a {@link SharedRingFile}: reads the frames a {@link SharedRingWriter} left in
+ * the ring and logs them into a regular {@link LogSink}, which batches, compresses and exports
+ * them. Run it in its own process, e.g. {@code LogSinkCli ship --ring FILE}.
+ * <p>
+ * When the sink does not take a record (its queue is full), the shipper waits and retries the
+ * same record rather than skipping it; the ring fills up and the producer drops instead. Those
+ * waits are counted as stalls. The read position is saved in the ring, so a restarted shipper
+ * continues where it stopped; records already handed to the sink when it is killed are lost
+ * unless the sink got to export them.
+ */
+public final class SharedRingShipper implements Runnable, Closeable {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long STALL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FILE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int FRAMES_PER_PASS = 4096;
+
+    private final Path path;
+    private final LogSink sink;
+    private final String fallbackService;
+    private final HashMap<ByteBuffer, LogSinkRoute> routes = new HashMap<>();
+    private SharedRingFile ring;
+    private ByteBuffer view;
+    private long read;
+    private long shipped;
+    private long stalls;
+    private volatile long corrupt; // read by stats from other threads
+    private long nextFileCheck;
+    private volatile boolean closed;
+
+    private SharedRingShipper(Path path, SharedRingFile ring, LogSink sink, String fallbackService) {
+        this.path = path;
+        this.sink = sink;
+        this.fallbackService = fallbackService;
+        attach(ring);
+    }
+
+    /**
+     * Opens the ring at {@code path}. Records are logged into {@code sink} under the resource the
+     * producer gave them; {@code fallbackService} names resources that lack a service name.
+     */
+    public static SharedRingShipper open(Path path, LogSink sink, String fallbackService) throws IOException {
+        return new SharedRingShipper(path, SharedRingFile.open(path), sink, fallbackService);
+    }
+
+    private void attach(SharedRingFile ring) {
+        this.ring = ring;
+        this.view = ring.data.duplicate();
+        this.read = ring.get(SharedRingFile.READ_POSITION);
+        this.shipped = ring.get(SharedRingFile.SHIPPED);
+        this.stalls = ring.get(SharedRingFile.STALLS);
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            long now = System.nanoTime();
+            if (now - nextFileCheck >= 0) {
+                nextFileCheck = now + FILE_CHECK_NANOS;
+                if (ring.replaced()) reopen();
+            }
+            if (drain() == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        try {
+            ring.close();
+        } catch (IOException e) {
+            logger.debug("LogSink shipper: closing {}: {}", path, e.toString());
+        }
+    }
+
+    private void reopen() {
+        try {
+            SharedRingFile next = SharedRingFile.open(path);
+            logger.info("LogSink shipper: {} was replaced by its producer; reading the new ring", path);
+            ring.close();
+            attach(next);
+        } catch (IOException e) {
+            logger.debug("LogSink shipper: {} not ready yet: {}", path, e.toString());
+        }
+    }
+
+    /** Ships what is published; returns the number of records handed to the sink. */
+    int drain() {
+        long write = ring.get(SharedRingFile.WRITE_POSITION);
+        int frames = 0;
+        try {
+            while (read < write && frames < FRAMES_PER_PASS && !closed) {
+                ByteBuffer data = ring.data;
+                int offset = ring.offset(read);
+                int length = data.getInt(offset);
+                int type = data.getInt(offset + 4);
+                if (length < 8 || (length & 7) != 0 || length > ring.capacity - offset) {
+                    corrupt++;
+                    logger.error("LogSink shipper: bad frame at {} in {}; skipping {} unread bytes", read, path, write - read);
+                    read = write;
+                    break;
+                }
+                if (type == SharedRingFile.RECORD) {
+                    int routeLength = data.getInt(offset + 8);
+                    int recordLength = data.getInt(offset + 12);
+                    int at = offset + SharedRingFile.FRAME_HEADER;
+                    LogSinkRoute route;
+                    LogRecord record;
+                    try {
+                        route = route(at, routeLength);
+                        view.clear().position(at + routeLength).limit(at + routeLength + recordLength);
+                        record = LogRecord.parseFrom(view);
+                    } catch (InvalidProtocolBufferException | RuntimeException e) {
+                        corrupt++;
+                        logger.warn("LogSink shipper: unreadable record at {} in {}: {}", read, path, e.toString());
+                        read += length;
+                        continue;
+                    }
+                    while (!sink.log(route, record)) {
+                        if (closed) return frames;
+                        stalls++;
+                        publish(); // let the producer reuse what was shipped while we wait
+                        LockSupport.parkNanos(STALL_PARK_NANOS);
+                    }
+                    shipped++;
+                    frames++;
+                }
+                read += length;
+            }
+        } finally {
+            publish();
+        }
+        return frames;
+    }
+
+    private void publish() {
+        ring.put(SharedRingFile.SHIPPED, shipped);
+        ring.put(SharedRingFile.STALLS, stalls);
+        ring.put(SharedRingFile.READ_POSITION, read);
+    }
+
+    private LogSinkRoute route(int at, int length) throws InvalidProtocolBufferException {
+        byte[] key = new byte[length];
+        ring.data.get(at, key);
+        ByteBuffer k = ByteBuffer.wrap(key);
+        LogSinkRoute route = routes.get(k);
+        if (route != null) return route;
+
+        int endpointLength = k.getShort() & 0xFFFF;
+        String endpoint = new String(key, 2, endpointLength, StandardCharsets.UTF_8);
+        k.position(2 + endpointLength);
+        int apiKeyLength = k.getShort() & 0xFFFF;
+        String apiKey = new String(key, 4 + endpointLength, apiKeyLength, StandardCharsets.UTF_8);
+        int resourceAt = 4 + endpointLength + apiKeyLength;
+        Resource resource = Resource.parseFrom(ByteBuffer.wrap(key, resourceAt, length - resourceAt));
+
+        LogSinkRoute.Builder b = LogSinkRoute.builder().setServiceName(fallbackService);
+        if (!endpoint.isEmpty()) b.setOtlpEndpoint(endpoint);
+        if (!apiKey.isEmpty()) b.setApiKey(apiKey);
+        for (KeyValue kv : resource.getAttributesList()) {
+            if (kv.getKey().equals("service.name") && kv.getValue().hasStringValue()) {
+                b.setServiceName(kv.getValue().getStringValue());
+            } else if (!kv.getKey().equals("service.name")) {
+                b.addResourceAttribute(kv.getKey(), kv.getValue()); // numbers, booleans and arrays stay as they are
+            }
+        }
+        route = b.build();
+        if (routes.size() >= 1024) routes.clear();
+        routes.put(k.clear(), route);
+        return route;
+    }
+
+    public long shippedRecords() {
+        return ring.get(SharedRingFile.SHIPPED);
+    }
+
+    /** Records the producer wrote into the ring, over the life of the ring file. */
+    public long producerWrittenRecords() {
+        return ring.get(SharedRingFile.WRITTEN);
+    }
+
+    /** Records the producer dropped because the ring was full. */
+    public long producerDroppedRecords() {
+        return ring.get(SharedRingFile.DROPPED);
+    }
+
+    /** Times the shipper waited for its sink to take a record. */
+    public long stalls() {
+        return ring.get(SharedRingFile.STALLS);
+    }
+
+    /** Frames skipped as unreadable. */
+    public long corruptFrames() {
+        return corrupt;
+    }
+
+    public long lagBytes() {
+        return Math.max(0, ring.get(SharedRingFile.WRITE_POSITION) - ring.get(SharedRingFile.READ_POSITION));
+    }
+
+    /** Stops {@link #run()} after the frame at hand; the sink is left to the caller. */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,175 @@
+package io.cardinalhq.logsink.ring;
+
+import com.google.protobuf.CodedOutputStream;
+import io.cardinalhq.logsink.LogSinkRoute;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer side of a {@link SharedRingFile}: copies serialized records into the ring for a
+ * {@link SharedRingShipper} in another process to export. Single-threaded by design; the
+ * batcher's consumer thread is the only writer, and a file lock keeps a second JVM out.
+ * <p>
+ * Frames become visible to the shipper on {@link #publish()}, and by themselves once a quarter of
+ * the ring is unpublished. A record that does not fit in the free space is dropped and counted in
+ * the ring header, so the shipper reports drops too. So is a record whose route cannot be framed,
+ * i.e. whose endpoint or API key is longer than 65535 bytes in UTF-8.
+ */
+public final class SharedRingWriter implements Closeable {
+    private static final StatusLogger logger = StatusLogger.getLogger();
+    private static final long WARN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_CACHED_ROUTES = 1024;
+    static final int MAX_ROUTE_STRING_BYTES = 0xFFFF; // u16 length prefix
+
+    private final SharedRingFile ring;
+    private final ByteBuffer view; // for protobuf output; its position and limit are ours to move
+    private final byte[] defaultRoute;
+    private final HashMap<LogSinkRoute, byte[]> routes = new HashMap<>();
+
+    private long position;  // end of the last written frame
+    private long published; // position as last published
+    private long readCache; // shipper's read position as last seen
+    private long written;
+    private long dropped;
+    private long warnedDropped;
+    private long nextWarn;
+    private long nextRouteWarn;
+
+    private SharedRingWriter(SharedRingFile ring, Resource resource) {
+        this.ring = ring;
+        this.view = ring.data.duplicate();
+        this.defaultRoute = encodeRoute(null, null, resource);
+        this.position = ring.get(SharedRingFile.WRITE_POSITION);
+        this.published = position;
+        this.readCache = ring.get(SharedRingFile.READ_POSITION);
+        this.written = ring.get(SharedRingFile.WRITTEN);
+        this.dropped = ring.get(SharedRingFile.DROPPED);
+        this.warnedDropped = dropped;
+    }
+
+    /**
+     * Opens or creates the ring at {@code path} with {@code capacityBytes} of frame space.
+     * Records without a route are reported under {@code resource}.
+     */
+    public static SharedRingWriter open(Path path, int capacityBytes, Resource resource) throws IOException {
+        return new SharedRingWriter(SharedRingFile.create(path, capacityBytes), resource);
+    }
+
+    /** Appends one record; false when the ring had no room and the record was dropped. */
+    public boolean write(LogRecord record, LogSinkRoute route) {
+        byte[] r = route == null ? defaultRoute : routes.get(route);
+        if (r == null) {
+            r = encodeRoute(route.getEndpoint(), route.getApiKey(), route.getResource());
+            if (r == null) {
+                dropped++;
+                warnUnframableRoute(route);
+                return false;
+            }
+            if (routes.size() >= MAX_CACHED_ROUTES) routes.clear();
+            routes.put(route, r);
+        }
+        int size = record.getSerializedSize();
+        int length = (SharedRingFile.FRAME_HEADER + r.length + size + 7) & ~7;
+        int capacity = ring.capacity;
+        int offset = ring.offset(position);
+        int tail = capacity - offset;
+        long needed = tail < length ? tail + length : length;
+        if (length > capacity / 2 || !hasRoom(needed)) {
+            dropped++;
+            return false;
+        }
+        ByteBuffer data = ring.data;
+        if (tail < length) {
+            data.putInt(offset, tail);
+            data.putInt(offset + 4, SharedRingFile.PADDING);
+            position += tail;
+            offset = 0;
+        }
+        data.putInt(offset, length);
+        data.putInt(offset + 4, SharedRingFile.RECORD);
+        data.putInt(offset + 8, r.length);
+        data.putInt(offset + 12, size);
+        data.put(offset + SharedRingFile.FRAME_HEADER, r);
+        view.clear().position(offset + SharedRingFile.FRAME_HEADER + r.length);
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(view);
+            record.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("record larger than its serialized size", e); // cannot happen
+        }
+        position += length;
+        written++;
+        if (position - published >= capacity >> 2) publish(); // a long batch must not hide a full ring from the shipper
+        return true;
+    }
+
+    private boolean hasRoom(long needed) {
+        if (ring.capacity - (position - readCache) >= needed) return true;
+        if (position != published) publish();
+        readCache = ring.get(SharedRingFile.READ_POSITION);
+        return ring.capacity - (position - readCache) >= needed;
+    }
+
+    /** Makes the frames written so far visible to the shipper. */
+    public void publish() {
+        ring.put(SharedRingFile.WRITTEN, written);
+        ring.put(SharedRingFile.DROPPED, dropped);
+        ring.put(SharedRingFile.WRITE_POSITION, position);
+        published = position;
+        if (dropped != warnedDropped) {
+            long now = System.nanoTime();
+            if (now - nextWarn >= 0) {
+                logger.warn("LogSink: shared ring {} is full; {} records dropped so far. Is the shipper running?",
+                        ring.path, dropped);
+                warnedDropped = dropped;
+                nextWarn = now + WARN_INTERVAL_NANOS;
+            }
+        }
+    }
+
+    private void warnUnframableRoute(LogSinkRoute route) {
+        long now = System.nanoTime();
+        if (now - nextRouteWarn < 0) return;
+        nextRouteWarn = now + WARN_INTERVAL_NANOS;
+        logger.warn("LogSink: dropping records for {}: its endpoint or API key exceeds {} bytes", route, MAX_ROUTE_STRING_BYTES);
+    }
+
+    /** Records dropped because the ring was full or their route could not be framed, over the life of the ring file. */
+    public long droppedRecords() {
+        return ring.get(SharedRingFile.DROPPED);
+    }
+
+    /** Published bytes the shipper has not read yet. */
+    public long lagBytes() {
+        return Math.max(0, ring.get(SharedRingFile.WRITE_POSITION) - ring.get(SharedRingFile.READ_POSITION));
+    }
+
+    @Override
+    public void close() throws IOException {
+        ring.close(); // releases the producer lock
+    }
+
+    /**
+     * {@code [u16 endpoint][endpoint][u16 apiKey][apiKey][Resource]}; empty strings stand for the
+     * shipper's own. Null when the endpoint or API key does not fit its length prefix.
+     */
+    static byte[] encodeRoute(String endpoint, String apiKey, Resource resource) {
+        byte[] e = endpoint == null ? new byte[0] : endpoint.getBytes(StandardCharsets.UTF_8);
+        byte[] k = apiKey == null ? new byte[0] : apiKey.getBytes(StandardCharsets.UTF_8);
+        if (e.length > MAX_ROUTE_STRING_BYTES || k.length > MAX_ROUTE_STRING_BYTES) return null;
+        byte[] res = resource.toByteArray();
+        ByteBuffer b = ByteBuffer.allocate(4 + e.length + k.length + res.length);
+        b.putShort((short) e.length).put(e).putShort((short) k.length).put(k).put(res);
+        return b.array();
+    }
+}
@@ -0,0 +1,309 @@
+package io.cardinalhq.logsink.template;
+
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Online, Drain-style log template miner.
+ * <p>
+ * Each line is tokenized on whitespace and routed through a fixed-depth parse tree
+ * (token count, then the first few digit-free tokens) to a leaf holding candidate clusters. The
+ * most similar cluster absorbs the line, turning differing positions into
+ * {@value #WILDCARD}; otherwise a new cluster is created. Each cluster's id, attached to the
+ * record as {@value #TEMPLATE_ID_ATTRIBUTE}, is the fingerprint of the masked line that created it
+ * and stays the same while later lines widen the template, so every line of one template carries
+ * one id.
+ * <p>
+ * The tree is split into independently locked stripes keyed by token count and the
+ * navigation prefix, so producer threads mining different kinds of lines do not contend.
+ * Memory is bounded by the tree depth, the per-node fan-out and a global cluster cap;
+ * once the cap is reached the least recently used cluster of the stripe is evicted, along with
+ * the tree nodes left without clusters or children.
+ */
+public final class TemplateMiner {
+    public static final String TEMPLATE_ID_ATTRIBUTE = "log.template_id";
+    public static final String WILDCARD = "<*>";
+
+    static final int MAX_TOKENS = 128;
+
+    private final int depth;
+    private final double similarityThreshold;
+    private final int maxChildren;
+    private final int maxClusters;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AtomicInteger clusterCount = new AtomicInteger();
+
+    public TemplateMiner() {
+        this(4096);
+    }
+
+    public TemplateMiner(int maxClusters) {
+        this(4, 0.4, 100, maxClusters, defaultStripes());
+    }
+
+    /**
+     * @param depth               parse tree depth, including the token-count level (min 3)
+     * @param similarityThreshold fraction of matching tokens needed to join a cluster
+     * @param maxChildren         fan-out cap per tree node; overflow goes to the wildcard child
+     * @param maxClusters         global cap on retained templates
+     * @param stripes             number of independently locked sub-trees (rounded to a power of two)
+     */
+    public TemplateMiner(int depth, double similarityThreshold, int maxChildren, int maxClusters, int stripes) {
+        if (depth < 3) throw new IllegalArgumentException("depth must be >= 3");
+        if (similarityThreshold <= 0 || similarityThreshold > 1) {
+            throw new IllegalArgumentException("similarityThreshold must be in (0, 1]");
+        }
+        if (maxChildren < 2) throw new IllegalArgumentException("maxChildren must be >= 2");
+        if (maxClusters < 1) throw new IllegalArgumentException("maxClusters must be >= 1");
+        this.depth = depth;
+        this.similarityThreshold = similarityThreshold;
+        this.maxChildren = maxChildren;
+        this.maxClusters = maxClusters;
+
+        int n = 1;
+        while (n < Math.max(1, stripes)) n <<= 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe();
+        this.stripeMask = n - 1;
+    }
+
+    /** Returns the record with {@value #TEMPLATE_ID_ATTRIBUTE} attached, or the record itself if it has no text body. */
+    public LogRecord annotate(LogRecord record) {
+        if (record == null || record.getBody().getValueCase() != AnyValue.ValueCase.STRING_VALUE) return record;
+        String body = record.getBody().getStringValue();
+        if (body.isEmpty()) return record;
+
+        String id = templateId(body);
+        return record.toBuilder()
+                .addAttributes(KeyValue.newBuilder()
+                        .setKey(TEMPLATE_ID_ATTRIBUTE)
+                        .setValue(AnyValue.newBuilder().setStringValue(id).build())
+                        .build())
+                .build();
+    }
+
+    /** Mines {@code line} and returns the id of the template it belongs to. */
+    public String templateId(String line) {
+        String[] tokens = tokenize(line);
+        Stripe stripe = stripes[stripeIndex(tokens)];
+        synchronized (stripe) {
+            return stripe.match(tokens);
+        }
+    }
+
+    /** Number of templates currently retained across all stripes. */
+    public int clusterCount() {
+        return clusterCount.get();
+    }
+
+    /** Parse tree nodes across all stripes, for tests. */
+    int nodeCount() {
+        int n = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Node node : stripe.byLength.values()) n += node.size();
+            }
+        }
+        return n;
+    }
+
+    private int stripeIndex(String[] tokens) {
+        int h = tokens.length;
+        int levels = depth - 2;
+        for (int i = 0; i < tokens.length && levels > 0; i++) {
+            if (tokens[i] == WILDCARD) continue;
+            h = 31 * h + tokens[i].hashCode();
+            levels--;
+        }
+        h ^= (h >>> 16);
+        return (h * 0x9E3779B9) >>> 16 & stripeMask;
+    }
+
+    // ---- tree ----
+
+    private final class Stripe {
+        private final Map<Integer, Node> byLength = new HashMap<>();
+        // Access-ordered, so the eldest entry is the least recently used cluster of the stripe
+        private final LinkedHashMap<Cluster, Cluster> clusters = new LinkedHashMap<>(16, 0.75f, true);
+
+        String match(String[] tokens) {
+            Node lengthNode = byLength.computeIfAbsent(tokens.length, k -> new Node(null, k));
+            Node leafNode = descend(lengthNode, tokens);
+            List<Cluster> leaf = leafNode.clusters;
+
+            Cluster best = null;
+            double bestSim = -1;
+            int bestParams = -1;
+            for (int i = 0; i < leaf.size(); i++) {
+                Cluster c = leaf.get(i);
+                int params = 0;
+                int same = 0;
+                for (int t = 0; t < tokens.length; t++) {
+                    String tt = c.tokens[t];
+                    if (tt == WILDCARD) params++;
+                    // A masked numeric token matches a wildcard, as in Drain's preprocessing step
+                    if (tt == tokens[t] || tt.equals(tokens[t])) same++;
+                }
+                double sim = tokens.length == 0 ? 1.0 : (double) same / tokens.length;
+                if (sim > bestSim || (sim == bestSim && params > bestParams)) {
+                    best = c;
+                    bestSim = sim;
+                    bestParams = params;
+                }
+            }
+
+            if (best != null && bestSim >= similarityThreshold) {
+                best.merge(tokens);
+                clusters.get(best); // touch
+                return best.id;
+            }
+
+            if (clusterCount.get() >= maxClusters && !evictOne(leafNode)) {
+                // Over budget and nothing local to evict: fingerprint the masked line without retaining it.
+                return fingerprint(tokens);
+            }
+            Cluster created = new Cluster(tokens, leafNode);
+            leaf.add(created);
+            clusters.put(created, created);
+            clusterCount.incrementAndGet();
+            return created.id;
+        }
+
+        private Node descend(Node node, String[] tokens) {
+            // Navigate on the first digit-free tokens: leading timestamps and ids would otherwise
+            // send every line of a given length down the same wildcard branch.
+            int levels = depth - 2;
+            for (int i = 0; i < tokens.length && levels > 0; i++) {
+                if (tokens[i] == WILDCARD) continue;
+                String key = tokens[i];
+                Node next = node.children.get(key);
+                if (next == null) {
+                    if (node.children.size() < maxChildren) {
+                        next = new Node(node, key);
+                        node.children.put(key, next);
+                    } else {
+                        Node parent = node;
+                        next = node.children.computeIfAbsent(WILDCARD, k -> new Node(parent, k));
+                    }
+                }
+                node = next;
+                levels--;
+            }
+            if (node.clusters == null) node.clusters = new ArrayList<>(2);
+            return node;
+        }
+
+        /** Evicts the least recently used cluster and prunes the branch it leaves empty, short of {@code keep}. */
+        private boolean evictOne(Node keep) {
+            Iterator<Cluster> eldest = clusters.keySet().iterator();
+            if (!eldest.hasNext()) return false;
+            Cluster c = eldest.next();
+            eldest.remove();
+            clusterCount.decrementAndGet();
+
+            Node node = c.leaf;
+            node.clusters.remove(c);
+            while (node != keep && node.isEmpty()) {
+                if (node.parent == null) {
+                    byLength.remove(node.key);
+                    break;
+                }
+                node.parent.children.remove(node.key);
+                node = node.parent;
+            }
+            return true;
+        }
+    }
+
+    private static final class Node {
+        final Node parent; // null for a token-count node
+        final Object key;  // in the parent's children, or the token count
+        final Map<String, Node> children = new HashMap<>(4);
+        List<Cluster> clusters;
+
+        Node(Node parent, Object key) {
+            this.parent = parent;
+            this.key = key;
+        }
+
+        int size() {
+            int n = 1;
+            for (Node child : children.values()) n += child.size();
+            return n;
+        }
+
+        boolean isEmpty() {
+            return children.isEmpty() && (clusters == null || clusters.isEmpty());
+        }
+    }
+
+    private static final class Cluster {
+        final String[] tokens;
+        final Node leaf;
+        final String id; // fingerprint of the first line; kept as the template widens
+
+        Cluster(String[] tokens, Node leaf) {
+            this.tokens = tokens;
+            this.leaf = leaf;
+            this.id = fingerprint(tokens);
+        }
+
+        void merge(String[] line) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] != WILDCARD && !tokens[i].equals(line[i])) tokens[i] = WILDCARD;
+            }
+        }
+    }
+
+    // ---- tokens ----
+
+    /**
+     * Splits on whitespace, capped at {@value #MAX_TOKENS} tokens. Tokens carrying digits are almost
+     * always parameters, so they come back pre-masked as {@link #WILDCARD} without a substring copy.
+     */
+    static String[] tokenize(String line) {
+        ArrayList<String> out = new ArrayList<>(16);
+        int n = line.length();
+        int i = 0;
+        while (i < n && out.size() < MAX_TOKENS) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i >= n) break;
+            int start = i;
+            boolean digit = false;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) {
+                char c = line.charAt(i++);
+                if (c >= '0' && c <= '9') digit = true;
+            }
+            out.add(digit ? WILDCARD : line.substring(start, i));
+        }
+        return out.toArray(new String[0]);
+    }
+
+    /** 64-bit FNV-1a over the space-joined tokens, so a template first seen as the same line shares an id across JVMs. */
+    static String fingerprint(String[] tokens) {
+        long h = 0xcbf29ce484222325L;
+        for (int t = 0; t < tokens.length; t++) {
+            if (t > 0) h = (h ^ ' ') * 0x100000001b3L;
+            String s = tokens[t];
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        String hex = Long.toHexString(h);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static int defaultStripes() {
+        return Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+    }
+}
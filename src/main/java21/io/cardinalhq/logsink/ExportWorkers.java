@@ -0,0 +1,96 @@
+package io.cardinalhq.logsink;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java 21 implementation, packaged under {@code META-INF/versions/21}: each export runs on its
+ * own virtual thread, so a slow collector holds a cheap virtual thread per request rather than
+ * the consumer thread, which only cuts batches. A semaphore caps the exports in flight; when all
+ * permits are taken the consumer waits, and the ring fills up as it would behind a blocking send.
+ * <p>
+ * Unlike the Java 17 export thread, this does not keep order: batches in flight together finish
+ * in whatever order the collector answers them, so records of one route may arrive out of
+ * order, and a batch that is retried lands after newer ones. A {@code maxInFlight} of 1 keeps
+ * order at the cost of one request at a time.
+ */
+final class ExportWorkers {
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final ExecutorService threads =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("logsink-export-", 0).factory());
+    private final Runnable freed;
+
+    /** {@code freed} runs on the export's thread after each export, once {@link #busy()} may be false. */
+    ExportWorkers(int maxInFlight, Runnable freed) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.freed = freed;
+        this.permits = new Semaphore(this.maxInFlight);
+    }
+
+    /** Starts {@code export}, which carries {@code records} records, once a permit is free. */
+    void execute(int records, Runnable export) {
+        inFlight.addAndGet(records); // counted while waiting, so a drain giving up accounts for them
+        permits.acquireUninterruptibly();
+        Runnable task = () -> {
+            try {
+                export.run();
+            } finally {
+                inFlight.addAndGet(-records);
+                permits.release();
+                freed.run();
+            }
+        };
+        try {
+            threads.execute(task);
+        } catch (RuntimeException | Error e) {
+            inFlight.addAndGet(-records);
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Exports that may run at once. */
+    int parallelism() {
+        return maxInFlight;
+    }
+
+    /** Whether a new export would wait for a permit. */
+    boolean busy() {
+        return permits.availablePermits() == 0;
+    }
+
+    /** Records in exports that have not finished yet. */
+    long inFlightRecords() {
+        return inFlight.get();
+    }
+
+    /** Waits until no export runs, or the deadline passes. */
+    boolean awaitIdle(long deadlineNanos) {
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            if (!permits.tryAcquire(maxInFlight, remaining, TimeUnit.NANOSECONDS)) return false;
+            permits.release(maxInFlight);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Interrupts the running exports, which abandon their requests, and refuses new ones. Their
+     * records stay counted in {@link #inFlightRecords()} until each export's thread unwinds.
+     */
+    void shutdownNow() {
+        threads.shutdownNow();
+    }
+
+    String describe() {
+        return "virtual threads, up to " + maxInFlight + " in flight";
+    }
+}
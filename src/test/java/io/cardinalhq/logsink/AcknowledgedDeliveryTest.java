@@ -0,0 +1,114 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AcknowledgedDeliveryTest {
+    private StubOtlpCollector collector;
+    private LogSinkBatcher batcher;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start();
+    }
+
+    @AfterEach
+    void stop() {
+        if (batcher != null) batcher.shutdown(5, TimeUnit.SECONDS);
+        collector.close();
+    }
+
+    private LogSinkBatcher start(LogSinkConfig config) {
+        batcher = new LogSinkBatcher(config, new LogSinkExporter(config));
+        return batcher;
+    }
+
+    @Test
+    void completesOnceTheCollectorAccepted() throws Exception {
+        LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).build());
+        CompletableFuture<Void> ack = b.addAcknowledged(record(0), null);
+
+        ack.get(10, TimeUnit.SECONDS);
+        assertEquals(1, collector.recordCount());
+    }
+
+    @Test
+    void failsWhenTheCollectorRefuses() {
+        collector.setErrorRate(1.0, 400);
+        LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).build());
+        CompletableFuture<Void> ack = b.addAcknowledged(record(0), null);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> ack.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void retriesTransientFailuresUntilAccepted() throws Exception {
+        collector.failNext(2, 503);
+        LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).setAckMaxAttempts(4).build());
+
+        b.addAcknowledged(record(0), null).get(10, TimeUnit.SECONDS);
+        assertEquals(1, collector.recordCount());
+    }
+
+    @Test
+    void unacknowledgedTrafficFlowsWhileAnAcknowledgedDestinationIsUnavailable() throws Exception {
+        try (StubOtlpCollector down = StubOtlpCollector.start()) {
+            down.setErrorRate(1.0, 503);
+            LogSinkRoute billing = LogSinkRoute.builder()
+                    .setOtlpEndpoint(down.endpoint())
+                    .setServiceName("billing")
+                    .build();
+            // 200 + 400 + 800 + 1600 ms of backoff before the acknowledged batch gives up
+            LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).setAckMaxAttempts(5)
+                    .setQueueSize(4096).build());
+
+            CompletableFuture<Void> ack = b.addAcknowledged(record(-1), billing);
+            Await.until("the acknowledged batch is being retried", () -> down.rejectedRecords() > 0, Duration.ofSeconds(5));
+
+            long start = System.nanoTime();
+            int n = 2_000;
+            for (int i = 0; i < n; i++) assertTrue(b.add(record(i)));
+            b.flush();
+            assertTrue(collector.awaitRecords(n, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertFalse(ack.isDone(), "retries ended before the unacknowledged records got through");
+            assertTrue(tookMillis < 2_000, "unacknowledged records waited " + tookMillis + " ms behind the retries");
+            ExecutionException e = assertThrows(ExecutionException.class, () -> ack.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+            assertEquals(5, down.rejectedRecords(), "one record, five attempts");
+        }
+    }
+
+    @Test
+    void shutdownFailsAcknowledgementsItCannotWaitFor() throws Exception {
+        try (StubOtlpCollector down = StubOtlpCollector.start()) {
+            down.setErrorRate(1.0, 503);
+            LogSinkRoute billing = LogSinkRoute.builder()
+                    .setOtlpEndpoint(down.endpoint())
+                    .setServiceName("billing")
+                    .build();
+            LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).setAckMaxAttempts(10).build());
+            CompletableFuture<Void> ack = b.addAcknowledged(record(0), billing);
+            Await.until("the acknowledged batch is being retried", () -> down.rejectedRecords() > 0, Duration.ofSeconds(5));
+
+            DrainResult r = b.shutdown(300, TimeUnit.MILLISECONDS);
+
+            assertEquals(1, r.getAbandoned(), r.toString());
+            assertThrows(ExecutionException.class, () -> ack.get(5, TimeUnit.SECONDS));
+        }
+    }
+}
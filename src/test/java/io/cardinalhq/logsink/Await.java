@@ -0,0 +1,20 @@
+package io.cardinalhq.logsink;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/** Polls a condition that other threads make true, failing the test if it stays false. */
+public final class Await {
+    private Await() {
+    }
+
+    public static void until(String what, BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) fail("timed out waiting until " + what);
+            Thread.sleep(5);
+        }
+    }
+}
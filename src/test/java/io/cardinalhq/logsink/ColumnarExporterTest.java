@@ -0,0 +1,95 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarExporterTest {
+    private StubOtlpCollector collector;
+    private LogSinkExporter exporter;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start()
+                .trackSequence(r -> "all", r -> r.getAttributes(0).getValue().getIntValue());
+    }
+
+    @AfterEach
+    void stop() {
+        if (exporter != null) exporter.close();
+        collector.close();
+    }
+
+    private LogSinkExporter exporter(int maxInFlightExports) {
+        exporter = new LogSinkExporter(LogSinkBatcherTest.config(collector)
+                .setTransport(LogSinkConfig.Transport.COLUMNAR)
+                .setMaxInFlightExports(maxInFlightExports)
+                .build());
+        return exporter;
+    }
+
+    private static List<LogRecord> batch(int first, int n) {
+        List<LogRecord> records = new ArrayList<>();
+        for (int i = 0; i < n; i++) records.add(LogSinkBatcherTest.record(first + i));
+        return records;
+    }
+
+    @Test
+    void keepsAtMostOneIdleStreamPerConcurrentExport() throws Exception {
+        collector.setLatency(Duration.ofMillis(20));
+        LogSinkExporter e = exporter(2);
+        ExecutorService senders = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> sent = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int first = i * 10;
+                sent.add(senders.submit(() -> e.send(batch(first, 10), Duration.ofSeconds(10))));
+            }
+            for (Future<Boolean> f : sent) assertTrue(f.get());
+        } finally {
+            senders.shutdownNow();
+        }
+
+        assertEquals(640, collector.recordCount());
+        assertEquals(0, collector.missingRecords());
+        assertTrue(e.idleColumnarStreams() <= 2, "idle streams: " + e.idleColumnarStreams());
+        assertTrue(e.idleColumnarStreams() > 0);
+
+        e.close();
+        assertEquals(0, e.idleColumnarStreams());
+        assertTrue(e.send(batch(640, 10), Duration.ofSeconds(10)), "a send after close uses a stream of its own");
+        assertEquals(0, e.idleColumnarStreams());
+    }
+
+    @Test
+    void forgetsDestinationsThatWentIdle() throws Exception {
+        try (StubOtlpCollector other = StubOtlpCollector.start()) {
+            LogSinkExporter e = exporter(4);
+            e.setColumnarIdleNanos(Duration.ofMillis(50).toNanos());
+            assertTrue(e.send(batch(0, 5), Duration.ofSeconds(10)));
+            assertEquals(1, e.columnarDestinations());
+
+            Thread.sleep(100);
+            List<ResourceLogs> rl = List.of(LogSinkExporter.resourceLogs(Resource.getDefaultInstance(), batch(5, 5)));
+            assertTrue(e.send(other.endpoint(), null, rl, Duration.ofSeconds(10)));
+
+            assertEquals(1, e.columnarDestinations(), "the idle destination was not swept");
+            assertEquals(1, e.idleColumnarStreams());
+            assertEquals(5, other.recordCount());
+        }
+    }
+}
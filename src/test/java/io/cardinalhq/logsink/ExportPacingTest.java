@@ -0,0 +1,187 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportPacingTest {
+    private static final int PACED_RECORDS = 1_000;
+    private static final long ADAPTIVE_LINGER_MILLIS = 20;
+
+    private StubOtlpCollector collector;
+    private LogSinkBatcher batcher;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start()
+                .trackSequence(r -> "all", r -> r.getAttributes(0).getValue().getIntValue());
+    }
+
+    @AfterEach
+    void stop() {
+        if (batcher != null) batcher.shutdown(5, TimeUnit.SECONDS);
+        collector.close();
+    }
+
+    private LogSinkBatcher start(LogSinkConfig config) {
+        batcher = new LogSinkBatcher(config, new LogSinkExporter(config));
+        return batcher;
+    }
+
+    @Test
+    void adaptiveBatchingIsOffByDefault() {
+        LogSinkConfig c = config(collector).build();
+        assertEquals(100, c.getMaxBatchSize());
+        assertEquals(1000, c.getFlushIntervalMillis());
+        assertEquals(0, c.getTargetRequestBytes());
+        assertThrows(IllegalArgumentException.class, () -> config(collector).setTargetRequestBytes(512).build());
+    }
+
+    @Test
+    void aPartialBatchLeavesAsSoonAsTheQueueRunsDry() throws InterruptedException {
+        LogSinkBatcher b = start(config(collector).setFlushIntervalMillis(60_000).build());
+        for (int i = 0; i < 5; i++) assertTrue(b.add(record(i)));
+
+        // the flush interval only bounds acknowledged records and adaptive lingers now
+        assertTrue(collector.awaitRecords(5, Duration.ofSeconds(3)), "delivered " + collector.recordCount());
+    }
+
+    @Test
+    void partialBatchesWaitForABusyExportInsteadOfQueuingBehindIt() throws InterruptedException {
+        collector.setLatency(Duration.ofMillis(100));
+        LogSinkBatcher b = start(config(collector).build()); // 16 batches may queue for the export thread
+
+        int n = 41;
+        assertTrue(b.add(record(0)));
+        for (int i = 1; i < n; i++) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(2_500)); // 100 ms of trickle behind one export
+            assertTrue(b.add(record(i)));
+        }
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+        assertTrue(b.exportRequests() <= 5, n + " records took " + b.exportRequests() + " requests");
+        assertEquals(0, collector.reorderedRecords());
+    }
+
+    @Test
+    void acknowledgedRecordsDoNotWaitForARunningExport() throws Exception {
+        collector.setLatency(Duration.ofMillis(400));
+        LogSinkBatcher b = start(config(collector).setAckLingerMillis(5).build());
+        assertTrue(b.add(record(0)));
+        Await.until("the first export reached the collector", () -> b.inFlightExportRecords() == 1, Duration.ofSeconds(5));
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> ack = b.addAcknowledged(record(1), null);
+        ack.get(5, TimeUnit.SECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // behind a consumer blocked in the first export it would take two collector round trips
+        assertTrue(millis < 700, "the acknowledgement took " + millis + " ms");
+    }
+
+    @Test
+    void theByteTargetCapsRequestSize() throws InterruptedException {
+        int n = 2_000;
+        LogSinkBatcher b = start(config(collector).setQueueSize(n).setMaxBatchSize(1000)
+                .setTargetRequestBytes(1 << 10).build());
+        long bytes = 0;
+        for (int i = 0; i < n; i++) {
+            bytes += record(i).getSerializedSize();
+            assertTrue(b.add(record(i)));
+        }
+        b.flush();
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(10)), "delivered " + collector.recordCount());
+        assertTrue(b.exportRequests() >= bytes / (1 << 10), bytes + " bytes took only " + b.exportRequests() + " requests");
+        assertEquals(0, collector.missingRecords());
+        assertEquals(0, collector.reorderedRecords());
+    }
+
+    @Test
+    void adaptiveBatchingStillSendsALoneRecordPromptly() throws InterruptedException {
+        LogSinkBatcher b = start(config(collector).setTargetRequestBytes(256 << 10).setFlushIntervalMillis(60_000).build());
+        assertTrue(b.add(record(0)));
+
+        assertTrue(collector.awaitRecords(1, Duration.ofSeconds(3)), "a lone record waited for company");
+    }
+
+    @Test
+    void adaptiveBatchingStaysWithinConcreteBoundsOfTheDefault() throws InterruptedException {
+        // Interleaved runs of each mode, so JIT warm-up and machine noise hit both alike
+        collector.setLatency(Duration.ofMillis(5)).trackDeliveryLatency(true);
+        pacedRun(config(collector).build()); // warm-up
+        int runs = 4;
+        long[] defaultRequests = new long[runs];
+        long[] adaptiveRequests = new long[runs];
+        long[] defaultP99 = new long[runs];
+        long[] adaptiveP99 = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            Histogram d = pacedRun(config(collector).build());
+            defaultRequests[i] = batcher.exportRequests();
+            defaultP99[i] = d.getValueAtPercentile(99);
+            Histogram a = pacedRun(config(collector).setTargetRequestBytes(256 << 10)
+                    .setFlushIntervalMillis(ADAPTIVE_LINGER_MILLIS).build());
+            adaptiveRequests[i] = batcher.exportRequests();
+            adaptiveP99[i] = a.getValueAtPercentile(99);
+        }
+        String runsSeen = "requests " + Arrays.toString(defaultRequests) + " vs adaptive " + Arrays.toString(adaptiveRequests)
+                + ", p99 us " + Arrays.toString(defaultP99) + " vs adaptive " + Arrays.toString(adaptiveP99);
+
+        long records = (long) PACED_RECORDS * runs;
+        long byDefault = Arrays.stream(defaultRequests).sum();
+        long adaptive = Arrays.stream(adaptiveRequests).sum();
+        assertTrue(adaptive <= records / 4, "adaptive batches averaged under 4 records: " + runsSeen); // 5 ms of arrivals per export
+        // On Java 17 the default already holds partial batches behind a busy export, so the two stay
+        // close; the margin absorbs runs where noise slowed the default's exports and grew its batches
+        assertTrue(adaptive <= byDefault * 3 / 2, "adaptive took far more requests than the default: " + runsSeen);
+
+        // Lingering may add at most its cap to the tail, plus slack for a one-CPU test machine
+        long defaultTail = median(defaultP99);
+        long adaptiveTail = median(adaptiveP99);
+        assertTrue(adaptiveTail <= defaultTail + TimeUnit.MILLISECONDS.toMicros(ADAPTIVE_LINGER_MILLIS + 20),
+                "adaptive p99 exceeded the default's by more than the linger cap: " + runsSeen);
+        assertTrue(adaptiveTail <= TimeUnit.MILLISECONDS.toMicros(250), "adaptive p99 over 250 ms: " + runsSeen);
+    }
+
+    /**
+     * Sends {@link #PACED_RECORDS} records with exponentially distributed gaps, about 1000 a
+     * second, and returns their enqueue-to-collector latency in microseconds.
+     */
+    private Histogram pacedRun(LogSinkConfig config) throws InterruptedException {
+        if (batcher != null) batcher.shutdown(5, TimeUnit.SECONDS);
+        collector.reset();
+        LogSinkBatcher b = start(config);
+        Random gaps = new Random(42);
+        long due = System.nanoTime();
+        for (int i = 0; i < PACED_RECORDS; i++) {
+            due += (long) (-Math.log(1 - gaps.nextDouble()) * 1_000_000);
+            while (System.nanoTime() < due) LockSupport.parkNanos(50_000);
+            Instant now = Instant.now();
+            assertTrue(b.add(record(i).toBuilder().setObservedTimeUnixNano(now.getEpochSecond() * 1_000_000_000L + now.getNano()).build()));
+        }
+        assertTrue(collector.awaitRecords(PACED_RECORDS, Duration.ofSeconds(10)), "delivered " + collector.recordCount());
+        assertEquals(0, collector.reorderedRecords());
+        return collector.deliveryLatency();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return (sorted[(sorted.length - 1) / 2] + sorted[sorted.length / 2]) / 2;
+    }
+}
@@ -0,0 +1,64 @@
+package io.cardinalhq.logsink;
+
+import org.apache.logging.log4j.Level;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecorderTest {
+
+    private static long sweepThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().equals("logsink-flight-recorder-sweep"))
+                .count();
+    }
+
+    private static LogSinkAppender appender() {
+        return LogSinkAppender.createAppender("flight-recorder-test", 1000, 100, false, false, false, 5000,
+                0, 5, 0, 0, false, null, null,
+                true, "INFO", "thread", 30_000, 256, 8L << 20,
+                "otlp", false, 64, 16, 1000, 0, false, null, 64 << 20, null, null);
+    }
+
+    @Test
+    void sweeperRunsOnlyWhileTheAppenderIsStarted() throws InterruptedException {
+        long before = sweepThreads();
+        LogSinkAppender a = appender();
+        assertEquals(before, sweepThreads(), "the plugin factory started a sweep thread");
+
+        a.start();
+        Await.until("sweep thread started", () -> sweepThreads() == before + 1, Duration.ofSeconds(5));
+        a.stop();
+        Await.until("sweep thread stopped", () -> sweepThreads() == before, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void closeIsIdempotentAndStartMayFollow() throws InterruptedException {
+        long before = sweepThreads();
+        FlightRecorder fr = new FlightRecorder(4, 30_000, 1 << 20);
+        fr.close();
+        fr.start();
+        fr.start();
+        Await.until("one sweep thread", () -> sweepThreads() == before + 1, Duration.ofSeconds(5));
+        fr.close();
+        fr.close();
+        Await.until("sweep thread stopped", () -> sweepThreads() == before, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void flushHandsOverTheLeadUpOldestFirst() {
+        FlightRecorder fr = new FlightRecorder(2, 30_000, 1 << 20);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(fr.record("trace", now + i, Level.DEBUG, "l", "t", "m" + i, null));
+        }
+        List<String> out = new ArrayList<>();
+        fr.flush("trace", now + 10, e -> out.add(e.message));
+        assertEquals(List.of("m1", "m2"), out, "a ring of two keeps the latest two");
+        assertEquals(0, fr.bufferedBytes());
+    }
+}
@@ -0,0 +1,87 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogMetricsRoutingTest {
+    private StubOtlpCollector own;
+    private StubOtlpCollector tenant;
+
+    @BeforeEach
+    void startCollectors() throws IOException {
+        own = StubOtlpCollector.start();
+        tenant = StubOtlpCollector.start();
+    }
+
+    @AfterEach
+    void stopCollectors() {
+        own.close();
+        tenant.close();
+    }
+
+    @Test
+    void eachDestinationGetsOnlyItsOwnCountsWithItsOwnKey() throws InterruptedException {
+        LogSink sink = new LogSink(config(own).setApiKey("own-key").setLogMetrics(true)
+                .setRegisterShutdownHook(false).build());
+        LogSinkRoute search = LogSinkRoute.builder().setServiceName("search").build(); // the sink's destination
+        LogSinkRoute billing = LogSinkRoute.builder().setServiceName("billing")
+                .setOtlpEndpoint(tenant.endpoint()).setApiKey("tenant-key").build();
+        for (int i = 0; i < 3; i++) assertTrue(sink.log(record(i)));
+        for (int i = 0; i < 2; i++) assertTrue(sink.log(search, record(i)));
+        for (int i = 0; i < 4; i++) assertTrue(sink.log(billing, record(i)));
+        assertTrue(own.awaitRecords(5, Duration.ofSeconds(5)), "delivered " + own.recordCount());
+        assertTrue(tenant.awaitRecords(4, Duration.ofSeconds(5)), "delivered " + tenant.recordCount());
+
+        assertTrue(sink.shutdown(5, TimeUnit.SECONDS).isComplete());
+
+        assertEquals(Map.of("logsink-test", 3L, "search", 2L), countsByService(own.lastMetrics()));
+        assertEquals("own-key", own.lastMetricsApiKey());
+        assertEquals(Map.of("billing", 4L), countsByService(tenant.lastMetrics()));
+        assertEquals("tenant-key", tenant.lastMetricsApiKey());
+    }
+
+    @Test
+    void aRouteWithOnlyItsOwnKeyPostsToTheSinksMetricsEndpointWithThatKey() {
+        LogSink sink = new LogSink(config(own).setApiKey("own-key").setLogMetrics(true)
+                .setRegisterShutdownHook(false).build());
+        LogSinkRoute billing = LogSinkRoute.builder().setServiceName("billing").setApiKey("tenant-key").build();
+        assertTrue(sink.log(billing, record(0)));
+
+        assertTrue(sink.shutdown(5, TimeUnit.SECONDS).isComplete());
+
+        assertEquals(1, own.metricsRequestCount(), "the sink's own counts are empty and not posted");
+        assertEquals(Map.of("billing", 1L), countsByService(own.lastMetrics()));
+        assertEquals("tenant-key", own.lastMetricsApiKey());
+        assertEquals(0, tenant.metricsRequestCount());
+    }
+
+    private static Map<String, Long> countsByService(ExportMetricsServiceRequest req) {
+        assertNotNull(req, "no metrics arrived");
+        Map<String, Long> counts = new HashMap<>();
+        for (ResourceMetrics rm : req.getResourceMetricsList()) {
+            String service = rm.getResource().getAttributesList().stream()
+                    .filter(kv -> kv.getKey().equals("service.name"))
+                    .map(KeyValue::getValue).map(v -> v.getStringValue()).findFirst().orElse("");
+            long n = 0;
+            for (NumberDataPoint dp : rm.getScopeMetrics(0).getMetrics(0).getSum().getDataPointsList()) n += dp.getAsInt();
+            counts.merge(service, n, Long::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,105 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSinkBatcherTest {
+    private StubOtlpCollector collector;
+    private LogSinkBatcher batcher;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start()
+                .trackSequence(r -> "all", r -> r.getAttributes(0).getValue().getIntValue());
+    }
+
+    @AfterEach
+    void stop() {
+        if (batcher != null) batcher.shutdown(5, TimeUnit.SECONDS);
+        collector.close();
+    }
+
+    static LogSinkConfig.Builder config(StubOtlpCollector collector) {
+        return LogSinkConfig.builder()
+                .setOtlpEndpoint(collector.endpoint())
+                .setAppName("logsink-test");
+    }
+
+    static LogRecord record(long seq) {
+        return LogRecord.newBuilder()
+                .addAttributes(KeyValue.newBuilder().setKey("seq").setValue(AnyValue.newBuilder().setIntValue(seq)))
+                .setBody(AnyValue.newBuilder().setStringValue("record " + seq))
+                .build();
+    }
+
+    private LogSinkBatcher start(LogSinkConfig config) {
+        batcher = new LogSinkBatcher(config, new LogSinkExporter(config));
+        return batcher;
+    }
+
+    @Test
+    void deliversEveryAcceptedRecordOnce() throws InterruptedException {
+        int n = 5_000;
+        LogSinkBatcher b = start(config(collector).setQueueSize(n).build());
+        for (int i = 0; i < n; i++) {
+            assertTrue(b.add(record(i)), "record " + i + " refused with room in the queue");
+        }
+        b.flush();
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(10)), "delivered " + collector.recordCount());
+        assertEquals(n, collector.recordCount());
+        assertEquals(0, collector.missingRecords());
+        assertEquals(0, collector.duplicateRecords());
+        Await.until("every export is counted", () -> b.deliveredRecords() == n, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void refusedRecordsAreExactlyTheOnesNotDelivered() throws InterruptedException {
+        collector.setLatency(Duration.ofMillis(50));
+        LogSinkBatcher b = start(config(collector).setQueueSize(64).setMaxBatchSize(16).build());
+
+        int n = 20_000;
+        long accepted = 0;
+        for (int i = 0; i < n; i++) {
+            if (b.add(record(i))) accepted++;
+        }
+        b.flush();
+        collector.awaitQuiescence(Duration.ofMillis(500), Duration.ofSeconds(30));
+
+        assertTrue(accepted < n, "a 64-slot queue behind a 50 ms collector never filled");
+        assertEquals(accepted, collector.recordCount(), "every accepted record arrives, and nothing else");
+        assertEquals(0, collector.duplicateRecords());
+        if (b.exportsInOrder()) assertEquals(0, collector.reorderedRecords()); // Java 21 exports overlap
+    }
+
+    @Test
+    void oneExportInFlightKeepsOrder() throws InterruptedException {
+        collector.setLatency(Duration.ofMillis(5));
+        LogSinkBatcher b = start(config(collector).setQueueSize(4096).setMaxBatchSize(16).setMaxInFlightExports(1).build());
+        assertTrue(b.exportsInOrder());
+        int n = 2_000;
+        for (int i = 0; i < n; i++) assertTrue(b.add(record(i)));
+        b.flush();
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(20)), "delivered " + collector.recordCount());
+        assertEquals(0, collector.reorderedRecords());
+    }
+
+    @Test
+    void addAfterShutdownIsRefused() {
+        LogSinkBatcher b = start(config(collector).build());
+        b.shutdown(5, TimeUnit.SECONDS);
+        assertFalse(b.add(record(0)));
+    }
+}
@@ -0,0 +1,118 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSinkControlTest {
+    private StubOtlpCollector collector;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start()
+                .trackSequence(r -> r.getAttributes(1).getValue().getStringValue(),
+                        r -> r.getAttributes(0).getValue().getIntValue());
+    }
+
+    @AfterEach
+    void stop() {
+        collector.close();
+    }
+
+    private static LogRecord record(String producer, long seq) {
+        return LogRecord.newBuilder()
+                .addAttributes(KeyValue.newBuilder().setKey("seq").setValue(AnyValue.newBuilder().setIntValue(seq)))
+                .addAttributes(KeyValue.newBuilder().setKey("producer").setValue(AnyValue.newBuilder().setStringValue(producer)))
+                .setBody(AnyValue.newBuilder().setStringValue("record " + seq))
+                .build();
+    }
+
+    private static int registered(String appName) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.queryNames(new ObjectName(LogSinkControl.DOMAIN + ":type=LogSink,name="
+                + ObjectName.quote(appName) + ",*"), null).size();
+    }
+
+    @Test
+    void registersOnlyWhenEnabledAndUnderDistinctNames() throws Exception {
+        String app = "jmx-test";
+        LogSink off = new LogSink(LogSinkBatcherTest.config(collector).setAppName(app).build());
+        assertEquals(0, registered(app), "JMX registration is opt-in");
+        off.shutdown(1, TimeUnit.SECONDS);
+
+        LogSink first = new LogSink(LogSinkBatcherTest.config(collector).setAppName(app).setJmxEnabled(true).build());
+        LogSink second = new LogSink(LogSinkBatcherTest.config(collector).setAppName(app).setJmxEnabled(true).build());
+        assertEquals(2, registered(app));
+        first.shutdown(1, TimeUnit.SECONDS);
+        second.shutdown(1, TimeUnit.SECONDS);
+        assertEquals(0, registered(app));
+    }
+
+    @ParameterizedTest(name = "ingestStripes={0}")
+    @ValueSource(ints = {0, 2})
+    void resizingSixTimesUnderLoadLosesAndReordersNothing(int stripes) throws Exception {
+        LogSinkConfig config = LogSinkBatcherTest.config(collector)
+                .setQueueSize(4096)
+                .setIngestStripes(stripes)
+                .build();
+        LogSinkBatcher b = new LogSinkBatcher(config, new LogSinkExporter(config));
+        AtomicBoolean producing = new AtomicBoolean(true);
+        AtomicLong accepted = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            String name = "producer-" + p;
+            Thread t = new Thread(() -> {
+                for (long seq = 0; producing.get(); seq++) {
+                    if (b.add(record(name, seq))) {
+                        accepted.incrementAndGet();
+                    } else {
+                        LockSupport.parkNanos(100_000L); // full: give the consumer the CPU
+                    }
+                }
+            }, name);
+            t.start();
+            producers.add(t);
+        }
+        try {
+            for (int size : new int[]{1024, 16384, 256, 8192, 512, 4096}) {
+                Thread.sleep(100);
+                assertTrue(b.resize(size));
+                assertEquals(size, b.queueSize());
+            }
+            Thread.sleep(100);
+        } finally {
+            producing.set(false);
+            for (Thread t : producers) t.join();
+        }
+        b.flush();
+        // before shutdown, whose drain exports in parallel and so does not keep order
+        assertTrue(collector.awaitRecords(accepted.get(), Duration.ofSeconds(30)), "delivered " + collector.recordCount());
+        DrainResult drained = b.shutdown(10, TimeUnit.SECONDS);
+        assertTrue(drained.isComplete(), drained.toString());
+
+        assertTrue(accepted.get() > 10_000, "producers barely ran: " + accepted.get());
+        assertEquals(accepted.get(), collector.recordCount(), "every accepted record arrives, and nothing else");
+        assertEquals(0, collector.duplicateRecords());
+        assertEquals(0, collector.reorderedRecords());
+    }
+}
@@ -0,0 +1,198 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSinkEventTest {
+    private static final SeverityNumber INFO = SeverityNumber.SEVERITY_NUMBER_INFO;
+
+    private StubOtlpCollector collector;
+    private LogSink sink;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start().setRetainRecords(true);
+    }
+
+    @AfterEach
+    void stop() {
+        if (sink != null) sink.shutdown(5, TimeUnit.SECONDS);
+        collector.close();
+    }
+
+    private LogSink start(LogSinkConfig.Builder config) {
+        sink = new LogSink(config.setRegisterShutdownHook(false).build());
+        return sink;
+    }
+
+    private static Map<String, AnyValue> attributes(LogRecord r) {
+        Map<String, AnyValue> out = new HashMap<>();
+        for (KeyValue kv : r.getAttributesList()) assertNull(out.put(kv.getKey(), kv.getValue()), "duplicate " + kv.getKey());
+        return out;
+    }
+
+    @Test
+    void typedAttributesArriveIntact() throws InterruptedException {
+        LogSink s = start(config(collector));
+        byte[] id = {0, 1, (byte) 0xff, 42};
+        StringBuilder customer = new StringBuilder("ada");
+        assertTrue(s.event(SeverityNumber.SEVERITY_NUMBER_WARN)
+                .time(1_700_000_000_000_000_000L)
+                .body("order placed")
+                .attr("order.count", Long.MIN_VALUE)
+                .attr("amount", 12.5)
+                .attr("paid", true)
+                .attr("id", id)
+                .attr("customer", customer)
+                .attr("missing", (String) null)
+                .emit());
+        id[0] = 9; // copied when set
+        customer.setLength(0);
+
+        assertTrue(collector.awaitRecords(1, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+        LogRecord r = collector.records().get(0);
+        assertEquals(1_700_000_000_000_000_000L, r.getTimeUnixNano());
+        assertTrue(r.getObservedTimeUnixNano() > 0);
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_WARN, r.getSeverityNumber());
+        assertEquals("WARN", r.getSeverityText());
+        assertEquals("order placed", r.getBody().getStringValue());
+        Map<String, AnyValue> a = attributes(r);
+        assertEquals(5, a.size(), a.toString());
+        assertEquals(Long.MIN_VALUE, a.get("order.count").getIntValue());
+        assertEquals(12.5, a.get("amount").getDoubleValue());
+        assertTrue(a.get("paid").getBoolValue());
+        assertArrayEquals(new byte[]{0, 1, (byte) 0xff, 42}, a.get("id").getBytesValue().toByteArray());
+        assertEquals("ada", a.get("customer").getStringValue());
+    }
+
+    @Test
+    void anEventFollowsItsRoute() throws Exception {
+        try (StubOtlpCollector tenant = StubOtlpCollector.start()) {
+            LogSink s = start(config(collector));
+            LogSinkRoute billing = LogSinkRoute.builder().setServiceName("billing").setOtlpEndpoint(tenant.endpoint()).build();
+            assertTrue(s.event(INFO).body("charged").route(billing).emit());
+            assertTrue(s.event(INFO).body("own").emit()); // the route does not stick to the reused event
+
+            assertTrue(tenant.awaitRecords(1, Duration.ofSeconds(5)), "delivered " + tenant.recordCount());
+            assertTrue(collector.awaitRecords(1, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+            assertEquals(Map.of("billing", 1L), tenant.recordsByService());
+            assertEquals(Map.of("logsink-test", 1L), collector.recordsByService());
+        }
+    }
+
+    @Test
+    void filteredAndRefusedEventsLeaveNothingBehind() throws InterruptedException {
+        LogSink s = start(config(collector).setMaxQueuedBytes(4096));
+        s.batcher().updateSeverityFilter(f -> f.withMinSeverity("WARN"));
+
+        assertTrue(s.event(INFO).attr("filtered", 1L).emit(), "a filtered event counts as logged");
+        assertEquals(1, s.batcher().filteredRecords());
+        assertFalse(s.event(SeverityNumber.SEVERITY_NUMBER_ERROR).body("x".repeat(8192)).attr("refused", 1L).emit(),
+                "an event over the memory budget is refused");
+        assertEquals(0, s.batcher().memoryBudget().usedBytes(), "the refused event kept its charge");
+
+        assertTrue(s.event(SeverityNumber.SEVERITY_NUMBER_ERROR).body("kept").attr("kept", 1L).emit());
+        assertTrue(collector.awaitRecords(1, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+        LogRecord r = collector.records().get(0);
+        assertEquals("kept", r.getBody().getStringValue());
+        assertEquals(Map.of("kept", AnyValue.newBuilder().setIntValue(1).build()), attributes(r));
+        Await.until("the budget was released", () -> s.batcher().memoryBudget().usedBytes() == 0, Duration.ofSeconds(5));
+        assertEquals(1, collector.recordCount());
+    }
+
+    @Test
+    void anEventStartedWhileBuildingAnotherLeavesItIntact() throws InterruptedException {
+        LogSink s = start(config(collector));
+        LogSinkEvent outer = s.event(INFO).attr("outer", 1L);
+        assertTrue(s.event(INFO).attr("inner", 2L).emit());
+        assertTrue(outer.attr("after", 3L).emit());
+
+        assertTrue(collector.awaitRecords(2, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+        List<Map<String, AnyValue>> got = new ArrayList<>();
+        for (LogRecord r : collector.records()) got.add(attributes(r));
+        assertTrue(got.contains(Map.of("inner", AnyValue.newBuilder().setIntValue(2).build())), got.toString());
+        assertTrue(got.contains(Map.of("outer", AnyValue.newBuilder().setIntValue(1).build(),
+                "after", AnyValue.newBuilder().setIntValue(3).build())), got.toString());
+    }
+
+    @Test
+    void stripedIngestDeliversEveryEventInOrder() throws InterruptedException {
+        collector.trackSequence(r -> "all", r -> r.getAttributes(0).getValue().getIntValue());
+        LogSink s = start(config(collector).setIngestStripes(2).setQueueSize(65_536));
+        int n = 1_000; // each event takes a whole ring slot, which holds a chunk of 64 records otherwise
+        for (int i = 0; i < n; i++) assertTrue(s.event(INFO).attr("seq", i).body("event").emit());
+        s.flush();
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(10)), "delivered " + collector.recordCount());
+        assertEquals(0, collector.missingRecords());
+        assertEquals(0, collector.reorderedRecords());
+    }
+
+    @Test
+    void concurrentEmittersNeverSeeEachOthersValues() throws InterruptedException {
+        LogSink s = start(config(collector).setQueueSize(65_536));
+        int threads = 4;
+        int perThread = 5_000;
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger refused = new AtomicInteger();
+        List<Thread> emitters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread th = new Thread(() -> {
+                StringBuilder name = new StringBuilder();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    name.setLength(0);
+                    name.append("t").append(thread);
+                    boolean ok = s.event(INFO)
+                            .attr("thread", name)
+                            .attr("seq", i)
+                            .attr("check", thread * 1_000_000L + i)
+                            .attr("even", i % 2 == 0)
+                            .body(name)
+                            .emit();
+                    if (!ok) refused.incrementAndGet();
+                }
+            });
+            th.start();
+            emitters.add(th);
+        }
+        go.countDown();
+        for (Thread th : emitters) th.join();
+        assertEquals(0, refused.get());
+
+        assertTrue(collector.awaitRecords(threads * perThread, Duration.ofSeconds(20)), "delivered " + collector.recordCount());
+        for (LogRecord r : collector.records()) {
+            Map<String, AnyValue> a = attributes(r);
+            assertEquals(4, a.size(), a.toString());
+            int thread = Integer.parseInt(a.get("thread").getStringValue().substring(1));
+            long seq = a.get("seq").getIntValue();
+            assertEquals(thread * 1_000_000L + seq, a.get("check").getIntValue(), "mixed attributes: " + a);
+            assertEquals(seq % 2 == 0, a.get("even").getBoolValue(), "mixed attributes: " + a);
+            assertEquals("t" + thread, r.getBody().getStringValue());
+        }
+    }
+}
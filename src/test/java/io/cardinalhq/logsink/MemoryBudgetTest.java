@@ -0,0 +1,89 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class MemoryBudgetTest {
+
+    private static LogRecord record(SeverityNumber severity, int bodyChars) {
+        return LogRecord.newBuilder()
+                .setSeverityNumber(severity)
+                .setBody(AnyValue.newBuilder().setStringValue("b".repeat(bodyChars)))
+                .build();
+    }
+
+    @Test
+    void offByDefault() throws Exception {
+        try (StubOtlpCollector collector = StubOtlpCollector.start()) {
+            LogSinkConfig cfg = LogSinkBatcherTest.config(collector).build();
+            assertEquals(0, cfg.getMaxQueuedBytes());
+            assertEquals(0, cfg.getHeapPressureThreshold());
+            LogSinkBatcher b = new LogSinkBatcher(cfg, new LogSinkExporter(cfg));
+            try {
+                assertNull(b.memoryBudget());
+            } finally {
+                b.shutdown(1, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    void shedsLowSeveritiesFirst() {
+        LogRecord info = record(SeverityNumber.SEVERITY_NUMBER_INFO, 100);
+        long w = MemoryBudget.weight(info);
+        MemoryBudget budget = new MemoryBudget(8 * w, 0, 64);
+
+        int admitted = 0;
+        while (budget.admit(info) != null) admitted++;
+        assertEquals(6, admitted, "records below WARN stop at three quarters");
+        assertEquals(1, budget.shedRecords());
+
+        LogRecord warn = record(SeverityNumber.SEVERITY_NUMBER_WARN, 100);
+        assertNotNull(budget.admit(warn));
+        assertNotNull(budget.admit(warn));
+        assertNull(budget.admit(warn), "WARN is refused only once the budget is full");
+        assertEquals(1, budget.rejectedRecords());
+
+        budget.release(warn);
+        assertNotNull(budget.admit(warn));
+    }
+
+    @Test
+    void closeResetsThresholdsAndRemovesTheListener() throws Exception {
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP && p.isCollectionUsageThresholdSupported()
+                        && p.getUsage().getMax() > 0 && p.getCollectionUsageThreshold() == 0)
+                .collect(Collectors.toList());
+        assumeFalse(pools.isEmpty(), "no heap pool takes collection usage thresholds");
+
+        MemoryBudget first = new MemoryBudget(0, 0.9, 64);
+        MemoryBudget second = new MemoryBudget(0, 0.9, 64);
+        for (MemoryPoolMXBean p : pools) assertTrue(p.getCollectionUsageThreshold() > 0, p.getName());
+
+        first.close();
+        for (MemoryPoolMXBean p : pools) {
+            assertTrue(p.getCollectionUsageThreshold() > 0, "still used by the second budget: " + p.getName());
+        }
+        second.close();
+        for (MemoryPoolMXBean p : pools) assertEquals(0, p.getCollectionUsageThreshold(), p.getName());
+
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        assertThrows(ListenerNotFoundException.class, () -> emitter.removeNotificationListener(first));
+        assertThrows(ListenerNotFoundException.class, () -> emitter.removeNotificationListener(second));
+    }
+}
@@ -0,0 +1,131 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingTest {
+    private StubOtlpCollector own;
+    private StubOtlpCollector tenant;
+    private LogSinkBatcher batcher;
+
+    @BeforeEach
+    void startCollectors() throws IOException {
+        own = StubOtlpCollector.start();
+        tenant = StubOtlpCollector.start();
+    }
+
+    @AfterEach
+    void stop() {
+        if (batcher != null) batcher.shutdown(5, TimeUnit.SECONDS);
+        own.close();
+        tenant.close();
+    }
+
+    private LogSinkBatcher start(LogSinkConfig config) {
+        batcher = new LogSinkBatcher(config, new LogSinkExporter(config));
+        return batcher;
+    }
+
+    private static LogSinkRoute route(String service) {
+        return LogSinkRoute.builder().setServiceName(service).build();
+    }
+
+    @Test
+    void eachRouteReachesItsEndpointWithItsResourceAndKey() throws InterruptedException {
+        LogSinkBatcher b = start(config(own).setApiKey("own-key").build());
+        LogSinkRoute search = route("search");
+        LogSinkRoute billing = LogSinkRoute.builder().setServiceName("billing")
+                .setOtlpEndpoint(tenant.endpoint()).setApiKey("tenant-key").build();
+        for (int i = 0; i < 3; i++) assertTrue(b.add(record(i)));
+        for (int i = 0; i < 2; i++) assertTrue(b.add(record(i), search));
+        for (int i = 0; i < 4; i++) assertTrue(b.add(record(i), billing));
+
+        assertTrue(own.awaitRecords(5, Duration.ofSeconds(5)), "delivered " + own.recordCount());
+        assertTrue(tenant.awaitRecords(4, Duration.ofSeconds(5)), "delivered " + tenant.recordCount());
+        assertEquals(Map.of("logsink-test", 3L, "search", 2L), own.recordsByService());
+        assertEquals(Map.of("own-key", 5L), own.recordsByApiKey());
+        assertEquals(Map.of("billing", 4L), tenant.recordsByService());
+        assertEquals(Map.of("tenant-key", 4L), tenant.recordsByApiKey());
+    }
+
+    @Test
+    void lanesBoundForOneDestinationShareARequest() throws InterruptedException {
+        own.setLatency(Duration.ofMillis(200));
+        LogSinkBatcher b = start(config(own).build());
+        assertTrue(b.add(record(0)));
+        Await.until("the first export reached the collector", () -> b.inFlightExportRecords() == 1, Duration.ofSeconds(5));
+
+        // held back while the first export runs, then sent together
+        assertTrue(b.add(record(1)));
+        assertTrue(b.add(record(2), route("search")));
+        assertTrue(b.add(record(3), route("payments")));
+
+        assertTrue(own.awaitRecords(4, Duration.ofSeconds(5)), "delivered " + own.recordCount());
+        assertEquals(3, own.maxResourceLogsPerRequest());
+        assertEquals(2, own.requestCount());
+    }
+
+    @Test
+    void idleRoutedLanesArePruned() throws InterruptedException {
+        LogSinkBatcher b = start(config(own).build());
+        assertTrue(b.add(record(0), route("search")));
+        assertTrue(b.add(record(1), route("payments")));
+        assertTrue(own.awaitRecords(2, Duration.ofSeconds(5)), "delivered " + own.recordCount());
+        assertEquals(2, b.routedLanes());
+
+        Await.until("idle lanes pruned", () -> b.routedLanes() == 0, Duration.ofSeconds(5));
+        assertTrue(b.add(record(2), route("search")));
+        assertTrue(own.awaitRecords(3, Duration.ofSeconds(5)), "a pruned route could not come back");
+        assertEquals(Map.of("search", 2L, "payments", 1L), own.recordsByService());
+    }
+
+    @Test
+    void theAppenderRoutesByContextAndFallsBackPastMaxRoutes() throws InterruptedException {
+        LogSinkAppender a = LogSinkAppender.createAppender("routing-test", 1000, 100, false, false, false, 5000,
+                0, 5, 0, 0, false, null, null,
+                false, "INFO", "thread", 30_000, 256, 8L << 20,
+                "otlp", true, 2, 16, 1000, 0, false, null, 64 << 20, null, null);
+        a.start();
+        try {
+            a.append(event("first", own.endpoint(), "app"));              // creates the sink; the default route
+            a.append(event("billing", own.endpoint(), "billing"));        // route 1
+            a.append(event("payments", tenant.endpoint(), "payments"));   // route 2, another endpoint
+            a.append(event("search", own.endpoint(), "search"));          // past maxRoutes: the default route
+            a.append(event("billing again", own.endpoint(), "billing"));  // a cache hit
+
+            assertTrue(own.awaitRecords(4, Duration.ofSeconds(5)), "delivered " + own.recordCount());
+            assertTrue(tenant.awaitRecords(1, Duration.ofSeconds(5)), "delivered " + tenant.recordCount());
+            assertEquals(Map.of("app", 2L, "billing", 2L), own.recordsByService());
+            assertEquals(Map.of("payments", 1L), tenant.recordsByService());
+        } finally {
+            a.stop(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Log4jLogEvent event(String message, String endpoint, String service) {
+        SortedArrayStringMap ctx = new SortedArrayStringMap();
+        ctx.putValue("OTEL_EXPORTER_OTLP_ENDPOINT", endpoint);
+        ctx.putValue("OTEL_SERVICE_NAME", service);
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("routing-test")
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage(message))
+                .setContextData(ctx)
+                .build();
+    }
+}
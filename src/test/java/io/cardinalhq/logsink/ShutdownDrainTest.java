@@ -0,0 +1,90 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShutdownDrainTest {
+    private StubOtlpCollector collector;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start();
+    }
+
+    @AfterEach
+    void stopCollector() {
+        collector.close();
+    }
+
+    @Test
+    void deliversEverythingQueuedWithinTheDeadline() {
+        collector.setLatency(Duration.ofMillis(20));
+        LogSinkConfig cfg = config(collector).setQueueSize(8192).setMaxBatchSize(100).build();
+        LogSinkBatcher b = new LogSinkBatcher(cfg, new LogSinkExporter(cfg));
+        int n = 3_000;
+        for (int i = 0; i < n; i++) assertTrue(b.add(record(i)));
+
+        DrainResult r = b.shutdown(20, TimeUnit.SECONDS);
+
+        assertTrue(r.isComplete(), r.toString());
+        assertTrue(r.getDelivered() > 0 && r.getDelivered() <= n, r.toString());
+        assertEquals(n, collector.recordCount());
+        assertEquals(n, b.deliveredRecords());
+    }
+
+    @Test
+    void abandonsAndCountsWhatTheDeadlineLeavesBehind() {
+        collector.setLatency(Duration.ofSeconds(2));
+        LogSinkConfig cfg = config(collector).setQueueSize(8192).setMaxBatchSize(100).build();
+        LogSinkBatcher b = new LogSinkBatcher(cfg, new LogSinkExporter(cfg));
+        int n = 1_000;
+        for (int i = 0; i < n; i++) assertTrue(b.add(record(i)));
+
+        DrainResult r = b.shutdown(300, TimeUnit.MILLISECONDS);
+
+        assertFalse(r.isComplete(), r.toString());
+        assertTrue(r.getElapsedMillis() < 1_500, "the drain overran its deadline: " + r);
+        assertEquals(n, b.deliveredRecords() + r.getAbandoned(), "every record is delivered or counted as abandoned: " + r);
+        assertSame(r, b.shutdown(1, TimeUnit.SECONDS), "shutdown is idempotent");
+    }
+
+    @Test
+    void theFinalMetricsExportGetsOnlyWhatTheDrainLeavesOfTheDeadline() throws InterruptedException {
+        collector.setMetricsLatency(Duration.ofSeconds(5));
+        LogSink sink = new LogSink(config(collector).setLogMetrics(true).setRegisterShutdownHook(false).build());
+        int n = 100;
+        for (int i = 0; i < n; i++) assertTrue(sink.log(record(i)));
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(5)), "delivered " + collector.recordCount());
+
+        long start = System.nanoTime();
+        DrainResult r = sink.shutdown(500, TimeUnit.MILLISECONDS); // nearly all of it left for the stalled metrics export
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(r.isComplete(), r.toString());
+        assertTrue(millis < 1_500, "the metrics export overran the deadline: shutdown took " + millis + " ms");
+    }
+
+    @Test
+    void skipsTheFinalMetricsExportWhenTheDrainUsedUpTheDeadline() {
+        collector.setLatency(Duration.ofSeconds(2)).setMetricsLatency(Duration.ofSeconds(5));
+        LogSink sink = new LogSink(config(collector).setLogMetrics(true).setRegisterShutdownHook(false).build());
+        for (int i = 0; i < 1_000; i++) assertTrue(sink.log(record(i)));
+
+        long start = System.nanoTime();
+        DrainResult r = sink.shutdown(300, TimeUnit.MILLISECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertFalse(r.isComplete(), r.toString());
+        assertTrue(millis < 1_500, "shutdown took " + millis + " ms past a 300 ms deadline");
+    }
+}
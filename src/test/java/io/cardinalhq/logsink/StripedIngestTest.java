@@ -0,0 +1,61 @@
+package io.cardinalhq.logsink;
+
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static io.cardinalhq.logsink.LogSinkBatcherTest.config;
+import static io.cardinalhq.logsink.LogSinkBatcherTest.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedIngestTest {
+    private StubOtlpCollector collector;
+
+    @BeforeEach
+    void startCollector() throws IOException {
+        collector = StubOtlpCollector.start()
+                .trackSequence(r -> "all", r -> r.getAttributes(0).getValue().getIntValue());
+    }
+
+    @AfterEach
+    void stopCollector() {
+        collector.close();
+    }
+
+    @Test
+    void deliversEveryRecordOfOneThreadInOrder() throws InterruptedException {
+        LogSinkConfig cfg = config(collector).setIngestStripes(4).setQueueSize(16_384).build();
+        LogSinkBatcher b = new LogSinkBatcher(cfg, new LogSinkExporter(cfg));
+        int n = 10_000;
+        for (int i = 0; i < n; i++) assertTrue(b.add(record(i)));
+        b.flush();
+
+        assertTrue(collector.awaitRecords(n, Duration.ofSeconds(10)), "delivered " + collector.recordCount());
+        assertEquals(0, collector.missingRecords());
+        assertEquals(0, collector.reorderedRecords());
+        b.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shutdownWithAFullRingKeepsTheConsumerDraining() {
+        collector.setLatency(Duration.ofMillis(5));
+        LogSinkConfig cfg = config(collector).setIngestStripes(1).setStripeChunkSize(8).setMaxBatchSize(100).build();
+        LogSinkBatcher b = new LogSinkBatcher(cfg, new LogSinkExporter(cfg));
+        long accepted = 0;
+        for (int i = 0; ; i++) {
+            if (!b.add(record(i))) break; // the ring is full and this stripe holds a staged chunk
+            accepted++;
+        }
+
+        DrainResult r = b.shutdown(20, TimeUnit.SECONDS);
+
+        assertTrue(r.isComplete(), "the staged chunk blocked the consumer: " + r);
+        assertEquals(accepted, collector.recordCount());
+        assertEquals(0, collector.duplicateRecords());
+    }
+}
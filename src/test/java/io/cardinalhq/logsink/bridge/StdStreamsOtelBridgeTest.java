@@ -0,0 +1,66 @@
+package io.cardinalhq.logsink.bridge;
+
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StdStreamsOtelBridgeTest {
+    private final List<LogRecord> records = new ArrayList<>();
+
+    private StdStreamsOtelBridge.LineToSinkOutputStream stream(SeverityNumber defaultSeverity, String logType) {
+        return new StdStreamsOtelBridge.LineToSinkOutputStream((line, observed) ->
+                records.add(StdStreamsOtelBridge.buildRecord(line, observed, defaultSeverity, logType)),
+                StandardCharsets.UTF_8);
+    }
+
+    private static String body(LogRecord r) {
+        return r.getBody().getStringValue();
+    }
+
+    @Test
+    void linesWithoutALevelTakeTheStreamsSeverity() {
+        StdStreamsOtelBridge.LineToSinkOutputStream err = stream(SeverityNumber.SEVERITY_NUMBER_ERROR, "proc.stderr");
+        byte[] b = "Exception in thread \"main\"\nWARN retrying\n".getBytes(StandardCharsets.UTF_8);
+        err.write(b, 0, b.length);
+
+        assertEquals(2, records.size());
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_ERROR, records.get(0).getSeverityNumber());
+        assertEquals("ERROR", records.get(0).getSeverityText());
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_WARN, records.get(1).getSeverityNumber(), "the line's own level wins");
+        assertEquals("WARN", records.get(1).getSeverityText());
+        assertEquals("stderr", records.get(1).getAttributes(1).getValue().getStringValue());
+    }
+
+    @Test
+    void multiByteCharactersSplitAcrossWritesSurvive() {
+        StdStreamsOtelBridge.LineToSinkOutputStream out = stream(SeverityNumber.SEVERITY_NUMBER_INFO, "proc.stdout");
+        byte[] b = "INFO café ☕ ready\n".getBytes(StandardCharsets.UTF_8);
+        int inE = "INFO caf".length() + 1;  // between the two bytes of é
+        int inCup = inE + " ".length() + 2; // inside the three bytes of ☕
+        out.write(b, 0, inE);
+        out.write(b, inE, inCup - inE);
+        for (int i = inCup; i < b.length; i++) out.write(b[i]); // the single-byte path too
+
+        assertEquals(1, records.size());
+        assertEquals("INFO café ☕ ready", body(records.get(0)));
+    }
+
+    @Test
+    void flushSendsAPartialLineAndSkipsBlankOnes() {
+        StdStreamsOtelBridge.LineToSinkOutputStream out = stream(SeverityNumber.SEVERITY_NUMBER_INFO, "proc.stdout");
+        byte[] b = "\n   \n\u001B[0m\r\nprompt> ".getBytes(StandardCharsets.UTF_8);
+        out.write(b, 0, b.length);
+        assertTrue(records.isEmpty(), "blank and escape-only lines are not records");
+
+        out.flush();
+        assertEquals(1, records.size());
+        assertEquals("prompt> ", body(records.get(0)));
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_INFO, records.get(0).getSeverityNumber());
+    }
+}
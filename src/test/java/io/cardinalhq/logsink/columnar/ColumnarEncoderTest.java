@@ -0,0 +1,171 @@
+package io.cardinalhq.logsink.columnar;
+
+import com.google.protobuf.ByteString;
+import io.cardinalhq.logsink.testing.ColumnarDecoder;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.common.v1.KeyValueList;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarEncoderTest {
+    private static final long SEED = 0x5eed_c01L;
+
+    /** Random requests over a small vocabulary, so dictionaries both hit and overflow. */
+    private static final class Requests {
+        final Random rnd;
+        long time = 1_700_000_000_000_000_000L;
+
+        Requests(long seed) {
+            rnd = new Random(seed);
+        }
+
+        String word(int vocabulary) {
+            return "w" + rnd.nextInt(vocabulary);
+        }
+
+        AnyValue value() {
+            AnyValue.Builder v = AnyValue.newBuilder();
+            switch (rnd.nextInt(9)) {
+                case 0: return v.build(); // VALUE_NOT_SET
+                case 1: return v.setBoolValue(rnd.nextBoolean()).build();
+                case 2: return v.setIntValue(rnd.nextLong()).build();
+                case 3: return v.setDoubleValue(rnd.nextDouble() * 1e6).build();
+                case 4: {
+                    byte[] b = new byte[rnd.nextInt(20)];
+                    rnd.nextBytes(b);
+                    return v.setBytesValue(ByteString.copyFrom(b)).build();
+                }
+                case 5: return v.setArrayValue(ArrayValue.newBuilder()
+                        .addValues(AnyValue.newBuilder().setStringValue(word(10)))
+                        .addValues(AnyValue.newBuilder().setIntValue(rnd.nextInt()))).build();
+                case 6: return v.setKvlistValue(KeyValueList.newBuilder().addValues(KeyValue.newBuilder()
+                        .setKey(word(5)).setValue(AnyValue.newBuilder().setStringValue(word(50))))).build();
+                case 7: return v.setStringValue("x".repeat(ColumnarEncoder.MAX_DICTIONARY_STRING_BYTES + 1 + rnd.nextInt(10))).build();
+                default: return v.setStringValue(word(200)).build();
+            }
+        }
+
+        LogRecord record() {
+            time += rnd.nextInt(3) == 0 ? -rnd.nextInt(1_000_000) : rnd.nextInt(5_000_000);
+            LogRecord.Builder r = LogRecord.newBuilder()
+                    .setTimeUnixNano(time)
+                    .setObservedTimeUnixNano(time + rnd.nextInt(1_000_000))
+                    .setSeverityNumberValue(rnd.nextInt(25))
+                    .setSeverityText(rnd.nextBoolean() ? "" : word(6))
+                    .setFlags(rnd.nextInt(3))
+                    .setDroppedAttributesCount(rnd.nextInt(2));
+            if (rnd.nextBoolean()) {
+                byte[] trace = new byte[16];
+                rnd.nextBytes(trace);
+                r.setTraceId(ByteString.copyFrom(trace)).setSpanId(ByteString.copyFrom(trace, 0, 8));
+            }
+            if (rnd.nextInt(10) > 0) {
+                r.setBody(rnd.nextBoolean()
+                        ? AnyValue.newBuilder().setStringValue("request " + word(300) + " took " + rnd.nextInt(100) + "ms").build()
+                        : value());
+            }
+            int attributes = rnd.nextInt(5);
+            for (int i = 0; i < attributes; i++) {
+                KeyValue.Builder kv = KeyValue.newBuilder().setKey("k" + rnd.nextInt(40));
+                if (rnd.nextInt(20) > 0) kv.setValue(value());
+                r.addAttributes(kv);
+            }
+            return r.build();
+        }
+
+        ExportLogsServiceRequest request() {
+            ExportLogsServiceRequest.Builder req = ExportLogsServiceRequest.newBuilder();
+            int resources = 1 + rnd.nextInt(3);
+            for (int i = 0; i < resources; i++) {
+                ResourceLogs.Builder rl = ResourceLogs.newBuilder().setSchemaUrl(rnd.nextBoolean() ? "" : word(3));
+                if (rnd.nextInt(8) > 0) {
+                    rl.setResource(Resource.newBuilder().addAttributes(KeyValue.newBuilder()
+                            .setKey("service.name").setValue(AnyValue.newBuilder().setStringValue("svc-" + rnd.nextInt(30)))));
+                }
+                int scopes = 1 + rnd.nextInt(2);
+                for (int j = 0; j < scopes; j++) {
+                    ScopeLogs.Builder sl = ScopeLogs.newBuilder();
+                    if (rnd.nextBoolean()) sl.setScope(InstrumentationScope.newBuilder().setName("scope-" + rnd.nextInt(4)));
+                    int n = rnd.nextInt(40);
+                    for (int k = 0; k < n; k++) sl.addLogRecords(record());
+                    rl.addScopeLogs(sl);
+                }
+                req.addResourceLogs(rl);
+            }
+            return req.build();
+        }
+    }
+
+    @Test
+    void randomRequestsRoundTripThroughOverflowingDictionaries() throws Exception {
+        for (int dictionary : new int[]{1, 8, 64, 4096}) {
+            Requests gen = new Requests(SEED + dictionary);
+            ColumnarEncoder enc = new ColumnarEncoder(dictionary);
+            ColumnarDecoder dec = new ColumnarDecoder();
+            for (int i = 0; i < 300; i++) {
+                ExportLogsServiceRequest req = gen.request();
+                assertEquals(req, dec.decode(enc.encode(req)), "dictionary " + dictionary + ", batch " + i);
+            }
+            enc.close();
+        }
+    }
+
+    @Test
+    void interleavedStreamsKeepTheirOwnState() throws Exception {
+        Requests gen = new Requests(SEED);
+        List<ColumnarEncoder> streams = new ArrayList<>();
+        for (int i = 0; i < 5; i++) streams.add(new ColumnarEncoder(16));
+        ColumnarDecoder dec = new ColumnarDecoder();
+        for (int i = 0; i < 500; i++) {
+            ColumnarEncoder enc = streams.get(gen.rnd.nextInt(streams.size()));
+            ExportLogsServiceRequest req = gen.request();
+            assertEquals(req, dec.decode(enc.encode(req)), "batch " + i);
+        }
+        assertEquals(streams.size(), dec.streamCount());
+        streams.forEach(ColumnarEncoder::close);
+    }
+
+    @Test
+    void resetAfterLostStateStartsTheStreamOver() throws Exception {
+        Requests gen = new Requests(SEED);
+        ColumnarEncoder enc = new ColumnarEncoder(32);
+        ColumnarDecoder dec = new ColumnarDecoder();
+        int conflicts = 0;
+        for (int i = 0; i < 200; i++) {
+            ExportLogsServiceRequest req = gen.request();
+            int fault = gen.rnd.nextInt(10);
+            if (fault == 0) {
+                dec = new ColumnarDecoder(); // receiver restarted: the next frame is answered with 409
+            } else if (fault == 1) {
+                enc.encode(gen.request()); // frame went unanswered: the sender starts the stream over
+                enc.reset();
+            }
+            byte[] frame = enc.encode(req);
+            ExportLogsServiceRequest got;
+            try {
+                got = dec.decode(frame); // also after a fault when a full dictionary just restarted the stream
+            } catch (ColumnarDecoder.StreamStateException e) {
+                assertEquals(0, fault, "unexpected conflict at batch " + i + ": " + e.getMessage());
+                conflicts++;
+                enc.reset();
+                got = dec.decode(enc.encode(req));
+            }
+            assertEquals(req, got, "batch " + i);
+        }
+        assertTrue(conflicts > 0, "no restart hit a stream mid-way");
+        enc.close();
+    }
+}
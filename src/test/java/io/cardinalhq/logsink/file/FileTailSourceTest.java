@@ -0,0 +1,139 @@
+package io.cardinalhq.logsink.file;
+
+import io.cardinalhq.logsink.Await;
+import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.LogSinkConfig;
+import io.cardinalhq.logsink.testing.StubOtlpCollector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTailSourceTest {
+    @TempDir
+    Path dir;
+
+    private StubOtlpCollector collector;
+    private LogSink sink;
+
+    @BeforeEach
+    void start() throws IOException {
+        collector = StubOtlpCollector.start().setRetainRecords(true);
+        sink = new LogSink(LogSinkConfig.builder()
+                .setOtlpEndpoint(collector.endpoint())
+                .setAppName("file-tail-test")
+                .setJmxEnabled(false)
+                .setQueueSize(8192)
+                .build());
+    }
+
+    @AfterEach
+    void stop() {
+        sink.shutdown(5, TimeUnit.SECONDS);
+        collector.close();
+    }
+
+    private List<String> bodies() {
+        return collector.records().stream().map(r -> r.getBody().getStringValue()).collect(Collectors.toList());
+    }
+
+    private static String repeat(char c, int n) {
+        return String.valueOf(c).repeat(n);
+    }
+
+    @Test
+    void splitsOnlyLinesLongerThanTheBuffer() throws Exception {
+        Path file = dir.resolve("long.log");
+        String longLine = repeat('x', 10_000);
+        Files.writeString(file, "short\n" + longLine + "\nafter\n" + repeat('y', 4_000) + "\nend\n");
+
+        try (FileTailSource source = FileTailSource.builder().setSink(sink).addPath(file.toString())
+                .setReadBufferBytes(4096).build()) {
+            source.readToEnd();
+        }
+        sink.flush();
+        collector.awaitQuiescence(Duration.ofMillis(300), Duration.ofSeconds(10));
+
+        List<String> bodies = bodies();
+        assertEquals("short", bodies.get(0));
+        assertEquals(List.of("after", repeat('y', 4_000), "end"), bodies.subList(bodies.size() - 3, bodies.size()),
+                "lines that fit the buffer are never split, even when they straddle a window");
+        assertEquals(longLine, String.join("", bodies.subList(1, bodies.size() - 3)));
+        for (String piece : bodies.subList(1, bodies.size() - 3)) assertTrue(piece.length() <= 4096);
+    }
+
+    @Test
+    void memoryMappedReadsDeliverEveryLine() throws Exception {
+        Path file = dir.resolve("mapped.log");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) sb.append("mapped line ").append(i).append('\n');
+        Files.writeString(file, sb);
+
+        long lines;
+        try (FileTailSource source = FileTailSource.builder().setSink(sink).addPath(file.toString())
+                .setMemoryMapped(true).setReadBufferBytes(4096).build()) {
+            lines = source.readToEnd();
+        }
+        sink.flush();
+
+        assertEquals(5_000, lines);
+        assertTrue(collector.awaitRecords(5_000, Duration.ofSeconds(10)));
+        assertEquals("mapped line 4999", bodies().get(4_999));
+    }
+
+    @Test
+    void checkpointOnlyCoversAcknowledgedLines() throws Exception {
+        Path file = dir.resolve("app.log");
+        Path checkpoint = dir.resolve("app.checkpoint");
+        Files.writeString(file, "one\ntwo\nthree\n");
+        long size = Files.size(file);
+        collector.setErrorRate(1.0, 400);
+
+        try (FileTailSource source = FileTailSource.builder().setSink(sink).addPath(file.toString())
+                .setCheckpointFile(checkpoint).setPollInterval(Duration.ofMillis(20))
+                .setCheckpointInterval(Duration.ofMillis(50)).build()) {
+            source.start();
+            Await.until("the collector refused the lines", () -> collector.rejectedRecords() >= 3, Duration.ofSeconds(10));
+            Thread.sleep(200);
+            assertEquals(0, offset(checkpoint, file), "refused lines are not checkpointed");
+
+            collector.healthy();
+            Await.until("the lines were read again and delivered", () -> collector.recordCount() >= 3, Duration.ofSeconds(10));
+            Await.until("the checkpoint caught up", () -> offset(checkpoint, file) == size, Duration.ofSeconds(10));
+        }
+        assertEquals(List.of("one", "two", "three"), bodies());
+    }
+
+    @Test
+    void refusedLinesDoNotAdvanceTheOffset() throws Exception {
+        Path file = dir.resolve("refused.log");
+        Path checkpoint = dir.resolve("refused.checkpoint");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1_000; i++) sb.append("line ").append(i).append('\n');
+        Files.writeString(file, sb);
+        sink.shutdown(5, TimeUnit.SECONDS);
+
+        try (FileTailSource source = FileTailSource.builder().setSink(sink).addPath(file.toString())
+                .setCheckpointFile(checkpoint).setReadBufferBytes(4096).build()) {
+            assertEquals(0, source.readToEnd());
+        }
+        assertEquals(0, offset(checkpoint, file));
+        assertEquals(0, collector.recordCount());
+    }
+
+    private static long offset(Path checkpoint, Path file) {
+        FileCheckpoints.Entry e = FileCheckpoints.load(checkpoint).get(file.toAbsolutePath().toString());
+        return e == null ? -1 : e.offset;
+    }
+}
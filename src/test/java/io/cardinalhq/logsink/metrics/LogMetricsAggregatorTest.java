@@ -0,0 +1,93 @@
+package io.cardinalhq.logsink.metrics;
+
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.resource.v1.Resource;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogMetricsAggregatorTest {
+
+    private static Resource service(String name) {
+        return Resource.newBuilder().addAttributes(KeyValue.newBuilder().setKey("service.name")
+                .setValue(AnyValue.newBuilder().setStringValue(name))).build();
+    }
+
+    private static LogRecord withAttribute(String key, AnyValue value) {
+        return LogRecord.newBuilder().addAttributes(KeyValue.newBuilder().setKey(key).setValue(value)).build();
+    }
+
+    /** Data point value by the named attribute's value, for one resource. */
+    private static Map<String, Long> counts(ResourceMetrics rm, String attribute) {
+        Map<String, Long> out = new HashMap<>();
+        for (NumberDataPoint dp : rm.getScopeMetrics(0).getMetrics(0).getSum().getDataPointsList()) {
+            for (KeyValue kv : dp.getAttributesList()) {
+                if (kv.getKey().equals(attribute)) out.put(kv.getValue().getStringValue(), dp.getAsInt());
+            }
+        }
+        return out;
+    }
+
+    @Test
+    void nonStringDimensionsCountByTheirValue() {
+        LogMetricsAggregator agg = new LogMetricsAggregator(List.of("code"), 100);
+        agg.record(withAttribute("code", AnyValue.newBuilder().setIntValue(404).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setIntValue(404).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setIntValue(500).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setBoolValue(true).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setDoubleValue(1.5).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setBytesValue(ByteString.copyFrom(new byte[]{1, (byte) 0xab})).build()));
+        agg.record(withAttribute("code", AnyValue.newBuilder().setArrayValue(ArrayValue.newBuilder()
+                .addValues(AnyValue.newBuilder().setIntValue(1)).addValues(AnyValue.newBuilder().setStringValue("a"))).build()));
+        agg.record(LogRecord.getDefaultInstance());
+
+        Map<String, Long> counts = counts(agg.snapshot(service("own")).getResourceMetrics(0), "code");
+        assertEquals(Map.of("404", 2L, "500", 1L, "true", 1L, "1.5", 1L, "01ab", 1L, "[1,a]", 1L, "", 1L), counts);
+    }
+
+    @Test
+    void routedRecordsAreCountedUnderTheirResource() {
+        LogMetricsAggregator agg = new LogMetricsAggregator(List.of("severity"), 100);
+        Resource own = service("own");
+        Resource billing = service("billing");
+        LogRecord warn = LogRecord.newBuilder().setSeverityText("WARN").build();
+        agg.record(warn);
+        agg.record(billing, warn);
+        agg.record(billing, warn);
+
+        ExportMetricsServiceRequest req = agg.snapshot(own);
+        assertEquals(2, req.getResourceMetricsCount());
+        Map<Resource, Map<String, Long>> byResource = new HashMap<>();
+        for (ResourceMetrics rm : req.getResourceMetricsList()) byResource.put(rm.getResource(), counts(rm, "severity"));
+        assertEquals(Map.of("WARN", 1L), byResource.get(own));
+        assertEquals(Map.of("WARN", 2L), byResource.get(billing));
+    }
+
+    @Test
+    void seriesBeyondTheCapFoldIntoTheirResourcesOverflow() {
+        LogMetricsAggregator agg = new LogMetricsAggregator(List.of("k"), 1);
+        Resource billing = service("billing");
+        agg.record(withAttribute("k", AnyValue.newBuilder().setStringValue("a").build()));
+        agg.record(billing, withAttribute("k", AnyValue.newBuilder().setStringValue("b").build()));
+        agg.record(billing, withAttribute("k", AnyValue.newBuilder().setStringValue("c").build()));
+
+        assertEquals(1, agg.seriesCount());
+        assertEquals(2, agg.overflowCount());
+        ResourceMetrics routed = agg.snapshot(service("own")).getResourceMetricsList().stream()
+                .filter(rm -> rm.getResource().equals(billing)).findFirst().orElseThrow();
+        NumberDataPoint dp = routed.getScopeMetrics(0).getMetrics(0).getSum().getDataPoints(0);
+        assertEquals(2, dp.getAsInt());
+        assertEquals(LogMetricsAggregator.OVERFLOW_ATTRIBUTE, dp.getAttributes(0).getKey());
+    }
+}
@@ -0,0 +1,138 @@
+package io.cardinalhq.logsink.parse;
+
+import io.opentelemetry.proto.logs.v1.SeverityNumber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineParserTest {
+    private static final long OBSERVED = nanos("2024-04-06T12:00:00Z");
+
+    private final LineParser parser = new LineParser(StandardCharsets.UTF_8, ZoneOffset.UTC);
+
+    private static long nanos(String instant) {
+        Instant t = Instant.parse(instant);
+        return t.getEpochSecond() * 1_000_000_000L + t.getNano();
+    }
+
+    private boolean parse(String line) {
+        return parse(parser, line, OBSERVED);
+    }
+
+    private static boolean parse(LineParser p, String line, long observed) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        return p.parse(b, 0, b.length, observed);
+    }
+
+    @Test
+    void stripsEscapesAndCarriageReturnsInOnePass() {
+        assertTrue(parse("\u001B[1;31mERROR\u001B[0m disk \u001B]0;title\u0007full\r"));
+        assertEquals("ERROR disk full", parser.body());
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_ERROR, parser.severity());
+
+        String tail = "x".repeat(200);
+        assertTrue(parse("INFO " + tail + "\u001B[32m!\u001B[0m" + tail));
+        assertEquals("INFO " + tail + "!" + tail, parser.body(), "escapes past the scanned prefix are stripped too");
+    }
+
+    @Test
+    void dropsEscapesCutOffAtTheEndOfTheLine() {
+        assertTrue(parse("WARN almost done \u001B[3"));
+        assertEquals("WARN almost done ", parser.body());
+        assertTrue(parse("WARN osc \u001B]0;never terminated"));
+        assertEquals("WARN osc ", parser.body());
+        assertTrue(parse("WARN lone escape \u001B"));
+        assertEquals("WARN lone escape ", parser.body());
+        assertTrue(parse("x".repeat(150) + "\u001B[1"));
+        assertEquals("x".repeat(150), parser.body());
+
+        assertFalse(parse("\u001B[2K\r  \u001B["), "nothing but escapes and blanks is skipped");
+    }
+
+    @Test
+    void findsLevelTokensOnlyAsWholeWordsInThePrefix() {
+        assertTrue(parse("[main] WARNING cache cold"));
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_WARN, parser.severity());
+        assertEquals("WARN", parser.severityText());
+
+        assertTrue(parse("INFORMATION is not a level, nor is xINFO"));
+        assertNull(parser.severity());
+
+        assertTrue(parse("x".repeat(91) + " INFO inside the window"));
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_INFO, parser.severity());
+
+        assertTrue(parse("x".repeat(100) + " ERROR beyond the window"));
+        assertNull(parser.severity(), "message text is not scanned for levels");
+    }
+
+    @Test
+    void readsDateTimeWithComma() {
+        assertTrue(parse("[2024-04-06 00:57:59,071] INFO [KafkaServer id=0] started"));
+        assertTrue(parser.hasTimestamp());
+        assertEquals(nanos("2024-04-06T00:57:59.071Z"), parser.timeUnixNano());
+        assertEquals(SeverityNumber.SEVERITY_NUMBER_INFO, parser.severity());
+    }
+
+    @Test
+    void readsIsoTimestampsWithOffsets() {
+        assertTrue(parse("2024-04-06T02:57:59.5+02:00 DEBUG tick"));
+        assertEquals(nanos("2024-04-06T00:57:59.500Z"), parser.timeUnixNano());
+        assertTrue(parse("2024-04-06T00:57:59.123456789Z tick"));
+        assertEquals(nanos("2024-04-06T00:57:59.123456789Z"), parser.timeUnixNano());
+        assertTrue(parse("2024-04-05T20:57:59-0400 tick"));
+        assertEquals(nanos("2024-04-06T00:57:59Z"), parser.timeUnixNano());
+    }
+
+    @Test
+    void readsLocalTimestampsInTheParsersZone() {
+        LineParser paris = new LineParser(StandardCharsets.UTF_8, ZoneId.of("Europe/Paris"));
+        assertTrue(parse(paris, "2024-07-01 12:00:00 INFO summer", OBSERVED));
+        assertEquals(nanos("2024-07-01T10:00:00Z"), paris.timeUnixNano());
+        assertTrue(parse(paris, "2024-01-15 12:00:00 INFO winter", OBSERVED));
+        assertEquals(nanos("2024-01-15T11:00:00Z"), paris.timeUnixNano());
+    }
+
+    @Test
+    void datesTimeOnlyStampsByTheCaptureTime() {
+        assertTrue(parse("11:59:58.250 WARN late"));
+        assertEquals(nanos("2024-04-06T11:59:58.250Z"), parser.timeUnixNano());
+    }
+
+    @Test
+    void datesTimeOnlyStampsAcrossMidnight() {
+        long justAfterMidnight = nanos("2024-04-06T00:00:05Z");
+        assertTrue(parse(parser, "23:59:58 INFO written yesterday", justAfterMidnight));
+        assertEquals(nanos("2024-04-05T23:59:58Z"), parser.timeUnixNano());
+        assertTrue(parse(parser, "00:00:03 INFO written today", justAfterMidnight));
+        assertEquals(nanos("2024-04-06T00:00:03Z"), parser.timeUnixNano());
+    }
+
+    @Test
+    void switchesFormatWhenTheCachedOneStopsMatching() {
+        assertTrue(parse("2024-04-06 10:00:00 INFO first"));
+        assertEquals(nanos("2024-04-06T10:00:00Z"), parser.timeUnixNano());
+        assertTrue(parse("[worker-1] 10:00:01 INFO moved and lost its date"));
+        assertEquals(nanos("2024-04-06T10:00:01Z"), parser.timeUnixNano());
+        assertTrue(parse("2024-04-06T10:00:02Z INFO back to ISO"));
+        assertEquals(nanos("2024-04-06T10:00:02Z"), parser.timeUnixNano());
+
+        assertTrue(parse("no timestamp here at all"));
+        assertFalse(parser.hasTimestamp());
+        assertEquals(OBSERVED, parser.timeUnixNano(), "the capture time stands in");
+    }
+
+    @Test
+    void rejectsNumbersThatOnlyLookLikeTimes() {
+        assertTrue(parse("order 12:34:567 shipped"));
+        assertFalse(parser.hasTimestamp());
+        assertTrue(parse("release 2024-13-01 10:00 tagged"));
+        assertFalse(parser.hasTimestamp());
+        assertTrue(parse("release 2024-13-01 10:00:00 tagged"));
+        assertEquals(nanos("2024-04-06T10:00:00Z"), parser.timeUnixNano(), "a bad date leaves the time of day");
+    }
+}
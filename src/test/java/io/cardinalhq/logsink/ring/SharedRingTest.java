@@ -0,0 +1,177 @@
+package io.cardinalhq.logsink.ring;
+
+import io.cardinalhq.logsink.LogSink;
+import io.cardinalhq.logsink.LogSinkConfig;
+import io.cardinalhq.logsink.LogSinkRoute;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedRingTest {
+    private static final int CAPACITY = 8192;
+    private static final Resource OWN = Resource.newBuilder().addAttributes(KeyValue.newBuilder()
+            .setKey("service.name").setValue(AnyValue.newBuilder().setStringValue("producer"))).build();
+
+    /** Takes what the shipper hands over instead of exporting it. */
+    static final class CapturingSink extends LogSink {
+        final List<LogSinkRoute> routes = new ArrayList<>();
+        final List<LogRecord> records = new ArrayList<>();
+
+        CapturingSink() {
+            super(LogSinkConfig.builder().setOtlpEndpoint("http://127.0.0.1:9/v1/logs").setAppName("ring-test").build());
+        }
+
+        @Override
+        public boolean log(LogSinkRoute route, LogRecord record) {
+            routes.add(route);
+            records.add(record);
+            return true;
+        }
+
+        long seq(int i) {
+            return records.get(i).getAttributes(0).getValue().getIntValue();
+        }
+    }
+
+    @TempDir
+    Path dir;
+    private Path file;
+    private CapturingSink sink;
+    private SharedRingWriter writer;
+    private SharedRingShipper shipper;
+
+    @BeforeEach
+    void open() throws IOException {
+        file = dir.resolve("logsink.ring");
+        sink = new CapturingSink();
+        writer = SharedRingWriter.open(file, CAPACITY, OWN);
+        shipper = SharedRingShipper.open(file, sink, "fallback");
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        shipper.close();
+        writer.close();
+        sink.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static LogRecord record(long seq, int bodyBytes) {
+        return LogRecord.newBuilder()
+                .addAttributes(KeyValue.newBuilder().setKey("seq").setValue(AnyValue.newBuilder().setIntValue(seq)))
+                .setBody(AnyValue.newBuilder().setStringValue("x".repeat(bodyBytes)))
+                .build();
+    }
+
+    @Test
+    void recordsSurviveManyWrapsInOrder() {
+        Random rnd = new Random(41);
+        List<LogRecord> sent = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < 2_000; i++) {
+            LogRecord r = record(i, 40 + rnd.nextInt(600)); // odd sizes, so frames end anywhere and wraps pad
+            assertTrue(writer.write(r, null), "record " + i + " dropped with the shipper keeping up");
+            sent.add(r);
+            bytes += r.getSerializedSize();
+            if (i % 5 == 4) {
+                writer.publish();
+                shipper.drain();
+            }
+        }
+        writer.publish();
+        shipper.drain();
+
+        assertTrue(bytes > 50L * CAPACITY, "the ring wrapped only " + bytes / CAPACITY + " times");
+        assertEquals(sent, sink.records);
+        assertTrue(sink.routes.stream().allMatch(r -> r == null || r.getResource().equals(OWN)));
+        assertEquals(0, shipper.corruptFrames());
+        assertEquals(2_000, shipper.shippedRecords());
+        assertEquals(0, shipper.lagBytes());
+    }
+
+    @Test
+    void aFullRingDropsAndCountsUntilTheShipperCatchesUp() {
+        int accepted = 0;
+        while (writer.write(record(accepted, 200), null)) accepted++;
+        for (int i = 0; i < 50; i++) assertFalse(writer.write(record(accepted + 1 + i, 200), null));
+        writer.publish();
+
+        assertEquals(51, writer.droppedRecords());
+        assertEquals(51, shipper.producerDroppedRecords());
+        assertEquals(accepted, shipper.producerWrittenRecords());
+
+        shipper.drain();
+        assertEquals(accepted, sink.records.size());
+        for (int i = 0; i < accepted; i++) assertEquals(i, sink.seq(i));
+        assertTrue(writer.write(record(10_000, 200), null), "the drained ring still refuses records");
+    }
+
+    @Test
+    void aRestartedProducerContinuesWhereTheShipperStopped() throws IOException {
+        for (int i = 0; i < 10; i++) assertTrue(writer.write(record(i, 100), null));
+        writer.publish();
+        shipper.drain();
+        for (int i = 10; i < 15; i++) assertTrue(writer.write(record(i, 100), null));
+        writer.publish();
+        writer.close(); // the application stops before the shipper read these
+
+        writer = SharedRingWriter.open(file, CAPACITY, OWN);
+        for (int i = 15; i < 20; i++) assertTrue(writer.write(record(i, 100), null));
+        writer.publish();
+        shipper.drain();
+
+        assertEquals(20, sink.records.size());
+        for (int i = 0; i < 20; i++) assertEquals(i, sink.seq(i));
+        assertEquals(20, shipper.producerWrittenRecords());
+    }
+
+    @Test
+    void routesKeepNonStringResourceAttributes() {
+        LogSinkRoute billing = LogSinkRoute.builder()
+                .setOtlpEndpoint("http://collector.billing:4318/v1/logs")
+                .setApiKey("billing-key")
+                .setServiceName("billing")
+                .addResourceAttribute("shard", AnyValue.newBuilder().setIntValue(7).build())
+                .addResourceAttribute("canary", AnyValue.newBuilder().setBoolValue(true).build())
+                .addResourceAttribute("zones", AnyValue.newBuilder().setArrayValue(ArrayValue.newBuilder()
+                        .addValues(AnyValue.newBuilder().setStringValue("a"))
+                        .addValues(AnyValue.newBuilder().setStringValue("b"))).build())
+                .build();
+        assertTrue(writer.write(record(0, 10), billing));
+        writer.publish();
+        shipper.drain();
+
+        assertEquals(List.of(billing), sink.routes);
+    }
+
+    @Test
+    void aRouteTooLongToFrameIsDroppedAndCounted() {
+        LogSinkRoute huge = LogSinkRoute.builder()
+                .setOtlpEndpoint("http://collector/" + "a".repeat(SharedRingWriter.MAX_ROUTE_STRING_BYTES))
+                .setServiceName("huge")
+                .build();
+        assertFalse(writer.write(record(0, 10), huge));
+        assertTrue(writer.write(record(1, 10), null));
+        writer.publish();
+        shipper.drain();
+
+        assertEquals(1, writer.droppedRecords());
+        assertEquals(1, sink.records.size());
+        assertEquals(1, sink.seq(0));
+        assertEquals(0, shipper.corruptFrames());
+    }
+}
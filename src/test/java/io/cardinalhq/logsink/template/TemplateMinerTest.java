@@ -0,0 +1,56 @@
+package io.cardinalhq.logsink.template;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateMinerTest {
+
+    private static TemplateMiner miner(int maxClusters) {
+        return new TemplateMiner(4, 0.4, 100, maxClusters, 1);
+    }
+
+    @Test
+    void templateKeepsItsIdAsItWidens() {
+        TemplateMiner m = miner(16);
+        String id = m.templateId("connection from alice closed by peer");
+        assertEquals(id, m.templateId("connection from bob closed by peer"));
+        assertEquals(id, m.templateId("connection from carol closed by server"));
+        assertEquals(id, m.templateId("connection from alice closed by peer"));
+        assertEquals(1, m.clusterCount());
+    }
+
+    @Test
+    void numericTokensAreMasked() {
+        TemplateMiner m = miner(16);
+        assertEquals(m.templateId("request 17 took 5ms"), m.templateId("request 9001 took 250ms"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedCluster() {
+        TemplateMiner m = miner(2);
+        String a = m.templateId("alpha one two");
+        String b = m.templateId("beta gamma delta epsilon");
+        assertEquals(a, m.templateId("alpha one three")); // touches alpha
+        String c = m.templateId("zeta eta");
+        assertNotEquals(a, c);
+        assertEquals(2, m.clusterCount());
+
+        assertEquals(a, m.templateId("alpha one four"), "alpha was used more recently than beta and survives");
+        String b2 = m.templateId("beta gamma delta zeta");
+        assertNotEquals(b, b2, "beta was evicted and starts a new template from this line");
+    }
+
+    @Test
+    void evictionPrunesEmptyBranches() {
+        TemplateMiner m = miner(1);
+        m.templateId("seed line");
+        int baseline = m.nodeCount();
+        for (int i = 0; i < 1_000; i++) {
+            m.templateId("word" + (char) ('a' + i % 26) + " x" + (char) ('a' + i / 26 % 26) + " y z w" + i % 7);
+        }
+        m.templateId("seed line");
+        assertEquals(1, m.clusterCount());
+        assertEquals(baseline, m.nodeCount(), "branches of evicted clusters are removed");
+    }
+}
@@ -0,0 +1,256 @@
+package io.cardinalhq.logsink.testing;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.cardinalhq.logsink.columnar.ColumnarEncoder;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reference decoder for {@link ColumnarEncoder} frames: turns them back into the
+ * {@link ExportLogsServiceRequest} that was encoded, keeping the dictionaries of every stream it
+ * has seen. A frame whose stream is unknown or whose sequence number is not the next expected
+ * one fails with {@link StreamStateException}; receivers answer that with 409 so the sender
+ * starts the stream over.
+ * <pre>
+ *   ColumnarDecoder d = new ColumnarDecoder();
+ *   assert d.decode(encoder.encode(request)).equals(request);
+ * </pre>
+ */
+public final class ColumnarDecoder {
+
+    /** The frame refers to stream state this decoder does not have. */
+    public static final class StreamStateException extends Exception {
+        StreamStateException(String message) {
+            super(message);
+        }
+    }
+
+    private final Map<Long, Stream> streams = new ConcurrentHashMap<>();
+
+    public int streamCount() {
+        return streams.size();
+    }
+
+    public ExportLogsServiceRequest decode(byte[] frame) throws StreamStateException, InvalidProtocolBufferException {
+        In header = new In(frame);
+        for (byte b : ColumnarEncoder.MAGIC) {
+            if (header.u8() != (b & 0xFF)) throw new InvalidProtocolBufferException("not a columnar frame");
+        }
+        int version = header.u8();
+        if (version != ColumnarEncoder.VERSION) throw new InvalidProtocolBufferException("unsupported version " + version);
+        long streamId = header.fixed64();
+        long seq = header.varint();
+
+        Stream s;
+        if (seq == 0) {
+            s = new Stream();
+            streams.put(streamId, s);
+        } else {
+            s = streams.get(streamId);
+            if (s == null) throw new StreamStateException("unknown stream " + Long.toHexString(streamId));
+        }
+        synchronized (s) {
+            if (s.nextSeq != seq) {
+                streams.remove(streamId, s);
+                throw new StreamStateException("stream " + Long.toHexString(streamId) + " expected seq " + s.nextSeq + ", got " + seq);
+            }
+            try {
+                In in = new In(s.inflate(frame, header.pos));
+                ExportLogsServiceRequest req = decode(in, s);
+                if (in.pos != in.a.length) throw new InvalidProtocolBufferException("trailing bytes in frame");
+                s.nextSeq = seq + 1;
+                return req;
+            } catch (InvalidProtocolBufferException e) {
+                streams.remove(streamId, s);
+                throw e;
+            } catch (RuntimeException e) {
+                streams.remove(streamId, s);
+                throw new InvalidProtocolBufferException("corrupt frame: " + e);
+            }
+        }
+    }
+
+    private static ExportLogsServiceRequest decode(In in, Stream s) throws InvalidProtocolBufferException {
+        ExportLogsServiceRequest.Builder req = ExportLogsServiceRequest.newBuilder();
+        long resourceLogs = in.varint();
+        for (long i = 0; i < resourceLogs; i++) {
+            ResourceLogs.Builder rl = ResourceLogs.newBuilder();
+            ByteString resource = s.msgRef(in);
+            if (resource != null) rl.setResource(Resource.parseFrom(resource));
+            rl.setSchemaUrl(s.strRef(in, s.values));
+            long scopeLogs = in.varint();
+            for (long j = 0; j < scopeLogs; j++) {
+                ScopeLogs.Builder sl = ScopeLogs.newBuilder();
+                ByteString scope = s.msgRef(in);
+                if (scope != null) sl.setScope(InstrumentationScope.parseFrom(scope));
+                sl.setSchemaUrl(s.strRef(in, s.values));
+                records(in, s, sl);
+                rl.addScopeLogs(sl);
+            }
+            req.addResourceLogs(rl);
+        }
+        return req.build();
+    }
+
+    private static void records(In in, Stream s, ScopeLogs.Builder sl) throws InvalidProtocolBufferException {
+        int n = Math.toIntExact(in.varint());
+        LogRecord.Builder[] rs = new LogRecord.Builder[n];
+        for (int i = 0; i < n; i++) {
+            s.lastTime += in.zigzag();
+            rs[i] = LogRecord.newBuilder().setTimeUnixNano(s.lastTime);
+        }
+        for (int i = 0; i < n; i++) rs[i].setObservedTimeUnixNano(rs[i].getTimeUnixNano() + in.zigzag());
+        for (int i = 0; i < n; i++) rs[i].setSeverityNumberValue((int) in.varint());
+        for (int i = 0; i < n; i++) rs[i].setSeverityText(s.strRef(in, s.values));
+        for (int i = 0; i < n; i++) rs[i].setFlags((int) in.varint());
+        for (int i = 0; i < n; i++) rs[i].setDroppedAttributesCount((int) in.varint());
+        for (int i = 0; i < n; i++) rs[i].setTraceId(in.bytes());
+        for (int i = 0; i < n; i++) rs[i].setSpanId(in.bytes());
+        for (int i = 0; i < n; i++) {
+            AnyValue body = s.value(in, s.bodies);
+            if (body != null) rs[i].setBody(body);
+        }
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) counts[i] = Math.toIntExact(in.varint());
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < counts[i]; k++) keys.add(s.strRef(in, s.keys));
+        }
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < counts[i]; k++) {
+                KeyValue.Builder kv = KeyValue.newBuilder().setKey(keys.get(next++));
+                AnyValue v = s.value(in, s.values);
+                if (v != null) kv.setValue(v);
+                rs[i].addAttributes(kv);
+            }
+        }
+        for (LogRecord.Builder r : rs) sl.addLogRecords(r);
+    }
+
+    private static final class Stream {
+        long nextSeq;
+        long lastTime;
+        final List<String> keys = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        final List<String> bodies = new ArrayList<>();
+        final List<ByteString> messages = new ArrayList<>();
+        final Inflater inflater = new Inflater(true);
+
+        /** Continues the stream's deflate context; each frame ends on a sync flush, so all of it comes out. */
+        byte[] inflate(byte[] frame, int offset) throws InvalidProtocolBufferException {
+            inflater.setInput(frame, offset, frame.length - offset);
+            byte[] out = new byte[Math.max(4096, (frame.length - offset) * 8)];
+            int n = 0;
+            try {
+                while (true) {
+                    n += inflater.inflate(out, n, out.length - n);
+                    if (n < out.length) break;
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                if (inflater.needsDictionary()) throw new InvalidProtocolBufferException("unexpected preset dictionary");
+            } catch (DataFormatException e) {
+                throw new InvalidProtocolBufferException("corrupt deflate stream: " + e.getMessage());
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        String strRef(In in, List<String> dict) {
+            long code = in.varint();
+            if (code >= 2) return dict.get(Math.toIntExact(code - 2));
+            String s = new String(in.raw(Math.toIntExact(in.varint())), StandardCharsets.UTF_8);
+            if (code == 1) dict.add(s);
+            return s;
+        }
+
+        ByteString msgRef(In in) {
+            long code = in.varint();
+            if (code == 0) return null;
+            if (code >= 3) return messages.get(Math.toIntExact(code - 3));
+            ByteString m = in.bytes();
+            if (code == 2) messages.add(m);
+            return m;
+        }
+
+        AnyValue value(In in, List<String> dict) throws InvalidProtocolBufferException {
+            int tag = in.u8();
+            switch (tag) {
+                case ColumnarEncoder.TAG_ABSENT: return null;
+                case ColumnarEncoder.TAG_EMPTY: return AnyValue.getDefaultInstance();
+                case ColumnarEncoder.TAG_STRING: return AnyValue.newBuilder().setStringValue(strRef(in, dict)).build();
+                case ColumnarEncoder.TAG_BOOL: return AnyValue.newBuilder().setBoolValue(in.u8() != 0).build();
+                case ColumnarEncoder.TAG_INT: return AnyValue.newBuilder().setIntValue(in.zigzag()).build();
+                case ColumnarEncoder.TAG_DOUBLE:
+                    return AnyValue.newBuilder().setDoubleValue(Double.longBitsToDouble(in.fixed64())).build();
+                case ColumnarEncoder.TAG_PROTO: return AnyValue.parseFrom(in.bytes());
+                default: throw new InvalidProtocolBufferException("unknown value tag " + tag);
+            }
+        }
+    }
+
+    private static final class In {
+        final byte[] a;
+        int pos;
+
+        In(byte[] a) {
+            this.a = a;
+        }
+
+        int u8() {
+            return a[pos++] & 0xFF;
+        }
+
+        long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = a[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalStateException("varint too long");
+        }
+
+        long zigzag() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long fixed64() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | (a[pos++] & 0xFF);
+            return v;
+        }
+
+        byte[] raw(int len) {
+            if (len < 0 || pos + len > a.length) throw new IllegalStateException("length out of range");
+            byte[] b = new byte[len];
+            System.arraycopy(a, pos, b, 0, len);
+            pos += len;
+            return b;
+        }
+
+        ByteString bytes() {
+            int len = Math.toIntExact(varint());
+            if (len < 0 || pos + len > a.length) throw new IllegalStateException("length out of range");
+            ByteString b = ByteString.copyFrom(a, pos, len);
+            pos += len;
+            return b;
+        }
+    }
+}
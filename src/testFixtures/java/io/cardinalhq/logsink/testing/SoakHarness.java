@@ -0,0 +1,230 @@
+package io.cardinalhq.logsink.testing;
+
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.AppenderComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak/load driver: logs through {@code LogSinkAppender} from many threads into a
+ * {@link StubOtlpCollector} and reports drop rate, append and delivery latency percentiles, request
+ * count and delivered throughput. Everything runs in-process, so performance changes can be
+ * compared locally.
+ * <pre>
+ *   gradle soak -PsoakArgs="--threads 16 --seconds 60 --rate 20000 --latency-ms 20 --error-rate 0.01"
+ * </pre>
+ * With {@code --rate} each thread follows a fixed schedule and latency is measured from the
+ * intended send time, so a stalled appender shows up in the percentiles instead of silently
+ * lowering the offered load. Without it threads log as fast as the appender returns.
+ * {@code --appender key=value} passes extra attributes to the {@code <LogSink/>} element.
+ */
+public final class SoakHarness {
+    private static final String SEQ_PREFIX = "seq=";
+
+    private SoakHarness() {}
+
+    public static void main(String[] args) throws Exception {
+        Options o = Options.parse(args);
+
+        try (StubOtlpCollector collector = StubOtlpCollector.start(0, o.collectorThreads)) {
+            collector.setLatency(Duration.ofMillis(o.latencyMs))
+                    .setErrorRate(o.errorRate, 503)
+                    .setResetRate(o.resetRate)
+                    .trackSequence(SoakHarness::threadOf, SoakHarness::sequenceOf)
+                    .trackDeliveryLatency(true);
+
+            System.setProperty("otel.exporter.otlp.endpoint", collector.endpoint());
+            System.setProperty("otel.service.name", "logsink-soak");
+            LoggerContext ctx = Configurator.initialize(configuration(o));
+            Logger logger = ctx.getLogger("soak");
+
+            Recorder latency = new Recorder(3);
+            LongAdder attempted = new LongAdder();
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < o.threads; i++) {
+                Thread t = new Thread(() -> produce(logger, o, latency, attempted, stop), "soak-" + i);
+                t.setDaemon(true);
+                threads.add(t);
+            }
+
+            long start = System.nanoTime();
+            threads.forEach(Thread::start);
+            long warmupEnd = start + TimeUnit.SECONDS.toNanos(o.warmupSeconds);
+            long end = warmupEnd + TimeUnit.SECONDS.toNanos(o.seconds);
+            boolean warm = o.warmupSeconds == 0;
+            long lastAttempted = 0;
+            long lastDelivered = 0;
+            while (System.nanoTime() < end) {
+                Thread.sleep(1000);
+                long a = attempted.sum();
+                long d = collector.recordCount();
+                System.out.printf("%s offered %,d/s delivered %,d/s%n", warm ? "     " : "warm ", a - lastAttempted, d - lastDelivered);
+                lastAttempted = a;
+                lastDelivered = d;
+                if (!warm && System.nanoTime() >= warmupEnd) {
+                    latency.getIntervalHistogram(); // discard warmup samples
+                    collector.deliveryLatency();
+                    warm = true;
+                }
+            }
+            stop.set(true);
+            for (Thread t : threads) t.join();
+            long produceEnd = System.nanoTime();
+            Histogram measured = latency.getIntervalHistogram();
+            Histogram delivery = collector.deliveryLatency(); // before the stop, whose final flush says little
+
+            long stopStart = System.nanoTime();
+            Configurator.shutdown(ctx, o.stopTimeoutMs, TimeUnit.MILLISECONDS);
+            long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopStart);
+            long delivered = collector.awaitQuiescence(Duration.ofMillis(250), Duration.ofSeconds(5));
+            double secs = (System.nanoTime() - start) / 1e9;
+
+            long sent = attempted.sum();
+            long dropped = sent - delivered;
+            System.out.println();
+            System.out.printf("threads %d, %ds (+%ds warmup), queue %d, batch %d%n",
+                    o.threads, o.seconds, o.warmupSeconds, o.queueSize, o.batchSize);
+            System.out.printf("attempted   %,d (%,.0f/s offered)%n", sent, sent / ((produceEnd - start) / 1e9));
+            System.out.printf("delivered   %,d (%,.0f/s incl. %,d ms stop)%n", delivered, delivered / secs, stopMillis);
+            System.out.printf("dropped     %,d (%.4f%%)%n", dropped, sent == 0 ? 0.0 : 100.0 * dropped / sent);
+            System.out.printf("append      p50 %.2f us  p99 %.2f us  p999 %.2f us  max %.2f us (%,d samples)%n",
+                    measured.getValueAtPercentile(50) / 1e3, measured.getValueAtPercentile(99) / 1e3,
+                    measured.getValueAtPercentile(99.9) / 1e3, measured.getMaxValue() / 1e3,
+                    measured.getTotalCount());
+            System.out.printf("delivery    p50 %.1f ms  p99 %.1f ms  p999 %.1f ms  max %.1f ms%n",
+                    delivery.getValueAtPercentile(50) / 1e3, delivery.getValueAtPercentile(99) / 1e3,
+                    delivery.getValueAtPercentile(99.9) / 1e3, delivery.getMaxValue() / 1e3);
+            System.out.printf("collector   %,d requests, %,.1f MiB gzip, %,d rejected (%,d records), %,d reset%n",
+                    collector.requestCount(), collector.compressedBytes() / 1048576.0,
+                    collector.rejectedRequests(), collector.rejectedRecords(), collector.resetRequests());
+            System.out.printf("ordering    %,d missing, %,d reordered, %,d duplicate%n",
+                    collector.missingRecords(), collector.reorderedRecords(), collector.duplicateRecords());
+        }
+    }
+
+    private static void produce(Logger logger, Options o, Recorder latency, LongAdder attempted, AtomicBoolean stop) {
+        StringBuilder sb = new StringBuilder(o.messageBytes + 32);
+        String padding = "x".repeat(Math.max(0, o.messageBytes - 24));
+        long intervalNanos = o.rate > 0 ? 1_000_000_000L / o.rate : 0;
+        long next = System.nanoTime();
+        long seq = 0;
+        while (!stop.get()) {
+            long intended;
+            if (intervalNanos > 0) {
+                intended = next;
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                next += intervalNanos;
+            } else {
+                intended = System.nanoTime();
+            }
+            sb.setLength(0);
+            sb.append("soak ").append(SEQ_PREFIX).append(seq++).append(' ').append(padding);
+            String msg = sb.toString();
+
+            logger.info(msg);
+            latency.recordValue(Math.max(0, System.nanoTime() - intended));
+            attempted.increment();
+        }
+    }
+
+    private static BuiltConfiguration configuration(Options o) {
+        ConfigurationBuilder<BuiltConfiguration> b = ConfigurationBuilderFactory.newConfigurationBuilder();
+        b.setStatusLevel(Level.WARN);
+        b.setConfigurationName("logsink-soak");
+        AppenderComponentBuilder appender = b.newAppender("logsink", "LogSink")
+                .addAttribute("queueSize", o.queueSize)
+                .addAttribute("maxBatchSize", o.batchSize)
+                .addAttribute("shutdownTimeoutMillis", o.stopTimeoutMs);
+        o.appenderAttributes.forEach(appender::addAttribute);
+        b.add(appender);
+        b.add(b.newRootLogger(Level.INFO).add(b.newAppenderRef("logsink")));
+        return b.build();
+    }
+
+    static String threadOf(LogRecord r) {
+        for (KeyValue kv : r.getAttributesList()) {
+            if ("log4j.thread".equals(kv.getKey())) return kv.getValue().getStringValue();
+        }
+        return null;
+    }
+
+    static long sequenceOf(LogRecord r) {
+        String body = r.getBody().getStringValue();
+        int i = body.indexOf(SEQ_PREFIX);
+        if (i < 0) return -1;
+        long v = 0;
+        for (int p = i + SEQ_PREFIX.length(); p < body.length(); p++) {
+            char c = body.charAt(p);
+            if (c < '0' || c > '9') break;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    static final class Options {
+        int threads = 8;
+        int seconds = 30;
+        int warmupSeconds = 5;
+        int rate;
+        int messageBytes = 200;
+        int queueSize = 8192;
+        int batchSize = 1000;
+        long stopTimeoutMs = 10_000;
+        long latencyMs;
+        double errorRate;
+        double resetRate;
+        int collectorThreads = 4;
+        final Map<String, String> appenderAttributes = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--threads": o.threads = Integer.parseInt(args[++i]); break;
+                    case "--seconds": o.seconds = Integer.parseInt(args[++i]); break;
+                    case "--warmup": o.warmupSeconds = Integer.parseInt(args[++i]); break;
+                    case "--rate": o.rate = Integer.parseInt(args[++i]); break;
+                    case "--message-bytes": o.messageBytes = Integer.parseInt(args[++i]); break;
+                    case "--queue": o.queueSize = Integer.parseInt(args[++i]); break;
+                    case "--batch": o.batchSize = Integer.parseInt(args[++i]); break;
+                    case "--stop-timeout-ms": o.stopTimeoutMs = Long.parseLong(args[++i]); break;
+                    case "--latency-ms": o.latencyMs = Long.parseLong(args[++i]); break;
+                    case "--error-rate": o.errorRate = Double.parseDouble(args[++i]); break;
+                    case "--reset-rate": o.resetRate = Double.parseDouble(args[++i]); break;
+                    case "--collector-threads": o.collectorThreads = Integer.parseInt(args[++i]); break;
+                    case "--appender": {
+                        String kv = args[++i];
+                        int eq = kv.indexOf('=');
+                        if (eq <= 0) throw new IllegalArgumentException("--appender expects key=value, got " + kv);
+                        o.appenderAttributes.put(kv.substring(0, eq), kv.substring(eq + 1));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + a);
+                }
+            }
+            return o;
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package io.cardinalhq.logsink.testing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.cardinalhq.logsink.columnar.ColumnarEncoder;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceResponse;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process OTLP/HTTP logs receiver for local testing. Decodes the gzip'd protobuf
+ * {@link ExportLogsServiceRequest}s that {@code LogSinkExporter} posts (or its columnar frames,
+ * via {@link ColumnarDecoder}; lost stream state is answered with 409), counts records and
+ * requests, and, given a sequence extractor, checks per-key ordering (gaps, reorders, duplicates).
+ * <p>
+ * Faults can be injected on demand: fixed latency, a fraction or a number of requests answered
+ * with an error status, 429s with {@code Retry-After}, and connections closed without a response.
+ * Records in a rejected request are not counted as received.
+ * <pre>
+ *   try (StubOtlpCollector c = StubOtlpCollector.start()) {
+ *       LogSinkConfig cfg = LogSinkConfig.builder().setOtlpEndpoint(c.endpoint())...;
+ *       c.setLatency(Duration.ofMillis(50));
+ *       c.failNext(3, 503);
+ *       ...
+ *       c.awaitRecords(10_000, Duration.ofSeconds(5));
+ *   }
+ * </pre>
+ */
+public final class StubOtlpCollector implements AutoCloseable {
+    public static final String LOGS_PATH = "/v1/logs";
+    public static final String METRICS_PATH = "/v1/metrics";
+    public static final String API_KEY_HEADER = "x-cardinalhq-api-key";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // ---- faults ----
+    private volatile long latencyNanos;
+    private volatile long metricsLatencyNanos;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile int failNextStatus = 503;
+    private final AtomicInteger throttleNext = new AtomicInteger();
+    private volatile int retryAfterSeconds = 1;
+    private final AtomicInteger resetNext = new AtomicInteger();
+    private volatile double resetRate;
+
+    // ---- counters ----
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong rejectedRecords = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    // ---- ordering ----
+    private volatile Function<LogRecord, String> sequenceKey;
+    private volatile ToLongFunction<LogRecord> sequenceOf;
+    private final ConcurrentHashMap<String, SequenceTrack> tracks = new ConcurrentHashMap<>();
+    private final AtomicLong reordered = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    private volatile boolean retainRecords;
+    private final ConcurrentLinkedQueue<LogRecord> retained = new ConcurrentLinkedQueue<>();
+    private final Object arrivals = new Object();
+
+    private volatile boolean trackDelivery;
+    private final Recorder delivery = new Recorder(3);
+
+    private final AtomicLong metricsRequests = new AtomicLong();
+    private volatile ExportMetricsServiceRequest lastMetrics;
+    private volatile String lastMetricsApiKey;
+
+    private volatile ColumnarDecoder columnar = new ColumnarDecoder();
+    private final AtomicLong columnarRequests = new AtomicLong();
+    private final AtomicLong streamConflicts = new AtomicLong();
+
+    private final ConcurrentHashMap<String, AtomicLong> byService = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> byApiKey = new ConcurrentHashMap<>();
+    private final AtomicInteger maxResourceLogs = new AtomicInteger();
+
+    private StubOtlpCollector(int port, int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        AtomicInteger n = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "stub-otlp-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext(LOGS_PATH, this::handle);
+        server.createContext(METRICS_PATH, this::handleMetrics);
+        server.start();
+    }
+
+    /** Starts a collector on an ephemeral loopback port. */
+    public static StubOtlpCollector start() throws IOException {
+        return new StubOtlpCollector(0, 4);
+    }
+
+    public static StubOtlpCollector start(int port, int threads) throws IOException {
+        return new StubOtlpCollector(port, Math.max(1, threads));
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + LOGS_PATH;
+    }
+
+    // ---------- fault injection ----------
+
+    public StubOtlpCollector setLatency(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+        return this;
+    }
+
+    /** Delays the answer to every metrics request; the other faults apply to logs only. */
+    public StubOtlpCollector setMetricsLatency(Duration latency) {
+        this.metricsLatencyNanos = latency.toNanos();
+        return this;
+    }
+
+    /** Answers this fraction of requests with {@code status}. */
+    public StubOtlpCollector setErrorRate(double rate, int status) {
+        this.errorStatus = status;
+        this.errorRate = rate;
+        return this;
+    }
+
+    /** Answers the next {@code count} requests with {@code status}. */
+    public StubOtlpCollector failNext(int count, int status) {
+        this.failNextStatus = status;
+        this.failNext.set(count);
+        return this;
+    }
+
+    /** Answers the next {@code count} requests with 429 and a {@code Retry-After} header. */
+    public StubOtlpCollector throttleNext(int count, int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.throttleNext.set(count);
+        return this;
+    }
+
+    /** Closes the connection of the next {@code count} requests without sending a response. */
+    public StubOtlpCollector resetNext(int count) {
+        this.resetNext.set(count);
+        return this;
+    }
+
+    /** Closes this fraction of connections without sending a response. */
+    public StubOtlpCollector setResetRate(double rate) {
+        this.resetRate = rate;
+        return this;
+    }
+
+    /** Drops all columnar stream state, as a collector restart would; senders must start their streams over. */
+    public StubOtlpCollector forgetColumnarStreams() {
+        this.columnar = new ColumnarDecoder();
+        return this;
+    }
+
+    /** Clears every injected fault. */
+    public StubOtlpCollector healthy() {
+        latencyNanos = 0;
+        metricsLatencyNanos = 0;
+        errorRate = 0;
+        resetRate = 0;
+        failNext.set(0);
+        throttleNext.set(0);
+        resetNext.set(0);
+        return this;
+    }
+
+    // ---------- verification ----------
+
+    /**
+     * Enables ordering checks: records are grouped by {@code key} (e.g. the producing thread) and
+     * {@code seq} must increase by one within a group. Records without a key are not tracked.
+     */
+    public StubOtlpCollector trackSequence(Function<LogRecord, String> key, ToLongFunction<LogRecord> seq) {
+        this.sequenceOf = seq;
+        this.sequenceKey = key;
+        return this;
+    }
+
+    /** Keeps every accepted record for inspection via {@link #records()}. */
+    public StubOtlpCollector setRetainRecords(boolean retain) {
+        this.retainRecords = retain;
+        return this;
+    }
+
+    /** Records how long each accepted record took from its observed time to arrive here; see {@link #deliveryLatency()}. */
+    public StubOtlpCollector trackDeliveryLatency(boolean track) {
+        this.trackDelivery = track;
+        return this;
+    }
+
+    /** Delivery latency in microseconds of the records accepted since the previous call. */
+    public Histogram deliveryLatency() {
+        return delivery.getIntervalHistogram();
+    }
+
+    public List<LogRecord> records() {
+        return new ArrayList<>(retained);
+    }
+
+    public long recordCount() {
+        return records.get();
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public long compressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long rejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public long rejectedRecords() {
+        return rejectedRecords.get();
+    }
+
+    public long throttledRequests() {
+        return throttled.get();
+    }
+
+    public long resetRequests() {
+        return resets.get();
+    }
+
+    public long malformedRequests() {
+        return malformed.get();
+    }
+
+    /** Accepted records per resource {@code service.name}. */
+    public Map<String, Long> recordsByService() {
+        Map<String, Long> out = new ConcurrentHashMap<>();
+        byService.forEach((k, v) -> out.put(k, v.get()));
+        return out;
+    }
+
+    /** Accepted records per API key header; requests without one count under the empty string. */
+    public Map<String, Long> recordsByApiKey() {
+        Map<String, Long> out = new ConcurrentHashMap<>();
+        byApiKey.forEach((k, v) -> out.put(k, v.get()));
+        return out;
+    }
+
+    /** Most {@code ResourceLogs} seen in one accepted request. */
+    public int maxResourceLogsPerRequest() {
+        return maxResourceLogs.get();
+    }
+
+    public long columnarRequestCount() {
+        return columnarRequests.get();
+    }
+
+    /** Columnar frames answered with 409 because their stream state was unknown. */
+    public long streamConflicts() {
+        return streamConflicts.get();
+    }
+
+    public long metricsRequestCount() {
+        return metricsRequests.get();
+    }
+
+    /** The most recent metrics export, or null; of the faults only {@link #setMetricsLatency} applies to metrics. */
+    public ExportMetricsServiceRequest lastMetrics() {
+        return lastMetrics;
+    }
+
+    /** The API key the most recent metrics export carried, or null. */
+    public String lastMetricsApiKey() {
+        return lastMetricsApiKey;
+    }
+
+    /** Records that arrived with a lower sequence than one already seen for their key. */
+    public long reorderedRecords() {
+        return reordered.get();
+    }
+
+    public long duplicateRecords() {
+        return duplicates.get();
+    }
+
+    /** Sequence numbers never seen below each key's highest sequence, i.e. records lost in between. */
+    public long missingRecords() {
+        long missing = 0;
+        for (SequenceTrack t : tracks.values()) {
+            synchronized (t) {
+                missing += (t.max - t.min + 1) - t.distinct;
+            }
+        }
+        return missing;
+    }
+
+    /** Highest sequence seen per key. */
+    public Map<String, Long> highestSequences() {
+        Map<String, Long> out = new ConcurrentHashMap<>();
+        tracks.forEach((k, t) -> {
+            synchronized (t) {
+                out.put(k, t.max);
+            }
+        });
+        return out;
+    }
+
+    /** Waits until at least {@code n} records were accepted; returns whether that happened in time. */
+    public boolean awaitRecords(long n, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (arrivals) {
+            while (records.get() < n) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(arrivals, remaining);
+            }
+        }
+        return true;
+    }
+
+    /** Waits until no record arrived for {@code quiet}, or {@code timeout} passes. */
+    public long awaitQuiescence(Duration quiet, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long last = -1;
+        while (System.nanoTime() < deadline) {
+            long now = records.get();
+            if (now == last) return now;
+            last = now;
+            Thread.sleep(quiet.toMillis());
+        }
+        return records.get();
+    }
+
+    /** Zeroes counters and ordering state; faults are kept. */
+    public void reset() {
+        records.set(0);
+        requests.set(0);
+        compressedBytes.set(0);
+        rejectedRequests.set(0);
+        rejectedRecords.set(0);
+        throttled.set(0);
+        resets.set(0);
+        malformed.set(0);
+        reordered.set(0);
+        duplicates.set(0);
+        tracks.clear();
+        retained.clear();
+        metricsRequests.set(0);
+        lastMetrics = null;
+        lastMetricsApiKey = null;
+        columnarRequests.set(0);
+        streamConflicts.set(0);
+        byService.clear();
+        byApiKey.clear();
+        maxResourceLogs.set(0);
+        delivery.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ---------- request handling ----------
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                respond(ex, 405, new byte[0]);
+                return;
+            }
+            byte[] raw = readAll(ex.getRequestBody());
+            requests.incrementAndGet();
+            compressedBytes.addAndGet(raw.length);
+
+            long latency = latencyNanos;
+            if (latency > 0) LockSupport.parkNanos(latency);
+
+            if (takeOne(resetNext) || chance(resetRate)) {
+                // No response headers: the server drops the connection and the client sees an I/O error
+                resets.incrementAndGet();
+                return;
+            }
+
+            ExportLogsServiceRequest req;
+            try {
+                boolean gzip = "gzip".equalsIgnoreCase(ex.getRequestHeaders().getFirst("Content-Encoding"));
+                byte[] body = gzip ? gunzip(raw) : raw;
+                if (ColumnarEncoder.CONTENT_TYPE.equals(ex.getRequestHeaders().getFirst("Content-Type"))) {
+                    columnarRequests.incrementAndGet();
+                    req = columnar.decode(body);
+                } else {
+                    req = ExportLogsServiceRequest.parseFrom(body);
+                }
+            } catch (ColumnarDecoder.StreamStateException e) {
+                streamConflicts.incrementAndGet();
+                respond(ex, 409, new byte[0]);
+                return;
+            } catch (IOException e) {
+                malformed.incrementAndGet();
+                respond(ex, 400, new byte[0]);
+                return;
+            }
+            int count = countRecords(req);
+
+            if (takeOne(throttleNext)) {
+                throttled.incrementAndGet();
+                reject(count);
+                ex.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+                respond(ex, 429, new byte[0]);
+                return;
+            }
+            if (takeOne(failNext)) {
+                reject(count);
+                respond(ex, failNextStatus, new byte[0]);
+                return;
+            }
+            if (chance(errorRate)) {
+                reject(count);
+                respond(ex, errorStatus, new byte[0]);
+                return;
+            }
+
+            accept(req);
+            String apiKey = ex.getRequestHeaders().getFirst(API_KEY_HEADER);
+            byApiKey.computeIfAbsent(apiKey == null ? "" : apiKey, k -> new AtomicLong()).addAndGet(count);
+            records.addAndGet(count);
+            synchronized (arrivals) {
+                arrivals.notifyAll();
+            }
+            ex.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+            respond(ex, 200, ExportLogsServiceResponse.getDefaultInstance().toByteArray());
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        try {
+            byte[] raw = readAll(ex.getRequestBody());
+            boolean gzip = "gzip".equalsIgnoreCase(ex.getRequestHeaders().getFirst("Content-Encoding"));
+            try {
+                lastMetrics = ExportMetricsServiceRequest.parseFrom(gzip ? gunzip(raw) : raw);
+                lastMetricsApiKey = ex.getRequestHeaders().getFirst(API_KEY_HEADER);
+            } catch (IOException e) {
+                malformed.incrementAndGet();
+                respond(ex, 400, new byte[0]);
+                return;
+            }
+            long latency = metricsLatencyNanos;
+            if (latency > 0) LockSupport.parkNanos(latency);
+            metricsRequests.incrementAndGet();
+            respond(ex, 200, new byte[0]);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void accept(ExportLogsServiceRequest req) {
+        for (ResourceLogs rl : req.getResourceLogsList()) {
+            long n = 0;
+            for (ScopeLogs sl : rl.getScopeLogsList()) n += sl.getLogRecordsCount();
+            byService.computeIfAbsent(serviceName(rl), k -> new AtomicLong()).addAndGet(n);
+        }
+        maxResourceLogs.accumulateAndGet(req.getResourceLogsCount(), Math::max);
+        Function<LogRecord, String> keyFn = sequenceKey;
+        ToLongFunction<LogRecord> seqFn = sequenceOf;
+        boolean retain = retainRecords;
+        boolean timed = trackDelivery;
+        if (keyFn == null && !retain && !timed) return;
+        Instant now = Instant.now();
+        long nowNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        for (ResourceLogs rl : req.getResourceLogsList()) {
+            for (ScopeLogs sl : rl.getScopeLogsList()) {
+                for (LogRecord r : sl.getLogRecordsList()) {
+                    if (retain) retained.add(r);
+                    if (timed) delivery.recordValue(Math.max(0, (nowNanos - r.getObservedTimeUnixNano()) / 1000));
+                    if (keyFn != null) track(keyFn, seqFn, r);
+                }
+            }
+        }
+    }
+
+    private static String serviceName(ResourceLogs rl) {
+        for (KeyValue kv : rl.getResource().getAttributesList()) {
+            if (kv.getKey().equals("service.name")) return kv.getValue().getStringValue();
+        }
+        return "";
+    }
+
+    private void track(Function<LogRecord, String> keyFn, ToLongFunction<LogRecord> seqFn, LogRecord r) {
+        String key = keyFn.apply(r);
+        if (key == null) return;
+        long seq = seqFn.applyAsLong(r);
+        if (seq < 0 || seq > Integer.MAX_VALUE) return;
+        SequenceTrack t = tracks.computeIfAbsent(key, k -> new SequenceTrack());
+        synchronized (t) {
+            if (t.seen.get((int) seq)) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            t.seen.set((int) seq);
+            t.distinct++;
+            if (t.distinct == 1) {
+                t.min = seq;
+                t.max = seq;
+                return;
+            }
+            if (seq < t.max) reordered.incrementAndGet();
+            t.min = Math.min(t.min, seq);
+            t.max = Math.max(t.max, seq);
+        }
+    }
+
+    private void reject(int count) {
+        rejectedRequests.incrementAndGet();
+        rejectedRecords.addAndGet(count);
+    }
+
+    private static int countRecords(ExportLogsServiceRequest req) {
+        int n = 0;
+        for (ResourceLogs rl : req.getResourceLogsList()) {
+            for (ScopeLogs sl : rl.getScopeLogsList()) {
+                n += sl.getLogRecordsCount();
+            }
+        }
+        return n;
+    }
+
+    private static boolean takeOne(AtomicInteger budget) {
+        int n;
+        do {
+            n = budget.get();
+            if (n <= 0) return false;
+        } while (!budget.compareAndSet(n, n - 1));
+        return true;
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static void respond(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            return is.readAllBytes();
+        }
+    }
+
+    private static byte[] gunzip(byte[] raw) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(raw))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Per-key sequence bookkeeping; sequences are expected to start near zero. */
+    private static final class SequenceTrack {
+        final BitSet seen = new BitSet();
+        long min;
+        long max;
+        long distinct;
+    }
+}